@@ -3,14 +3,18 @@ package com.pos.analytics;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import com.pos.analytics.dto.AnalyticsSnapshot;
 import com.pos.analytics.dto.InvoiceRow;
 import com.pos.analytics.dto.PaymentSlice;
 import com.pos.analytics.dto.SeriesPoint;
@@ -25,9 +29,11 @@ public class AnalyticsController {
     private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
 
     private final AnalyticsService service;
+    private final SalesSchemaMigration migration;
 
-    public AnalyticsController(AnalyticsService service) {
+    public AnalyticsController(AnalyticsService service, SalesSchemaMigration migration) {
         this.service = service;
+        this.migration = migration;
     }
 
     /* -------------------- Summary -------------------- */
@@ -54,6 +60,24 @@ public class AnalyticsController {
         return service.salesVsPurchase(p, r[0], r[1]);
     }
 
+    /* -------- Sales vs Purchase per day (dashboard poll) -------- */
+    /**
+     * Closed days are served from cache. The ETag comes from the write generations
+     * shared by every instance, so a poll with a matching {@code If-None-Match} gets a
+     * 304 after one point read and before any aggregation runs.
+     */
+    @GetMapping("/series/sales-vs-purchase/by-date")
+    public List<SeriesPoint> salesVsPurchaseByDate(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            WebRequest request) {
+
+        LocalDate[] r = rangeOrDefault(from, to);
+        String etag = "\"" + service.salesVsPurchaseVersion(r[0], r[1]) + "\"";
+        if (request.checkNotModified(etag)) return null;
+        return service.salesVsPurchaseByDate(r[0], r[1]);
+    }
+
     /* -------------------- Top Products -------------------- */
     @GetMapping("/top-products")
     public List<TopProductDTO> topProducts(
@@ -92,6 +116,33 @@ public class AnalyticsController {
         return service.paymentsBreakdown(p, r[0], r[1]);
     }
 
+    /* -------------------- Snapshot (all widgets, one scan) -------------------- */
+    @GetMapping("/snapshot")
+    public AnalyticsSnapshot snapshot(
+            @RequestParam(defaultValue = "daily") String period,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "5") int topLimit,
+            @RequestParam(defaultValue = "8") int recentLimit) {
+
+        String p = normalizePeriod(period);
+        LocalDate[] r = rangeOrDefault(from, to);
+        return service.snapshot(p, r[0], r[1], clamp(topLimit, 1, 50), clamp(recentLimit, 1, 50));
+    }
+
+    /* -------------------- Sales schema migration -------------------- */
+    @GetMapping("/schema-migration")
+    public Map<String, Long> schemaMigrationStatus() {
+        return Map.of("pending", migration.pendingCount());
+    }
+
+    /** Runs the canonical-shape migration now; {@code migrated = -1} when one is already running. */
+    @PostMapping("/schema-migration")
+    public Map<String, Long> migrateSchema() {
+        long migrated = migration.migrate();
+        return Map.of("migrated", migrated, "pending", migration.pendingCount());
+    }
+
     /* ==================== helpers ==================== */
 
     private static String normalizePeriod(String period) {
@@ -0,0 +1,86 @@
+package com.pos.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.Document;
+
+/**
+ * Server-side versions of the tolerant field readers in {@link AnalyticsService}.
+ * Every expression mirrors the Java fallback order so that the pipeline and the
+ * in-JVM path agree on the same legacy documents.
+ */
+final class AnalyticsPipelines {
+
+    private AnalyticsPipelines() {}
+
+    /** {@code readTotal}: first non-null total key, else sum of line items + VAT. */
+    static Document totalExpr(String[] totalKeys, String[] itemsKeys, String[] lineKeys,
+                              String[] qtyKeys, String[] priceKeys, String[] vatKeys) {
+        Document lineSum = new Document("$sum", new Document("$map", new Document()
+                .append("input", firstArrayExpr("$", itemsKeys))
+                .append("as", "it")
+                .append("in", new Document("$let", new Document()
+                        .append("vars", new Document("line", toNum(coalesce("$$it.", lineKeys))))
+                        .append("in", new Document("$cond", Arrays.asList(
+                                new Document("$ne", Arrays.asList("$$line", 0)),
+                                "$$line",
+                                new Document("$multiply", Arrays.asList(
+                                        toNum(coalesce("$$it.", qtyKeys)),
+                                        toNum(coalesce("$$it.", priceKeys)))))))))));
+
+        return new Document("$let", new Document()
+                .append("vars", new Document("t", toNum(coalesce("$", totalKeys))))
+                .append("in", new Document("$cond", Arrays.asList(
+                        new Document("$gt", Arrays.asList("$$t", 0)),
+                        "$$t",
+                        new Document("$add", Arrays.asList(lineSum, toNum(coalesce("$", vatKeys))))))));
+    }
+
+    /** Distinct-customer key, same pairing as the Java {@code id|name} string. */
+    static Document customerKeyExpr(String[] idKeys, String[] nameKeys) {
+        return new Document()
+                .append("id", new Document("$ifNull", Arrays.asList(coalesce("$", idKeys), "")))
+                .append("nm", new Document("$ifNull", Arrays.asList(coalesce("$", nameKeys), "")));
+    }
+
+    /** {@code canonical} for documents migrated to {@code schemaVersion >= version}, else {@code legacy}. */
+    static Document ifCanonical(String versionField, int version, Object canonical, Object legacy) {
+        return new Document("$cond", Arrays.asList(
+                new Document("$gte", Arrays.asList("$" + versionField, version)), canonical, legacy));
+    }
+
+    /** Nested {@code $ifNull} over the given paths (works on every server version). */
+    static Object coalesce(String prefix, String... keys) {
+        Object expr = null;
+        for (int i = keys.length - 1; i >= 0; i--) {
+            String path = prefix + keys[i];
+            expr = (expr == null) ? path : new Document("$ifNull", Arrays.asList(path, expr));
+        }
+        return expr;
+    }
+
+    /** First key that holds an array, else an empty array (like {@code firstArray}). */
+    static Object firstArrayExpr(String prefix, String... keys) {
+        Object expr = new ArrayList<>();
+        for (int i = keys.length - 1; i >= 0; i--) {
+            String path = prefix + keys[i];
+            expr = new Document("$cond", Arrays.asList(new Document("$isArray", path), path, expr));
+        }
+        return expr;
+    }
+
+    /** Lenient number conversion: strings are parsed, junk/null become 0. */
+    static Document toNum(Object expr) {
+        return new Document("$convert", new Document()
+                .append("input", expr)
+                .append("to", "double")
+                .append("onError", 0)
+                .append("onNull", 0));
+    }
+
+    static List<Document> pipeline(Document... stages) {
+        return new ArrayList<>(Arrays.asList(stages));
+    }
+}
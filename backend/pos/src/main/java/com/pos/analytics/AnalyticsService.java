@@ -4,23 +4,45 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.time.temporal.IsoFields;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
 import java.util.stream.Collectors;
 
 import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+import com.pos.analytics.dto.AnalyticsSnapshot;
 import com.pos.analytics.dto.InvoiceRow;
 import com.pos.analytics.dto.PaymentSlice;
 import com.pos.analytics.dto.SeriesPoint;
 import com.pos.analytics.dto.SummaryDTO;
 import com.pos.analytics.dto.TopProductDTO;
+import com.pos.config.ReportCacheConfig;
+import com.pos.config.ReportingMongoConfig;
+import com.pos.service.ReportDataChangedEvent;
 
 @Service
 public class AnalyticsService {
 
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsService.class);
+
     /* ================== adjust to your schema if needed ================== */
     private static final String SALES_COLL     = "sales";
     private static final String PURCHASES_COLL = "purchases";
@@ -36,25 +58,116 @@ public class AnalyticsService {
     };
 
     private static final String[] ITEMS_KEYS      = {"sale_items","items","lines","details"};
+    private static final String[] ITEM_NAME_KEYS  = {"productName","name","item","title"};
     private static final String[] ITEM_QTY_KEYS   = {"quantity","qty","pcs","count"};
     private static final String[] ITEM_PRICE_KEYS = {"rate","price","unitPrice","sellingPrice"};
     private static final String[] ITEM_LINE_KEYS  = {"lineTotal","total","amount","priceTotal"};
     private static final String[] VAT_KEYS        = {"vat","tax","totals.vat","summary.vat"};
+    private static final String[] PAYMENTS_KEYS   = {"payments","pay","settlements"};
+    private static final String[] STATUS_KEYS     = {"status","state","paymentStatus"};
     /* ==================================================================== */
 
     private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
 
+    /*
+     * Canonical shape written by SalesSchemaMigration: once schemaVersion is current,
+     * every reader below takes the values from canon.* instead of probing the alias
+     * lists above.
+     */
+    static final String F_SCHEMA    = "schemaVersion";
+    static final String F_CANON     = "canon";
+    static final int SCHEMA_VERSION = 1;
+    private static final String C_TOTAL    = "total";
+    private static final String C_CUST_ID  = "customerId";
+    private static final String C_CUST_NM  = "customerName";
+    private static final String C_INV_NO   = "invoiceNo";
+    private static final String C_STATUS   = "status";
+    private static final String C_ITEMS    = "items";
+    private static final String C_PAYMENTS = "payments";
+
+    /** Pipeline twins of {@link #readTotal} and the distinct-customer key. */
+    private static final Document TOTAL_EXPR = AnalyticsPipelines.ifCanonical(F_SCHEMA, SCHEMA_VERSION,
+            "$" + F_CANON + "." + C_TOTAL,
+            AnalyticsPipelines.totalExpr(
+                    TOTAL_KEYS, ITEMS_KEYS, ITEM_LINE_KEYS, ITEM_QTY_KEYS, ITEM_PRICE_KEYS, VAT_KEYS));
+    private static final Document CUSTOMER_EXPR = AnalyticsPipelines.ifCanonical(F_SCHEMA, SCHEMA_VERSION,
+            AnalyticsPipelines.customerKeyExpr(
+                    new String[]{F_CANON + "." + C_CUST_ID}, new String[]{F_CANON + "." + C_CUST_NM}),
+            AnalyticsPipelines.customerKeyExpr(CUSTOMER_ID_KEYS, CUSTOMER_NAME_KEYS));
+
+    /* Streaming reads fetch only what the readers below touch, a batch at a time. */
+    private static final int STREAM_BATCH = 500;
+    private static final Document PAYMENTS_PROJECTION = withCanon(projection(PAYMENTS_KEYS), C_PAYMENTS);
+    private static final Document TOTAL_PROJECTION    = withCanon(projection(
+            new String[]{F_DATE}, TOTAL_KEYS, ITEMS_KEYS, VAT_KEYS), C_TOTAL);
+    private static final Document SNAPSHOT_PROJECTION = withCanon(projection(
+            new String[]{F_DATE}, TOTAL_KEYS, ITEMS_KEYS, VAT_KEYS, PAYMENTS_KEYS,
+            INVOICE_NO_KEYS, CUSTOMER_ID_KEYS, CUSTOMER_NAME_KEYS, STATUS_KEYS),
+            C_TOTAL, C_CUST_ID, C_CUST_NM, C_INV_NO, C_STATUS, C_ITEMS, C_PAYMENTS);
+
     private final MongoTemplate mongo;
-    public AnalyticsService(MongoTemplate mongo) { this.mongo = mongo; }
+    /** Writes and reads the shared generations, which must read back current. */
+    private final MongoTemplate primary;
+    private final CustomerSketchService customerSketches;
+
+    /**
+     * Write generations shared by every instance, in {@code reporting_state}:
+     * {@code {_id: "analytics_generations", sales, purchases, salesClosed, purchasesClosed}}.
+     * The plain counter moves on every write; the {@code Closed} one only when a write
+     * touches a day before today.
+     */
+    private static final String C_STATE = "reporting_state";
+    private static final String GENERATIONS_ID = "analytics_generations";
+    private static final String CLOSED_SUFFIX = "Closed";
+
+    /** Closed-day totals per collection for {@link #salesVsPurchaseByDate}; ~10 years per collection at most. */
+    private static final int CLOSED_DAYS_MAX = 3660;
+    private final Map<String, Map<LocalDate, Double>> closedDays = new ConcurrentHashMap<>();
+    /** Shared closed-day generation each {@link #closedDays} map was filled under. */
+    private final Map<String, Long> closedDaysGeneration = new ConcurrentHashMap<>();
+    /** Local write counters; guard a closed-day load against a write on this instance landing mid-read. */
+    private final Map<String, AtomicLong> cacheGenerations = new ConcurrentHashMap<>();
+
+    /** Ranges longer than this count customers from HyperLogLog sketches instead of exactly. */
+    @Value("${app.analytics.exact-customers-max-days:62}")
+    private int exactCustomersMaxDays = 62;
+
+    /** Snapshot windows this long rank products with a Space-Saving sketch of this many counters. */
+    @Value("${app.analytics.top-products-sketch-min-days:366}")
+    private int topProductsSketchMinDays = 366;
+    @Value("${app.analytics.top-products-sketch-capacity:2000}")
+    private int topProductsSketchCapacity = 2000;
+
+    public AnalyticsService(@Qualifier(ReportingMongoConfig.REPORTING) MongoTemplate mongo,
+                            MongoTemplate primary, CustomerSketchService customerSketches) {
+        this.mongo = mongo;
+        this.primary = primary;
+        this.customerSketches = customerSketches;
+    }
+
+    /** Raw driver access skips the template's read preference, so it is re-applied here. */
+    private MongoCollection<Document> collection(String name) {
+        MongoCollection<Document> c = mongo.getCollection(name);
+        return mongo.hasReadPreference() ? c.withReadPreference(mongo.getReadPreference()) : c;
+    }
 
     /* ------------------------- SUMMARY ------------------------- */
 
+    @Cacheable(cacheNames = ReportCacheConfig.ANALYTICS, keyGenerator = ReportCacheConfig.RANGE_KEY)
     public SummaryDTO summary(String period, LocalDate from, LocalDate to) {
-        double sales    = sumAmountJava(SALES_COLL, from, to);
-        double purchase = sumAmountJava(PURCHASES_COLL, from, to);
-        long invoices   = countDocsJava(SALES_COLL, from, to);
-        long customers  = countDistinctCustomerJava(SALES_COLL, from, to);
+        // the stored sketches are only complete once a rebuild has run
+        boolean exact   = exactCustomers(from, to) || !customerSketches.isReady();
+        Document r = summaryFacet(from, to, exact);
+        double sales    = facetNum(r, "sales", "total");
+        double purchase = facetNum(r, "purchase", "total");
+        long invoices   = (long) facetNum(r, "sales", "n");
+        long customers  = exact
+                ? (long) facetNum(r, "customers", "n")
+                : customerSketches.merged(from, to).estimate();
+        return toSummary(sales, purchase, invoices, customers);
+    }
 
+    private static SummaryDTO toSummary(double sales, double purchase, long invoices, long customers) {
         SummaryDTO dto = new SummaryDTO();
         dto.setGrossSales(sales);
         dto.setPurchase(purchase);
@@ -67,10 +180,14 @@ public class AnalyticsService {
 
     /* ------------------- SALES vs PURCHASE (Mon..Sun / Week / Month) ------------------- */
 
+    @Cacheable(cacheNames = ReportCacheConfig.ANALYTICS, keyGenerator = ReportCacheConfig.RANGE_KEY)
     public List<SeriesPoint> salesVsPurchase(String period, LocalDate from, LocalDate to) {
         Map<String, Double> sales = seriesAmountJava(SALES_COLL, period, from, to);
         Map<String, Double> purch = seriesAmountJava(PURCHASES_COLL, period, from, to);
+        return buildSeries(period, sales, purch);
+    }
 
+    private static List<SeriesPoint> buildSeries(String period, Map<String, Double> sales, Map<String, Double> purch) {
         Set<String> labels = new LinkedHashSet<>();
         labels.addAll(sales.keySet());
         labels.addAll(purch.keySet());
@@ -107,10 +224,14 @@ public class AnalyticsService {
     }
 
     /* ------------------- SALES vs PURCHASE per calendar date (yyyy-MM-dd) ------------------- */
-    /** Dashboard weekly ഗ്രാഫിന് – ദിവസേന label = yyyy-MM-dd */
+    /**
+     * Per-day series. Days before today are closed (Z report taken), so their totals
+     * come from {@link #closedDays} and only the open day is aggregated on each poll.
+     */
     public List<SeriesPoint> salesVsPurchaseByDate(LocalDate from, LocalDate to) {
-        Map<String, Double> sales = seriesAmountByDate(SALES_COLL, from, to);
-        Map<String, Double> purch = seriesAmountByDate(PURCHASES_COLL, from, to);
+        Document gens = generations();
+        Map<String, Double> sales = dailyTotals(SALES_COLL, from, to, gens);
+        Map<String, Double> purch = dailyTotals(PURCHASES_COLL, from, to, gens);
 
         double max = 1;
         LocalDate d = from;
@@ -141,35 +262,120 @@ public class AnalyticsService {
         return out;
     }
 
+    /**
+     * Version of {@link #salesVsPurchaseByDate} for the range, from one read of the
+     * shared generations: a sales or purchase write on any instance moves it, and the
+     * date rolls the open day over.
+     */
+    public String salesVsPurchaseVersion(LocalDate from, LocalDate to) {
+        Document gens = generations();
+        return from + "-" + to + "-" + LocalDate.now(ZONE)
+                + "-" + generation(gens, SALES_COLL) + "-" + generation(gens, PURCHASES_COLL);
+    }
+
     /* ------------------------- TOP PRODUCTS ------------------------- */
 
+    /**
+     * Grouped, sorted and cut to {@code limit} on the server: only the top rows come
+     * back, however many SKUs sold in the window.
+     */
+    @Cacheable(cacheNames = ReportCacheConfig.ANALYTICS, keyGenerator = ReportCacheConfig.RANGE_KEY)
     public List<TopProductDTO> topProducts(String period, LocalDate from, LocalDate to, int limit) {
-        Map<String, Long> qtyMap = new HashMap<>();
-        for (Document d : findByDate(SALES_COLL, from, to)) {
-            List<Document> items = firstArray(d, ITEMS_KEYS);
-            if (items == null) continue;
-            for (Object o : items) {
-                if (!(o instanceof Document)) continue;
-                Document it = (Document) o;
-                String name = str(firstValue(it, "productName","name","item","title"));
-                if (name.isEmpty()) continue;
-                long q = Math.round(num(firstValue(it, ITEM_QTY_KEYS)));
-                qtyMap.merge(name, q, Long::sum);
+        int k = Math.max(1, limit);
+        List<Document> pipeline = AnalyticsPipelines.pipeline(
+                new Document("$match", dateFilter(F_DATE, from, to)),
+                new Document("$project", new Document("_id", 0)
+                        .append(F_SCHEMA, 1)
+                        .append("it", AnalyticsPipelines.ifCanonical(F_SCHEMA, SCHEMA_VERSION,
+                                "$" + F_CANON + "." + C_ITEMS,
+                                AnalyticsPipelines.firstArrayExpr("$", ITEMS_KEYS)))),
+                new Document("$unwind", "$it"),
+                new Document("$project", new Document()
+                        .append("name", AnalyticsPipelines.ifCanonical(F_SCHEMA, SCHEMA_VERSION, "$it.name",
+                                new Document("$toString", AnalyticsPipelines.coalesce("$it.", ITEM_NAME_KEYS))))
+                        // Math.round semantics (half up), not $round's half-to-even
+                        .append("qty", AnalyticsPipelines.ifCanonical(F_SCHEMA, SCHEMA_VERSION, "$it.qty",
+                                new Document("$floor", new Document("$add", Arrays.asList(
+                                        AnalyticsPipelines.toNum(AnalyticsPipelines.coalesce("$it.", ITEM_QTY_KEYS)), 0.5)))))),
+                new Document("$match", new Document("name", new Document("$nin", Arrays.asList(null, "")))),
+                new Document("$group", new Document("_id", "$name").append("qty", new Document("$sum", "$qty"))),
+                new Document("$sort", new Document("qty", -1).append("_id", 1)),
+                new Document("$limit", k));
+
+        List<String> names = new ArrayList<>();
+        List<Long> qtys = new ArrayList<>();
+        for (Document r : collection(SALES_COLL).aggregate(pipeline).allowDiskUse(true)) {
+            names.add(str(r.get("_id")));
+            qtys.add((long) num(r.get("qty")));
+        }
+        return toTopProducts(names, qtys);
+    }
+
+    private static void addItemQty(Document d, ObjLongConsumer<String> sink) {
+        Document c = canon(d);
+        if (c != null) {
+            for (Document it : c.getList(C_ITEMS, Document.class, List.of())) {
+                sink.accept(it.getString("name"), ((Number) it.get("qty")).longValue());
             }
+            return;
+        }
+        List<Document> items = firstArray(d, ITEMS_KEYS);
+        if (items == null) return;
+        for (Object o : items) {
+            if (!(o instanceof Document)) continue;
+            Document it = (Document) o;
+            String name = str(firstValue(it, ITEM_NAME_KEYS));
+            if (name.isEmpty()) continue;
+            sink.accept(name, Math.round(num(firstValue(it, ITEM_QTY_KEYS))));
         }
+    }
 
-        List<Map.Entry<String,Long>> sorted = qtyMap.entrySet().stream()
-                .sorted(Map.Entry.<String,Long>comparingByValue().reversed())
-                .limit(Math.max(1, limit))
-                .collect(Collectors.toList());
+    /** Adds into a mutable {@code long[1]} per product, so repeat hits never box. */
+    private static void addQty(Map<String, long[]> qtyMap, String name, long q) {
+        qtyMap.computeIfAbsent(name, n -> new long[1])[0] += q;
+    }
+
+    /** Top {@code limit} by quantity through a size-K min-heap instead of sorting every product. */
+    private static List<TopProductDTO> rankProducts(Map<String, long[]> qtyMap, int limit) {
+        int k = Math.max(1, limit);
+        Comparator<Map.Entry<String, long[]>> byQty =
+                Comparator.<Map.Entry<String, long[]>>comparingLong(e -> e.getValue()[0])
+                        .thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+        PriorityQueue<Map.Entry<String, long[]>> heap = new PriorityQueue<>(k + 1, byQty);
+        for (Map.Entry<String, long[]> e : qtyMap.entrySet()) {
+            heap.add(e);
+            if (heap.size() > k) heap.poll();
+        }
 
-        long max = sorted.stream().mapToLong(Map.Entry::getValue).max().orElse(1);
+        List<String> names = new ArrayList<>(heap.size());
+        List<Long> qtys = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            Map.Entry<String, long[]> e = heap.poll();
+            names.add(0, e.getKey());
+            qtys.add(0, e.getValue()[0]);
+        }
+        return toTopProducts(names, qtys);
+    }
+
+    private static List<TopProductDTO> rankProducts(SpaceSaving sketch, int limit) {
+        List<String> names = new ArrayList<>();
+        List<Long> qtys = new ArrayList<>();
+        for (SpaceSaving.Counter c : sketch.top(Math.max(1, limit))) {
+            names.add(c.key);
+            qtys.add(c.count);
+        }
+        return toTopProducts(names, qtys);
+    }
+
+    /** {@code names}/{@code qtys} are already ordered highest first. */
+    private static List<TopProductDTO> toTopProducts(List<String> names, List<Long> qtys) {
+        long max = qtys.isEmpty() ? 1 : qtys.get(0);
         List<TopProductDTO> list = new ArrayList<>();
-        for (Map.Entry<String,Long> e : sorted) {
+        for (int i = 0; i < names.size(); i++) {
             TopProductDTO tp = new TopProductDTO();
-            tp.setName(e.getKey());
-            tp.setQty(e.getValue());
-            tp.setPct(e.getValue() * 100.0 / max);
+            tp.setName(names.get(i));
+            tp.setQty(qtys.get(i));
+            tp.setPct(qtys.get(i) * 100.0 / max);
             list.add(tp);
         }
         return list;
@@ -177,42 +383,74 @@ public class AnalyticsService {
 
     /* ------------------------- RECENT INVOICES ------------------------- */
 
+    @Cacheable(cacheNames = ReportCacheConfig.ANALYTICS, keyGenerator = ReportCacheConfig.RANGE_KEY)
     public List<InvoiceRow> recentInvoices(int limit, LocalDate from, LocalDate to) {
-        List<Document> docs = mongo.getCollection(SALES_COLL)
+        List<Document> docs = collection(SALES_COLL)
                 .find(dateFilter(F_DATE, from, to))
                 .sort(new Document(F_DATE, -1))
                 .limit(limit)
                 .into(new ArrayList<>());
 
         List<InvoiceRow> out = new ArrayList<>();
-        for (Document d : docs) {
+        for (Document d : docs) out.add(toInvoiceRow(d));
+        return out;
+    }
+
+    private static InvoiceRow toInvoiceRow(Document d) {
+        Document c = canon(d);
+        if (c != null) {
             InvoiceRow row = new InvoiceRow();
-            row.setNo(str(firstValue(d, INVOICE_NO_KEYS)));
+            row.setNo(str(c.get(C_INV_NO)));
             Date dt = toDate(d.get(F_DATE));
             row.setDate(dt == null ? "" : dt.toInstant().atZone(ZONE).toLocalDate().toString());
-            row.setCustomer(str(firstValue(d, CUSTOMER_NAME_KEYS), "Walk-in"));
-            row.setAmount(readTotal(d));
-            row.setStatus(str(firstValue(d, "status","state","paymentStatus"), "Paid"));
-            out.add(row);
+            row.setCustomer(str(c.get(C_CUST_NM), "Walk-in"));
+            row.setAmount(num(c.get(C_TOTAL)));
+            row.setStatus(str(c.get(C_STATUS), "Paid"));
+            return row;
         }
-        return out;
+        InvoiceRow row = new InvoiceRow();
+        row.setNo(str(firstValue(d, INVOICE_NO_KEYS)));
+        Date dt = toDate(d.get(F_DATE));
+        row.setDate(dt == null ? "" : dt.toInstant().atZone(ZONE).toLocalDate().toString());
+        row.setCustomer(str(firstValue(d, CUSTOMER_NAME_KEYS), "Walk-in"));
+        row.setAmount(readTotal(d));
+        row.setStatus(str(firstValue(d, STATUS_KEYS), "Paid"));
+        return row;
     }
 
     /* ------------------------- PAYMENTS BREAKDOWN ------------------------- */
 
+    @Cacheable(cacheNames = ReportCacheConfig.ANALYTICS, keyGenerator = ReportCacheConfig.RANGE_KEY)
     public List<PaymentSlice> paymentsBreakdown(String period, LocalDate from, LocalDate to) {
         Map<String, Double> sums = new HashMap<>();
-        for (Document d : findByDate(SALES_COLL, from, to)) {
-            List<Document> pays = firstArray(d, "payments","pay","settlements");
-            if (pays == null) continue;
-            for (Object o : pays) {
-                if (!(o instanceof Document)) continue;
-                Document p = (Document) o;
-                String method = str(firstValue(p, "method","mode","type"), "Other");
-                double amt    = num(firstValue(p, "amount","paid","value"));
-                sums.merge(method, amt, Double::sum);
+        try (MongoCursor<Document> cur = streamByDate(SALES_COLL, from, to, PAYMENTS_PROJECTION)) {
+            while (cur.hasNext()) {
+                addPayments(cur.next(), sums);
+            }
+        }
+        return toSlices(sums);
+    }
+
+    private static void addPayments(Document d, Map<String, Double> sums) {
+        Document c = canon(d);
+        if (c != null) {
+            for (Document p : c.getList(C_PAYMENTS, Document.class, List.of())) {
+                sums.merge(p.getString("method"), num(p.get("amount")), Double::sum);
             }
+            return;
+        }
+        List<Document> pays = firstArray(d, PAYMENTS_KEYS);
+        if (pays == null) return;
+        for (Object o : pays) {
+            if (!(o instanceof Document)) continue;
+            Document p = (Document) o;
+            String method = str(firstValue(p, "method","mode","type"), "Other");
+            double amt    = num(firstValue(p, "amount","paid","value"));
+            sums.merge(method, amt, Double::sum);
         }
+    }
+
+    private static List<PaymentSlice> toSlices(Map<String, Double> sums) {
         double total = sums.values().stream().mapToDouble(Double::doubleValue).sum();
         if (total <= 0) total = 1;
 
@@ -227,27 +465,134 @@ public class AnalyticsService {
         return out;
     }
 
+    /* ------------------------- SNAPSHOT (single pass) ------------------------- */
+
+    /**
+     * Everything the analytics page shows, built from one walk over the sales window
+     * and one over the purchases window. Each sales document feeds every accumulator
+     * (series bucket, product quantities, payment split, customers, latest bills).
+     */
+    @Cacheable(cacheNames = ReportCacheConfig.ANALYTICS, keyGenerator = ReportCacheConfig.RANGE_KEY)
+    public AnalyticsSnapshot snapshot(String period, LocalDate from, LocalDate to, int topLimit, int recentLimit) {
+        String p = (period == null ? "daily" : period.toLowerCase());
+        int keep = Math.max(1, recentLimit);
+
+        Map<String, Double> salesSeries = new LinkedHashMap<>();
+        Map<String, Double> purchSeries = new LinkedHashMap<>();
+        // exact per-product counters, or a bounded Space-Saving sketch for very long windows
+        boolean sketchTop = ChronoUnit.DAYS.between(from, to) >= topProductsSketchMinDays;
+        Map<String, long[]> qtyMap = sketchTop ? null : new HashMap<>();
+        SpaceSaving topSketch = sketchTop ? new SpaceSaving(topProductsSketchCapacity) : null;
+        ObjLongConsumer<String> qtySink = sketchTop
+                ? topSketch::offer
+                : (name, q) -> addQty(qtyMap, name, q);
+        Map<String, Double> paySums = new HashMap<>();
+        // exact set for short windows; a fixed 16 KB sketch once the window gets long
+        Set<String> customers = exactCustomers(from, to) ? new HashSet<>() : null;
+        HyperLogLog customerSketch = (customers == null) ? new HyperLogLog() : null;
+        // min-heap on date: the head is always the oldest of the bills kept so far
+        PriorityQueue<Document> latest = new PriorityQueue<>(Comparator.comparingLong(AnalyticsService::dateMillis));
+        double sales = 0, purchase = 0;
+        long invoices = 0;
+
+        try (MongoCursor<Document> cur = streamByDate(SALES_COLL, from, to, SNAPSHOT_PROJECTION)) {
+            while (cur.hasNext()) {
+                Document d = cur.next();
+                double total = readTotal(d);
+                sales += total;
+                invoices++;
+
+                String label = periodLabel(toDate(d.get(F_DATE)), p);
+                if (label != null) salesSeries.merge(label, total, Double::sum);
+                addItemQty(d, qtySink);
+                addPayments(d, paySums);
+                if (customers != null) customers.add(customerKey(d));
+                else customerSketch.add(customerKey(d));
+
+                latest.add(d);
+                if (latest.size() > keep) latest.poll();
+            }
+        }
+
+        try (MongoCursor<Document> cur = streamByDate(PURCHASES_COLL, from, to, TOTAL_PROJECTION)) {
+            while (cur.hasNext()) {
+                Document d = cur.next();
+                double total = readTotal(d);
+                purchase += total;
+                String label = periodLabel(toDate(d.get(F_DATE)), p);
+                if (label != null) purchSeries.merge(label, total, Double::sum);
+            }
+        }
+
+        List<Document> recentDocs = new ArrayList<>(latest);
+        recentDocs.sort(Comparator.comparingLong(AnalyticsService::dateMillis).reversed());
+        List<InvoiceRow> recent = new ArrayList<>();
+        for (Document d : recentDocs) recent.add(toInvoiceRow(d));
+
+        AnalyticsSnapshot snap = new AnalyticsSnapshot();
+        snap.setSummary(toSummary(sales, purchase, invoices,
+                customers != null ? customers.size() : customerSketch.estimate()));
+        snap.setSeries(buildSeries(p, salesSeries, purchSeries));
+        snap.setTopProducts(sketchTop ? rankProducts(topSketch, topLimit) : rankProducts(qtyMap, topLimit));
+        snap.setPayments(toSlices(paySums));
+        snap.setRecentInvoices(recent);
+        return snap;
+    }
+
     /* ============================= helpers ============================= */
 
-    private double sumAmountJava(String coll, LocalDate from, LocalDate to) {
-        double sum = 0;
-        for (Document d : findByDate(coll, from, to)) sum += readTotal(d);
-        return sum;
+    /**
+     * Gross sales, purchase, invoice count and distinct customers in one round trip:
+     * sales are unioned with purchases and split again by {@code $facet}, so nothing
+     * but the four numbers ever leaves the server. Without {@code exactCustomers} the
+     * distinct-customer facet is skipped (the caller uses the day sketches).
+     */
+    private Document summaryFacet(LocalDate from, LocalDate to, boolean exactCustomers) {
+        Document match = new Document("$match", dateFilter(F_DATE, from, to));
+
+        List<Document> purchases = AnalyticsPipelines.pipeline(
+                match,
+                new Document("$project", new Document("_src", "p").append("_amt", TOTAL_EXPR)));
+
+        Document salesProject = new Document("_src", "s").append("_amt", TOTAL_EXPR);
+        if (exactCustomers) salesProject.append("_cust", CUSTOMER_EXPR);
+
+        Document facets = new Document()
+                .append("sales", List.of(
+                        bySource("s"),
+                        new Document("$group", new Document("_id", null)
+                                .append("total", new Document("$sum", "$_amt"))
+                                .append("n", new Document("$sum", 1)))))
+                .append("purchase", List.of(
+                        bySource("p"),
+                        new Document("$group", new Document("_id", null)
+                                .append("total", new Document("$sum", "$_amt")))));
+        if (exactCustomers) {
+            facets.append("customers", List.of(
+                    bySource("s"),
+                    new Document("$group", new Document("_id", "$_cust")),
+                    new Document("$count", "n")));
+        }
+
+        List<Document> pipeline = AnalyticsPipelines.pipeline(
+                match,
+                new Document("$project", salesProject),
+                new Document("$unionWith", new Document("coll", PURCHASES_COLL).append("pipeline", purchases)),
+                new Document("$facet", facets));
+
+        Document r = collection(SALES_COLL).aggregate(pipeline).allowDiskUse(true).first();
+        return r == null ? new Document() : r;
     }
 
-    private long countDocsJava(String coll, LocalDate from, LocalDate to) {
-        return mongo.getCollection(coll).countDocuments(dateFilter(F_DATE, from, to));
+    private static Document bySource(String src) {
+        return new Document("$match", new Document("_src", src));
     }
 
-    private long countDistinctCustomerJava(String coll, LocalDate from, LocalDate to) {
-        Set<String> set = new HashSet<>();
-        for (Document d : findByDate(coll, from, to)) {
-            Object id = firstValue(d, CUSTOMER_ID_KEYS);
-            Object nm = firstValue(d, CUSTOMER_NAME_KEYS);
-            String key = (id != null ? id.toString() : "") + "|" + (nm != null ? nm.toString() : "");
-            set.add(key);
-        }
-        return set.size();
+    /** Reads {@code facet[0].field}; an empty facet (no matching docs) is 0. */
+    private static double facetNum(Document r, String facet, String field) {
+        List<?> rows = r.getList(facet, Object.class, List.of());
+        if (rows.isEmpty() || !(rows.get(0) instanceof Document)) return 0;
+        return num(((Document) rows.get(0)).get(field));
     }
 
     /** label -> sum(total) for Mon..Sun / weekly / monthly */
@@ -255,55 +600,163 @@ public class AnalyticsService {
         String p = (period == null ? "daily" : period.toLowerCase());
         Map<String, Double> map = new LinkedHashMap<>();
 
-        for (Document d : findByDate(coll, from, to)) {
-            Date dt = toDate(d.get(F_DATE));
-            if (dt == null) continue;
-            ZonedDateTime zdt = dt.toInstant().atZone(ZONE);
-            String label;
-            switch (p) {
-                case "weekly": {
-                    int year = zdt.get(IsoFields.WEEK_BASED_YEAR);
-                    int week = zdt.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
-                    label = year + "-W" + String.format("%02d", week);
-                    break;
-                }
-                case "monthly": {
-                    label = zdt.format(DateTimeFormatter.ofPattern("yyyy-MM"));
-                    break;
-                }
-                default: {
-                    String d3 = zdt.getDayOfWeek().toString(); // MONDAY
-                    label = d3.substring(0,1).toUpperCase() + d3.substring(1,3).toLowerCase(); // Mon
+        try (MongoCursor<Document> cur = streamByDate(coll, from, to, TOTAL_PROJECTION)) {
+            while (cur.hasNext()) {
+                Document d = cur.next();
+                String label = periodLabel(toDate(d.get(F_DATE)), p);
+                if (label == null) continue;
+                map.merge(label, readTotal(d), Double::sum);
+            }
+        }
+
+        return "daily".equalsIgnoreCase(p) ? orderDaily(map) : map;
+    }
+
+    /** Bucket label for Mon..Sun / yyyy-Www / yyyy-MM; null when the date is unreadable. */
+    private static String periodLabel(Date dt, String p) {
+        if (dt == null) return null;
+        ZonedDateTime zdt = dt.toInstant().atZone(ZONE);
+        switch (p) {
+            case "weekly": {
+                int year = zdt.get(IsoFields.WEEK_BASED_YEAR);
+                int week = zdt.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+                return year + "-W" + String.format("%02d", week);
+            }
+            case "monthly":
+                return zdt.format(DateTimeFormatter.ofPattern("yyyy-MM"));
+            default: {
+                String d3 = zdt.getDayOfWeek().toString(); // MONDAY
+                return d3.substring(0,1).toUpperCase() + d3.substring(1,3).toLowerCase(); // Mon
+            }
+        }
+    }
+
+    private static Map<String, Double> orderDaily(Map<String, Double> map) {
+        List<String> order = Arrays.asList("Mon","Tue","Wed","Thu","Fri","Sat","Sun");
+        Map<String, Double> ordered = new LinkedHashMap<>();
+        for (String k : order) if (map.containsKey(k)) ordered.put(k, map.get(k));
+        for (Map.Entry<String,Double> e : map.entrySet())
+            if (!ordered.containsKey(e.getKey())) ordered.put(e.getKey(), e.getValue());
+        return ordered;
+    }
+
+    /**
+     * Day label -> total for [from, to]: closed days from the cache (loading any gaps
+     * in one read), the open day always fresh. A write to a closed day on any instance
+     * moves the shared closed generation, which drops this instance's cached days.
+     */
+    private Map<String, Double> dailyTotals(String coll, LocalDate from, LocalDate to, Document gens) {
+        LocalDate today = LocalDate.now(ZONE);
+        Map<LocalDate, Double> cache = closedDays.computeIfAbsent(coll, k -> new ConcurrentHashMap<>());
+        long closedGen = generation(gens, coll + CLOSED_SUFFIX);
+        Long filledUnder = closedDaysGeneration.put(coll, closedGen);
+        if (filledUnder != null && filledUnder != closedGen) cache.clear();
+
+        LocalDate lastClosed = to.isBefore(today) ? to : today.minusDays(1);
+        LocalDate firstGap = null, lastGap = null;
+        for (LocalDate d = from; !d.isAfter(lastClosed); d = d.plusDays(1)) {
+            if (cache.containsKey(d)) continue;
+            if (firstGap == null) firstGap = d;
+            lastGap = d;
+        }
+        if (firstGap != null) {
+            long gen = cacheGeneration(coll).get();
+            Map<String, Double> loaded = seriesAmountByDate(coll, firstGap, lastGap);
+            // a write that landed during the read bumped the generation; don't cache what it may have missed
+            if (gen == cacheGeneration(coll).get()) {
+                if (cache.size() > CLOSED_DAYS_MAX) cache.clear();
+                for (LocalDate d = firstGap; !d.isAfter(lastGap); d = d.plusDays(1)) {
+                    cache.put(d, loaded.getOrDefault(d.toString(), 0d));
                 }
+            } else {
+                return seriesAmountByDate(coll, from, to);
             }
-            map.merge(label, readTotal(d), Double::sum);
         }
 
-        if ("daily".equalsIgnoreCase(p)) {
-            List<String> order = Arrays.asList("Mon","Tue","Wed","Thu","Fri","Sat","Sun");
-            Map<String, Double> ordered = new LinkedHashMap<>();
-            for (String k : order) if (map.containsKey(k)) ordered.put(k, map.get(k));
-            for (Map.Entry<String,Double> e : map.entrySet())
-                if (!ordered.containsKey(e.getKey())) ordered.put(e.getKey(), e.getValue());
-            return ordered;
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (LocalDate d = from; !d.isAfter(lastClosed); d = d.plusDays(1)) {
+            Double v = cache.get(d);
+            if (v == null) return seriesAmountByDate(coll, from, to);   // evicted meanwhile
+            if (v != 0d) out.put(d.toString(), v);
         }
-        return map;
+        if (!to.isBefore(today) && !from.isAfter(today)) {
+            out.putAll(seriesAmountByDate(coll, today, today));
+        }
+        return out;
+    }
+
+    /**
+     * Late edits to a closed day (back-dated bills, deletes) drop that day from the
+     * cache here, and move the shared generations so other instances drop theirs.
+     */
+    @EventListener
+    public void onReportDataChanged(ReportDataChangedEvent e) {
+        String coll = e.getCollection();
+        if (!SALES_COLL.equals(coll) && !PURCHASES_COLL.equals(coll)) return;
+        cacheGeneration(coll).incrementAndGet();
+
+        LocalDate today = LocalDate.now(ZONE);
+        boolean closed = false;
+        Map<LocalDate, Double> cache = closedDays.get(coll);
+        for (Document d : Arrays.asList(e.getBefore(), e.getAfter())) {
+            Date dt = (d == null) ? null : toDate(d.get(F_DATE));
+            if (dt == null) continue;
+            LocalDate day = dt.toInstant().atZone(ZONE).toLocalDate();
+            if (day.isBefore(today)) closed = true;
+            if (cache != null) cache.remove(day);
+        }
+
+        Update u = new Update().inc(coll, 1L);
+        if (closed) u.inc(coll + CLOSED_SUFFIX, 1L);
+        try {
+            primary.upsert(generationsQuery(), u, C_STATE);
+        } catch (RuntimeException ex) {
+            log.warn("Could not move the {} analytics generation: {}", coll, ex.getMessage());
+        }
+    }
+
+    private AtomicLong cacheGeneration(String coll) {
+        return cacheGenerations.computeIfAbsent(coll, k -> new AtomicLong());
+    }
+
+    /** The shared generations document; empty before the first write. */
+    private Document generations() {
+        Document d = primary.findOne(generationsQuery(), Document.class, C_STATE);
+        return d == null ? new Document() : d;
+    }
+
+    private static long generation(Document gens, String field) {
+        Object v = gens.get(field);
+        return (v instanceof Number) ? ((Number) v).longValue() : 0;
     }
 
-    /** yyyy-MM-dd -> sum(total) (dashboard weeklyയ്ക്ക്) */
+    private static Query generationsQuery() {
+        return Query.query(Criteria.where("_id").is(GENERATIONS_ID));
+    }
+
+    /**
+     * Reads the primary: closed days stay cached and the ETag has already moved past
+     * the write, so a lagging secondary must not fill either.
+     */
     private Map<String, Double> seriesAmountByDate(String coll, LocalDate from, LocalDate to) {
         Map<String, Double> map = new LinkedHashMap<>();
-        for (Document d : findByDate(coll, from, to)) {
-            Date dt = toDate(d.get(F_DATE));
-            if (dt == null) continue;
-            String label = dt.toInstant().atZone(ZONE).toLocalDate().toString();
-            map.merge(label, readTotal(d), Double::sum);
+        try (MongoCursor<Document> cur = streamByDate(primary.getCollection(coll), from, to, TOTAL_PROJECTION)) {
+            while (cur.hasNext()) {
+                Document d = cur.next();
+                Date dt = toDate(d.get(F_DATE));
+                if (dt == null) continue;
+                String label = dt.toInstant().atZone(ZONE).toLocalDate().toString();
+                map.merge(label, readTotal(d), Double::sum);
+            }
         }
         return map;
     }
 
     /* ----- total reader (nested / strings / compute from items) ----- */
-    private double readTotal(Document d) {
+    private static double readTotal(Document d) {
+        Document c = canon(d);
+        if (c != null) return num(c.get(C_TOTAL));
+
         Object v = firstByPath(d, TOTAL_KEYS);
         double total = num(v);
         if (total > 0) return total;
@@ -329,10 +782,101 @@ public class AnalyticsService {
 
     /* --------------------------- tiny utils --------------------------- */
 
-    private List<Document> findByDate(String coll, LocalDate from, LocalDate to) {
-        return mongo.getCollection(coll)
-                .find(dateFilter(F_DATE, from, to))
-                .into(new ArrayList<>());
+    private boolean exactCustomers(LocalDate from, LocalDate to) {
+        return ChronoUnit.DAYS.between(from, to) < exactCustomersMaxDays;
+    }
+
+    /** Distinct-customer key; shared with {@link CustomerSketchService}. */
+    static String customerKey(Document d) {
+        Document c = canon(d);
+        if (c != null) return str(c.get(C_CUST_ID)) + "|" + str(c.get(C_CUST_NM));
+        Object id = firstValue(d, CUSTOMER_ID_KEYS);
+        Object nm = firstValue(d, CUSTOMER_NAME_KEYS);
+        return (id != null ? id.toString() : "") + "|" + (nm != null ? nm.toString() : "");
+    }
+
+    static List<String> customerKeyFields() {
+        List<String> keys = new ArrayList<>(Arrays.asList(CUSTOMER_ID_KEYS));
+        keys.addAll(Arrays.asList(CUSTOMER_NAME_KEYS));
+        keys.add(F_SCHEMA);
+        keys.add(F_CANON + "." + C_CUST_ID);
+        keys.add(F_CANON + "." + C_CUST_NM);
+        return keys;
+    }
+
+    /* ------------------------- canonical shape ------------------------- */
+
+    /** The {@code canon} subdocument when {@code d} is migrated, else null (use the alias readers). */
+    private static Document canon(Document d) {
+        Object v = d.get(F_SCHEMA);
+        if (!(v instanceof Number) || ((Number) v).intValue() < SCHEMA_VERSION) return null;
+        return d.get(F_CANON, Document.class);
+    }
+
+    /**
+     * Resolves every alias once and returns the canonical values the readers need:
+     * the {@code readTotal} amount, customer, invoice no, status, named items with
+     * rounded quantities and payment splits. Used by {@link SalesSchemaMigration}.
+     */
+    static Document canonical(Document d) {
+        d = new Document(d);
+        d.remove(F_SCHEMA);   // always resolve from the raw fields, never from a stale canon
+        Document c = new Document()
+                .append(C_TOTAL, readTotal(d))
+                .append(C_CUST_ID, strOrNull(firstValue(d, CUSTOMER_ID_KEYS)))
+                .append(C_CUST_NM, strOrNull(firstValue(d, CUSTOMER_NAME_KEYS)))
+                .append(C_INV_NO, str(firstValue(d, INVOICE_NO_KEYS)))
+                .append(C_STATUS, strOrNull(firstValue(d, STATUS_KEYS)));
+
+        List<Document> items = new ArrayList<>();
+        addItemQty(d, (name, q) -> items.add(new Document("name", name).append("qty", q)));
+        c.append(C_ITEMS, items);
+
+        Map<String, Double> pays = new LinkedHashMap<>();
+        addPayments(d, pays);
+        List<Document> payments = new ArrayList<>();
+        for (Map.Entry<String, Double> e : pays.entrySet()) {
+            payments.add(new Document("method", e.getKey()).append("amount", e.getValue()));
+        }
+        c.append(C_PAYMENTS, payments);
+        return c;
+    }
+
+    /** Streaming projections also fetch the version marker and the given canon fields. */
+    private static Document withCanon(Document projection, String... canonFields) {
+        projection.append(F_SCHEMA, 1);
+        for (String f : canonFields) projection.append(F_CANON + "." + f, 1);
+        return projection;
+    }
+
+    private static String strOrNull(Object o) { return o == null ? null : String.valueOf(o); }
+
+    private static long dateMillis(Document d) {
+        Date dt = toDate(d.get(F_DATE));
+        return dt == null ? Long.MIN_VALUE : dt.getTime();
+    }
+
+    /**
+     * Cursor over the date window with a field projection and a bounded batch size,
+     * so peak heap is one batch regardless of how wide the range is. Callers must
+     * close it (try-with-resources).
+     */
+    private MongoCursor<Document> streamByDate(String coll, LocalDate from, LocalDate to, Document projection) {
+        return streamByDate(collection(coll), from, to, projection);
+    }
+
+    private MongoCursor<Document> streamByDate(MongoCollection<Document> c, LocalDate from, LocalDate to,
+                                               Document projection) {
+        return c.find(dateFilter(F_DATE, from, to))
+                .projection(projection)
+                .batchSize(STREAM_BATCH)
+                .cursor();
+    }
+
+    private static Document projection(String[]... keyGroups) {
+        Document p = new Document("_id", 0);
+        for (String[] keys : keyGroups) for (String k : keys) p.append(k, 1);
+        return p;
     }
 
     private Document dateFilter(String field, LocalDate from, LocalDate to) {
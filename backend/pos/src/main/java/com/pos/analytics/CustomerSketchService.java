@@ -0,0 +1,226 @@
+package com.pos.analytics;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.RenameCollectionOptions;
+import com.mongodb.client.model.ReplaceOptions;
+
+import com.pos.service.ReportDataChangedEvent;
+
+/**
+ * Per-day {@link HyperLogLog} sketches of sales customers in
+ * {@code daily_customer_sketches} ({@code {_id: day, registers: {...}}}).
+ * New sales raise one register with {@code $max}; deletes and edits cannot be
+ * subtracted from a sketch, so they only tighten again on {@link #rebuild()}.
+ * Until a first rebuild has completed ({@link #isReady()}) analytics counts
+ * customers exactly.
+ */
+@Service
+public class CustomerSketchService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerSketchService.class);
+
+    public static final String COLLECTION = "daily_customer_sketches";
+
+    /** Holds {@code {_id: "daily_customer_sketches", builtAt}} once a rebuild has completed. */
+    private static final String C_STATE = "reporting_state";
+    private static final String SALES_COLL  = "sales";
+    private static final String F_DATE      = "date";
+    private static final String F_REGISTERS = "registers";
+    private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+    private static final int BULK_SIZE = 200;
+
+    private final MongoTemplate mongo;
+    private final TaskScheduler scheduler;
+
+    @Value("${app.analytics.customer-sketches-rebuild-if-empty:true}")
+    private boolean rebuildIfEmpty = true;
+
+    /** Set once a rebuild has completed; summaries count customers exactly until then. */
+    private volatile boolean ready;
+
+    /** Serialises incremental writes against the scratch swap at the end of {@link #rebuild()}. */
+    private final Object swapLock = new Object();
+    /** Days touched by sales writes while a rebuild runs; null when none is in progress. */
+    private Set<Date> dirty;
+
+    public CustomerSketchService(MongoTemplate mongo, TaskScheduler scheduler) {
+        this.mongo = mongo;
+        this.scheduler = scheduler;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.schedule(() -> {
+            try {
+                if (isReady()) return;
+                if (mongo.estimatedCount(SALES_COLL) == 0) markBuilt(0);
+                else if (rebuildIfEmpty) rebuild();
+            } catch (RuntimeException e) {
+                log.warn("Customer sketch startup pass stopped: {}", e.getMessage());
+            }
+        }, Instant.now());
+    }
+
+    /** True when every sales day has a sketch; until then distinct customers must be counted exactly. */
+    public boolean isReady() {
+        if (!ready) {
+            ready = mongo.exists(stateQuery(), C_STATE);
+        }
+        return ready;
+    }
+
+    private void markBuilt(long days) {
+        mongo.upsert(stateQuery(), new Update().set("builtAt", new Date()).set("days", days), C_STATE);
+        ready = true;
+    }
+
+    private static Query stateQuery() {
+        return Query.query(Criteria.where("_id").is(COLLECTION));
+    }
+
+    @EventListener
+    public void onChange(ReportDataChangedEvent e) {
+        if (!SALES_COLL.equals(e.getCollection()) || e.getAfter() == null) return;
+        Date day = dayOf(e.getAfter().get(F_DATE));
+        if (day == null) return;
+        try {
+            int[] pos = HyperLogLog.position(AnalyticsService.customerKey(e.getAfter()));
+            synchronized (swapLock) {
+                mongo.upsert(Query.query(Criteria.where("_id").is(day)),
+                        new Update().max(F_REGISTERS + "." + pos[0], pos[1]), COLLECTION);
+                if (dirty != null) dirty.add(day);
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Could not update customer sketch for {}: {}", day, ex.getMessage());
+        }
+    }
+
+    /** Union of the day sketches in [from, to]. */
+    public HyperLogLog merged(LocalDate from, LocalDate to) {
+        Query q = Query.query(Criteria.where("_id").gte(startOfDay(from)).lt(startOfDay(to.plusDays(1))));
+        q.fields().include(F_REGISTERS);
+        HyperLogLog hll = new HyperLogLog();
+        for (Document d : mongo.find(q, Document.class, COLLECTION)) {
+            hll.merge(d.get(F_REGISTERS, Document.class));
+        }
+        return hll;
+    }
+
+    /**
+     * Recomputes every day sketch from the sales collection into a scratch
+     * collection and swaps it in, so readers never see a half-built table. Memory
+     * is one 16 KB sketch per distinct sales day.
+     *
+     * <p>Sales written while the scratch table is built still raise registers in the
+     * live table, which the rename discards, so their days are recomputed into the
+     * scratch table under the swap lock right before the rename. This covers writes
+     * made through this instance, as for the daily rollups.
+     *
+     * @return number of day sketches written
+     */
+    public long rebuild() {
+        synchronized (swapLock) {
+            if (dirty != null) throw new IllegalStateException("Customer sketch rebuild already running");
+            dirty = new HashSet<>();
+        }
+        try {
+            String scratch = COLLECTION + "_rebuild";
+            mongo.dropCollection(scratch);
+
+            Map<Date, HyperLogLog> days = sketch(new Document(F_DATE, new Document("$type", "date")));
+            BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, scratch);
+            int pending = 0;
+            for (Map.Entry<Date, HyperLogLog> e : days.entrySet()) {
+                bulk.insert(sketchDoc(e.getKey(), e.getValue()));
+                if (++pending == BULK_SIZE) {
+                    bulk.execute();
+                    bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, scratch);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) bulk.execute();
+            // renameCollection needs the source to exist, even when there were no sales
+            if (days.isEmpty()) mongo.createCollection(scratch);
+
+            synchronized (swapLock) {
+                for (Date day : dirty) replayDay(day, scratch);
+                mongo.getCollection(scratch).renameCollection(
+                        new MongoNamespace(mongo.getDb().getName(), COLLECTION),
+                        new RenameCollectionOptions().dropTarget(true));
+                markBuilt(days.size());
+            }
+            log.info("Customer sketches rebuilt: {} days", days.size());
+            return days.size();
+        } finally {
+            synchronized (swapLock) {
+                dirty = null;
+            }
+        }
+    }
+
+    /** Replaces one day's scratch sketch with a fresh scan of that day's sales. */
+    private void replayDay(Date day, String scratch) {
+        Date next = Date.from(day.toInstant().atZone(ZONE).toLocalDate().plusDays(1).atStartOfDay(ZONE).toInstant());
+        HyperLogLog hll = sketch(new Document(F_DATE, new Document("$gte", day).append("$lt", next))).get(day);
+        if (hll == null) return;
+        mongo.getCollection(scratch).replaceOne(new Document("_id", day), sketchDoc(day, hll),
+                new ReplaceOptions().upsert(true));
+    }
+
+    /** Day -> sketch of the customers of the sales matching {@code filter}. */
+    private Map<Date, HyperLogLog> sketch(Document filter) {
+        Map<Date, HyperLogLog> days = new HashMap<>();
+        Document projection = new Document("_id", 0).append(F_DATE, 1);
+        for (String k : AnalyticsService.customerKeyFields()) projection.append(k, 1);
+
+        try (MongoCursor<Document> cur = mongo.getCollection(SALES_COLL)
+                .find(filter)
+                .projection(projection)
+                .batchSize(500)
+                .cursor()) {
+            while (cur.hasNext()) {
+                Document d = cur.next();
+                Date day = dayOf(d.get(F_DATE));
+                if (day != null) days.computeIfAbsent(day, k -> new HyperLogLog()).add(AnalyticsService.customerKey(d));
+            }
+        }
+        return days;
+    }
+
+    private static Document sketchDoc(Date day, HyperLogLog hll) {
+        return new Document("_id", day).append(F_REGISTERS, hll.toSparse());
+    }
+
+    private static Date startOfDay(LocalDate d) {
+        return Date.from(d.atStartOfDay(ZONE).toInstant());
+    }
+
+    private static Date dayOf(Object o) {
+        if (!(o instanceof Date)) return null;
+        return startOfDay(((Date) o).toInstant().atZone(ZONE).toLocalDate());
+    }
+}
@@ -0,0 +1,124 @@
+package com.pos.analytics;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.pos.service.ReportDataChangedEvent;
+
+/**
+ * Rewrites sales into the canonical shape read by {@link AnalyticsService}: the
+ * resolved values go under {@code canon} and {@code schemaVersion} marks the
+ * document as migrated. The original fields are left alone because the
+ * {@code Sale} entity still maps them.
+ *
+ * <p>Runs once in the background after startup and again on demand. Saving a
+ * {@code Sale} replaces the whole document (dropping {@code canon}), so every sales
+ * write is normalised again from the change event.
+ */
+@Service
+public class SalesSchemaMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesSchemaMigration.class);
+
+    private static final String SALES_COLL = "sales";
+    private static final int BATCH = 500;
+
+    private final MongoTemplate mongo;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${app.analytics.schema-migration.enabled:true}")
+    private boolean enabledOnStartup = true;
+
+    public SalesSchemaMigration(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInBackground() {
+        if (!enabledOnStartup) return;
+        Thread t = new Thread(() -> {
+            try {
+                migrate();
+            } catch (RuntimeException e) {
+                log.warn("Sales schema migration stopped: {}", e.getMessage());
+            }
+        }, "sales-schema-migration");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Migrates every sale below the current schema version, one batch at a time.
+     *
+     * @return documents migrated, or -1 if a run is already in progress
+     */
+    public long migrate() {
+        if (!running.compareAndSet(false, true)) return -1;
+        try {
+            long migrated = 0;
+            while (true) {
+                Query q = Query.query(pending()).limit(BATCH);
+                List<Document> batch = mongo.find(q, Document.class, SALES_COLL);
+                if (batch.isEmpty()) break;
+
+                BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, SALES_COLL);
+                for (Document d : batch) {
+                    // the version guard skips documents a concurrent save already normalised
+                    bulk.updateOne(Query.query(Criteria.where("_id").is(d.get("_id")).andOperator(pending())),
+                            canonicalUpdate(d));
+                }
+                bulk.execute();
+                migrated += batch.size();
+            }
+            if (migrated > 0) log.info("Sales schema migration: {} documents at version {}",
+                    migrated, AnalyticsService.SCHEMA_VERSION);
+            return migrated;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /** Sales still without the current canonical shape. */
+    public long pendingCount() {
+        return mongo.count(Query.query(pending()), SALES_COLL);
+    }
+
+    @EventListener
+    @Order(0)   // before ReportCacheInvalidator
+    public void onChange(ReportDataChangedEvent e) {
+        Document after = e.getAfter();
+        if (!SALES_COLL.equals(e.getCollection()) || after == null || after.get("_id") == null) return;
+        try {
+            mongo.updateFirst(Query.query(Criteria.where("_id").is(after.get("_id"))),
+                    canonicalUpdate(after), SALES_COLL);
+        } catch (RuntimeException ex) {
+            log.warn("Could not normalise sale {}: {}", after.get("_id"), ex.getMessage());
+        }
+    }
+
+    private static Criteria pending() {
+        return new Criteria().orOperator(
+                Criteria.where(AnalyticsService.F_SCHEMA).exists(false),
+                Criteria.where(AnalyticsService.F_SCHEMA).lt(AnalyticsService.SCHEMA_VERSION));
+    }
+
+    private static Update canonicalUpdate(Document d) {
+        return new Update()
+                .set(AnalyticsService.F_CANON, AnalyticsService.canonical(d))
+                .set(AnalyticsService.F_SCHEMA, AnalyticsService.SCHEMA_VERSION);
+    }
+}
@@ -0,0 +1,69 @@
+package com.pos.analytics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving heavy-hitter sketch (Metwally et al.) with weighted updates. Tracks at
+ * most {@code capacity} keys; when full, the smallest counter is handed to the new
+ * key and its count becomes the new key's error bound. Any key whose true total
+ * exceeds {@code total / capacity} is guaranteed to be present.
+ */
+final class SpaceSaving {
+
+    static final class Counter {
+        final long seq;
+        String key;
+        long count;
+        long error;
+
+        Counter(long seq) { this.seq = seq; }
+    }
+
+    private static final Comparator<Counter> BY_COUNT =
+            Comparator.<Counter>comparingLong(c -> c.count).thenComparingLong(c -> c.seq);
+
+    private final int capacity;
+    private final Map<String, Counter> byKey = new HashMap<>();
+    private final TreeSet<Counter> ordered = new TreeSet<>(BY_COUNT);
+    private long seq;
+
+    SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    void offer(String key, long weight) {
+        if (weight <= 0) return;
+        Counter c = byKey.get(key);
+        if (c == null) {
+            if (byKey.size() < capacity) {
+                c = new Counter(seq++);
+                c.key = key;
+            } else {
+                c = ordered.pollFirst();
+                byKey.remove(c.key);
+                c.key = key;
+                c.error = c.count;
+            }
+            byKey.put(key, c);
+        } else {
+            ordered.remove(c);
+        }
+        c.count += weight;
+        ordered.add(c);
+    }
+
+    /** Largest {@code k} counters, highest first; counts may overestimate by {@code error}. */
+    List<Counter> top(int k) {
+        List<Counter> out = new ArrayList<>(Math.min(k, ordered.size()));
+        for (Counter c : ordered.descendingSet()) {
+            if (out.size() == k) break;
+            out.add(c);
+        }
+        return out;
+    }
+}
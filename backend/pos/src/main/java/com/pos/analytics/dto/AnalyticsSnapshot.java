@@ -0,0 +1,29 @@
+package com.pos.analytics.dto;
+
+import java.util.List;
+
+/** All analytics page widgets for one period/range, computed in a single pass. */
+public class AnalyticsSnapshot {
+    private SummaryDTO summary;
+    private List<SeriesPoint> series;
+    private List<TopProductDTO> topProducts;
+    private List<PaymentSlice> payments;
+    private List<InvoiceRow> recentInvoices;
+
+    public AnalyticsSnapshot() { }
+
+    public SummaryDTO getSummary() { return summary; }
+    public void setSummary(SummaryDTO summary) { this.summary = summary; }
+
+    public List<SeriesPoint> getSeries() { return series; }
+    public void setSeries(List<SeriesPoint> series) { this.series = series; }
+
+    public List<TopProductDTO> getTopProducts() { return topProducts; }
+    public void setTopProducts(List<TopProductDTO> topProducts) { this.topProducts = topProducts; }
+
+    public List<PaymentSlice> getPayments() { return payments; }
+    public void setPayments(List<PaymentSlice> payments) { this.payments = payments; }
+
+    public List<InvoiceRow> getRecentInvoices() { return recentInvoices; }
+    public void setRecentInvoices(List<InvoiceRow> recentInvoices) { this.recentInvoices = recentInvoices; }
+}
@@ -0,0 +1,50 @@
+package com.pos.config;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Cache key for report/analytics results: the method, the normalised date range it
+ * covers and the remaining arguments (filters, paging). Keeping the range explicit
+ * lets a write evict only the entries whose range contains the written day.
+ */
+public final class DateRangeKey {
+
+  private final String method;
+  private final LocalDate from;
+  private final LocalDate to;
+  private final List<Object> args;
+
+  public DateRangeKey(String method, LocalDate from, LocalDate to, Object... args) {
+    this.method = method;
+    this.from = from;
+    this.to = to;
+    this.args = Arrays.asList(args);
+  }
+
+  /** True when {@code day} falls in the cached range (open-ended sides always match). */
+  public boolean covers(LocalDate day) {
+    return (from == null || !day.isBefore(from)) && (to == null || !day.isAfter(to));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof DateRangeKey)) return false;
+    DateRangeKey k = (DateRangeKey) o;
+    return method.equals(k.method) && Objects.equals(from, k.from)
+        && Objects.equals(to, k.to) && args.equals(k.args);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(method, from, to, args);
+  }
+
+  @Override
+  public String toString() {
+    return method + "[" + from + ".." + to + "]" + args;
+  }
+}
@@ -0,0 +1,213 @@
+package com.pos.config;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+/**
+ * Size-bounded, access-ordered cache with an optional time-to-live. Entries past
+ * {@code maxEntries} drop least-recently-used first. Change events evict entries on
+ * the instance that handled the write; the TTL is what bounds staleness for writes
+ * made through other instances or outside the application.
+ *
+ * <p>A miss opens a pending load for the key, and an eviction that hits the key while
+ * the load runs marks it stale. The {@code put} that ends a stale load is refused, so
+ * a report computed before a write cannot be cached after the write evicted it.
+ *
+ * <p>Loads read a secondary that may trail the primary by up to {@code lagMillis}. An
+ * entry whose key was invalidated less than that long before it is put may still
+ * predate the write, so it expires once the lag window since that invalidation has
+ * passed and the next load sees the write.
+ */
+public class LruCache extends AbstractValueAdaptingCache {
+
+  private static final class Entry {
+    final Object value;
+    final long expiresAt;
+
+    Entry(Object value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /** Loads that started a miss and have not put yet. */
+  private static final class Pending {
+    final long since = System.currentTimeMillis();
+    int loads;
+    boolean stale;
+  }
+
+  /** An eviction still inside the replication-lag window. */
+  private static final class Invalidation {
+    final long at;
+    final Predicate<Object> keys;
+
+    Invalidation(long at, Predicate<Object> keys) {
+      this.at = at;
+      this.keys = keys;
+    }
+  }
+
+  /** A load that never puts (exception, {@code unless}) stops guarding its key after this. */
+  private static final long LOAD_TIMEOUT_MILLIS = 5 * 60_000L;
+  /** Past this many recent invalidations they fold into one that matches every key. */
+  private static final int MAX_RECENT = 1024;
+
+  private final String name;
+  private final long ttlMillis;
+  private final long lagMillis;
+  private final int maxEntries;
+  private final LinkedHashMap<Object, Entry> map;
+  private final Map<Object, Pending> pending = new HashMap<>();
+  /** Invalidations newer than {@code lagMillis}, oldest first. */
+  private final Deque<Invalidation> recent = new ArrayDeque<>();
+
+  public LruCache(String name, int maxEntries, long ttlMillis) {
+    this(name, maxEntries, ttlMillis, 0);
+  }
+
+  /**
+   * @param ttlMillis entry lifetime; 0 keeps entries until evicted
+   * @param lagMillis how far the loads' reads may trail the primary; 0 when they read it
+   */
+  public LruCache(String name, int maxEntries, long ttlMillis, long lagMillis) {
+    super(true);
+    this.name = name;
+    this.ttlMillis = ttlMillis;
+    this.lagMillis = lagMillis;
+    this.maxEntries = maxEntries;
+    this.map = new LinkedHashMap<>(64, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public String getName() { return name; }
+
+  @Override
+  public Object getNativeCache() { return map; }
+
+  @Override
+  protected synchronized Object lookup(Object key) {
+    Entry e = map.get(key);
+    if (e != null && System.currentTimeMillis() > e.expiresAt) {
+      map.remove(key);
+      e = null;
+    }
+    if (e == null) {
+      startLoad(key);
+      return null;
+    }
+    return e.value;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    Object cached = lookup(key);
+    if (cached != null) return (T) fromStoreValue(cached);
+    try {
+      T value = valueLoader.call();
+      put(key, value);
+      return value;
+    } catch (Exception e) {
+      throw new ValueRetrievalException(key, valueLoader, e);
+    }
+  }
+
+  @Override
+  public synchronized void put(Object key, Object value) {
+    Pending p = pending.get(key);
+    if (p != null) {
+      if (--p.loads <= 0) pending.remove(key);
+      if (p.stale) return;   // evicted while loading: the value may predate the write
+    }
+    long now = System.currentTimeMillis();
+    long expiresAt = (ttlMillis > 0) ? now + ttlMillis : Long.MAX_VALUE;
+    Long evictedAt = lastInvalidated(key, now);
+    if (evictedAt != null) expiresAt = Math.min(expiresAt, evictedAt + lagMillis);
+    map.put(key, new Entry(toStoreValue(value), expiresAt));
+  }
+
+  @Override
+  public synchronized void evict(Object key) {
+    map.remove(key);
+    Pending p = pending.get(key);
+    if (p != null) p.stale = true;
+    invalidated(k -> Objects.equals(k, key));
+  }
+
+  /** Removes every entry whose key matches; returns how many were dropped. */
+  public synchronized int evictIf(Predicate<Object> keyMatches) {
+    int n = 0;
+    for (Iterator<Object> it = map.keySet().iterator(); it.hasNext(); ) {
+      if (keyMatches.test(it.next())) {
+        it.remove();
+        n++;
+      }
+    }
+    for (Map.Entry<Object, Pending> p : pending.entrySet()) {
+      if (keyMatches.test(p.getKey())) p.getValue().stale = true;
+    }
+    invalidated(keyMatches);
+    return n;
+  }
+
+  @Override
+  public synchronized void clear() {
+    map.clear();
+    for (Pending p : pending.values()) p.stale = true;
+    invalidated(k -> true);
+  }
+
+  private void invalidated(Predicate<Object> keys) {
+    if (lagMillis <= 0) return;
+    long now = System.currentTimeMillis();
+    prune(now);
+    if (recent.size() >= MAX_RECENT) {
+      recent.clear();
+      keys = k -> true;
+    }
+    recent.addLast(new Invalidation(now, keys));
+  }
+
+  /** Time of the newest invalidation still inside the lag window that matches {@code key}. */
+  private Long lastInvalidated(Object key, long now) {
+    if (lagMillis <= 0) return null;
+    prune(now);
+    for (Iterator<Invalidation> it = recent.descendingIterator(); it.hasNext(); ) {
+      Invalidation i = it.next();
+      if (i.keys.test(key)) return i.at;
+    }
+    return null;
+  }
+
+  private void prune(long now) {
+    while (!recent.isEmpty() && now - recent.peekFirst().at >= lagMillis) recent.removeFirst();
+  }
+
+  private void startLoad(Object key) {
+    long now = System.currentTimeMillis();
+    Pending p = pending.get(key);
+    if (p == null || now - p.since > LOAD_TIMEOUT_MILLIS) {
+      if (pending.size() >= maxEntries) {
+        pending.values().removeIf(old -> now - old.since > LOAD_TIMEOUT_MILLIS);
+      }
+      p = new Pending();
+      pending.put(key, p);
+    }
+    p.loads++;
+  }
+}
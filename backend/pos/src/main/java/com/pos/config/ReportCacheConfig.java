@@ -0,0 +1,104 @@
+package com.pos.config;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Result caches for analytics and reports. Each cache lists the collections it is
+ * built from; {@code ReportCacheInvalidator} evicts entries whose date range
+ * contains a day written in one of those collections.
+ */
+@Configuration
+@EnableCaching
+public class ReportCacheConfig {
+
+  public static final String ANALYTICS         = "analytics";
+  public static final String REPORTS_INVOICES  = "reports-invoices";
+  public static final String REPORTS_PURCHASES = "reports-purchases";
+  public static final String REPORTS_RETURNS   = "reports-returns";
+  public static final String REPORTS_EXPENSES  = "reports-expenses";
+  public static final String REPORTS_VAT       = "reports-vat";
+
+  /** Bean name for {@code @Cacheable(keyGenerator = ...)}. */
+  public static final String RANGE_KEY = "dateRangeKeyGenerator";
+
+  /** cache -> source collections whose writes can change its entries. */
+  public static final Map<String, Set<String>> SOURCES = Map.of(
+      ANALYTICS,         Set.of("sales", "purchases"),
+      REPORTS_INVOICES,  Set.of("invoices"),
+      REPORTS_PURCHASES, Set.of("purchases"),
+      REPORTS_RETURNS,   Set.of("returns"),
+      REPORTS_EXPENSES,  Set.of("expenses"),
+      REPORTS_VAT,       Set.of("invoices", "purchases", "vat_periods"));
+
+  @Value("${app.cache.reports.max-entries:500}")
+  private int maxEntries;
+
+  @Value("${app.cache.reports.ttl-seconds:600}")
+  private long ttlSeconds;
+
+  /** Cached results are computed on the reporting template; see {@link ReportingMongoConfig}. */
+  @Value("${app.mongo.reporting.read-preference:secondaryPreferred}")
+  private String readPreference;
+
+  @Value("${app.mongo.reporting.max-staleness-seconds:90}")
+  private long maxStalenessSeconds;
+
+  /** The driver estimates secondary staleness from heartbeats, so it can be off by one interval. */
+  private static final long HEARTBEAT_SECONDS = 10;
+
+  @Bean
+  public CacheManager cacheManager() {
+    SimpleCacheManager m = new SimpleCacheManager();
+    List<LruCache> caches = new ArrayList<>();
+    for (String name : SOURCES.keySet()) {
+      caches.add(new LruCache(name, maxEntries, ttlSeconds * 1000, replicationLagMillis()));
+    }
+    m.setCaches(caches);
+    return m;
+  }
+
+  /**
+   * How far a load on the reporting template may trail a write: nothing on the
+   * primary, the staleness bound plus a heartbeat on a secondary, and the TTL when
+   * staleness is unbounded.
+   */
+  private long replicationLagMillis() {
+    if ("primary".equalsIgnoreCase(readPreference)) return 0;
+    if (maxStalenessSeconds <= 0) return ttlSeconds * 1000;
+    return (Math.max(90, maxStalenessSeconds) + HEARTBEAT_SECONDS) * 1000;
+  }
+
+  /**
+   * Keys on (method, from, to, other args): the first two {@link LocalDate}
+   * arguments are the range, a single one is an as-of date (range open at the start).
+   */
+  @Bean(RANGE_KEY)
+  public KeyGenerator dateRangeKeyGenerator() {
+    return (target, method, params) -> {
+      List<LocalDate> dates = new ArrayList<>(2);
+      List<Object> rest = new ArrayList<>();
+      for (Object p : params) {
+        if (p instanceof LocalDate && dates.size() < 2) dates.add((LocalDate) p);
+        else rest.add(p);
+      }
+      LocalDate from = dates.size() == 2 ? dates.get(0) : null;
+      LocalDate to   = dates.isEmpty() ? null : dates.get(dates.size() - 1);
+      if (from != null && to != null && to.isBefore(from)) {
+        LocalDate t = from; from = to; to = t;
+      }
+      return new DateRangeKey(target.getClass().getSimpleName() + "." + method.getName(), from, to, rest.toArray());
+    };
+  }
+}
@@ -0,0 +1,73 @@
+package com.pos.config;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+
+import com.mongodb.ReadPreference;
+
+/**
+ * Two templates over the same client: the primary one (checkout, every write, and reads
+ * that must see their own writes) and a reporting one whose reads go to a secondary when
+ * the deployment has one. Declaring a MongoTemplate switches Boot's default one off, so
+ * the primary template is declared here too.
+ *
+ * <p>Repositories follow the same split: {@code com.pos.repository.reporting} holds
+ * read-only subinterfaces bound to the reporting template, and every other repository
+ * stays on the primary one. Declaring repositories here also switches Boot's
+ * repository scan off, so both scans are declared.
+ */
+@Configuration
+public class ReportingMongoConfig {
+
+  /** Qualifier for read-only reporting/analytics services. */
+  public static final String REPORTING = "reportingMongoTemplate";
+
+  @Value("${app.mongo.reporting.read-preference:secondaryPreferred}")
+  private String readPreference;
+
+  /** How far behind the primary a secondary may be and still serve reports (server minimum is 90s). */
+  @Value("${app.mongo.reporting.max-staleness-seconds:90}")
+  private long maxStalenessSeconds;
+
+  @Bean
+  @Primary
+  public MongoTemplate mongoTemplate(MongoDatabaseFactory factory, MongoConverter converter) {
+    return new MongoTemplate(factory, converter);
+  }
+
+  @Bean(REPORTING)
+  public MongoTemplate reportingMongoTemplate(MongoDatabaseFactory factory, MongoConverter converter) {
+    MongoTemplate t = new MongoTemplate(factory, converter);
+    t.setReadPreference(reportingReadPreference());
+    return t;
+  }
+
+  private ReadPreference reportingReadPreference() {
+    // primary takes no staleness bound; 0 means "no bound" for the others
+    if ("primary".equalsIgnoreCase(readPreference)) return ReadPreference.primary();
+    if (maxStalenessSeconds <= 0) return ReadPreference.valueOf(readPreference);
+    return ReadPreference.valueOf(readPreference, List.of(), Math.max(90, maxStalenessSeconds), TimeUnit.SECONDS);
+  }
+
+  @Configuration
+  @EnableMongoRepositories(basePackages = "com.pos.repository", mongoTemplateRef = "mongoTemplate",
+      excludeFilters = @ComponentScan.Filter(type = FilterType.REGEX, pattern = "com\\.pos\\.repository\\.reporting\\..*"))
+  static class PrimaryRepositories {
+  }
+
+  @Configuration
+  @EnableMongoRepositories(basePackages = "com.pos.repository.reporting", mongoTemplateRef = REPORTING)
+  static class ReportingRepositories {
+  }
+}
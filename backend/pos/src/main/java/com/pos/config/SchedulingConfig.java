@@ -0,0 +1,31 @@
+package com.pos.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Runs {@code @Scheduled} jobs (recurring invoices, nightly party aging, KPI
+ * reconcile) and the background startup passes services hand to the same
+ * {@code TaskScheduler}. The dashboard feed and report-job sweeper keep their own
+ * threads so a long rebuild cannot delay them.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+  @Value("${app.scheduling.pool-size:2}")
+  private int poolSize;
+
+  @Bean
+  public ThreadPoolTaskScheduler taskScheduler() {
+    ThreadPoolTaskScheduler s = new ThreadPoolTaskScheduler();
+    s.setPoolSize(poolSize);
+    s.setThreadNamePrefix("pos-scheduled-");
+    s.setDaemon(true);
+    s.setWaitForTasksToCompleteOnShutdown(false);
+    return s;
+  }
+}
@@ -26,7 +26,7 @@ public class WebConfig {
 
     cors.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
     cors.setAllowedHeaders(List.of("*"));
-    cors.setExposedHeaders(List.of("Location", "Content-Disposition"));
+    cors.setExposedHeaders(List.of("Location", "Content-Disposition", "ETag", "X-Row-Count"));
     cors.setAllowCredentials(false); // ✅ keep false because axios withCredentials=false
     cors.setMaxAge(Duration.ofHours(1));
 
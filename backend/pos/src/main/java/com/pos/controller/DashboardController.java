@@ -3,15 +3,18 @@ package com.pos.controller;
 
 import java.util.List;
 
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.pos.dto.dashboard.DashboardMetricsDTO;
 import com.pos.dto.dashboard.TopProductDTO;
 import com.pos.dto.dashboard.WeeklyPointDTO;
+import com.pos.service.DashboardFeedService;
 import com.pos.service.DashboardService;
 
 import lombok.RequiredArgsConstructor;
@@ -23,12 +26,19 @@ import lombok.RequiredArgsConstructor;
 public class DashboardController {
 
   private final DashboardService service;
+  private final DashboardFeedService feed;
 
   @GetMapping("/metrics")
   public DashboardMetricsDTO metrics() {
     return service.getMetrics();
   }
 
+  /** Live KPI feed: a {@code metrics} snapshot, then coalesced {@code delta} events as writes commit. */
+  @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter stream() {
+    return feed.subscribe();
+  }
+
   @GetMapping("/weekly")
   public List<WeeklyPointDTO> weekly(@RequestParam(defaultValue = "7") int days) {
     return service.getWeekly(days);
@@ -0,0 +1,37 @@
+package com.pos.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pos.service.ReportIndexService;
+
+@RestController
+@RequestMapping("/api/admin/indexes")
+@CrossOrigin(origins = "*")
+public class IndexAdminController {
+
+  private final ReportIndexService indexes;
+
+  public IndexAdminController(ReportIndexService indexes) {
+    this.indexes = indexes;
+  }
+
+  /** Plan stages per report/search/dashboard query shape; {@code collscan: true} marks a missing index. */
+  @GetMapping("/explain")
+  public List<Document> explain() {
+    return indexes.check();
+  }
+
+  /** Create any missing report indexes now (also runs at startup unless disabled). */
+  @PostMapping("/provision")
+  public Map<String, List<String>> provision() {
+    return indexes.provision();
+  }
+}
@@ -0,0 +1,62 @@
+package com.pos.controller;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pos.model.KpiDefinition;
+import com.pos.service.KpiService;
+
+/** Configurable dashboard KPIs; see {@link KpiService} for the definition format. */
+@RestController
+@RequestMapping("/api/dashboard/kpis")
+@CrossOrigin(origins = "*")
+public class KpiController {
+
+  private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+
+  private final KpiService kpis;
+
+  public KpiController(KpiService kpis) {
+    this.kpis = kpis;
+  }
+
+  /** Values for {@code keys} (default: every enabled KPI) over [from, to], today by default. */
+  @GetMapping
+  public Map<String, Document> values(
+      @RequestParam(required = false) List<String> keys,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+    LocalDate end = (to == null) ? LocalDate.now(ZONE) : to;
+    return kpis.compute(keys, (from == null) ? end : from, end);
+  }
+
+  @GetMapping("/definitions")
+  public List<KpiDefinition> definitions() {
+    return kpis.definitions();
+  }
+
+  /** Create or replace one definition; 400 if it doesn't compile (bad expression, unknown reference, cycle). */
+  @PutMapping("/definitions/{key}")
+  public KpiDefinition save(@PathVariable String key, @RequestBody KpiDefinition definition) {
+    return kpis.save(key, definition);
+  }
+
+  @DeleteMapping("/definitions/{key}")
+  public void delete(@PathVariable String key) {
+    kpis.delete(key);
+  }
+}
@@ -0,0 +1,29 @@
+package com.pos.controller;
+
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pos.service.ReportBudgets;
+
+@RestController
+@RequestMapping("/api/admin/report-budgets")
+@CrossOrigin(origins = "*")
+public class ReportBudgetController {
+
+  private final ReportBudgets budgets;
+
+  public ReportBudgetController(ReportBudgets budgets) {
+    this.budgets = budgets;
+  }
+
+  /** Per report since startup: its budget, runs, how many ran out of time and when last. */
+  @GetMapping
+  public Map<String, Document> budgets() {
+    return budgets.snapshot();
+  }
+}
@@ -53,9 +53,10 @@ public class ReportController {
       @RequestParam(defaultValue = "DAY") String groupBy, // DAY | SHIFT | CASHIER
       @RequestParam(defaultValue = "0")  @Min(0) int page,
       @RequestParam(defaultValue = "20") @Min(1) int size,
-      @RequestParam(name = "excludeDiscount", defaultValue = "false") boolean excludeDiscount
+      @RequestParam(name = "excludeDiscount", defaultValue = "false") boolean excludeDiscount,
+      @RequestParam(required = false) String cursor  // nextCursor from the previous page; overrides 'page'
   ) {
-    return svc.salesSummary(from, to, shift, cashier, groupBy, page, size, excludeDiscount);
+    return svc.salesSummary(from, to, shift, cashier, groupBy, page, size, excludeDiscount, cursor);
   }
 
   // ---------- Product Sales ---------------------------------------------------
@@ -72,10 +73,11 @@ public class ReportController {
       @RequestParam(defaultValue = "DESC") String sortDir,
       @RequestParam(defaultValue = "0")  @Min(0) int page,
       @RequestParam(defaultValue = "20") @Min(1) int size,
-      @RequestParam(name = "excludeDiscount", defaultValue = "false") boolean excludeDiscount
+      @RequestParam(name = "excludeDiscount", defaultValue = "false") boolean excludeDiscount,
+      @RequestParam(required = false) String cursor
   ) {
     return svc.productSales(
-        from, to, shift, cashier, cat, search, groupBy, sortBy, sortDir, page, size, excludeDiscount
+        from, to, shift, cashier, cat, search, groupBy, sortBy, sortDir, page, size, excludeDiscount, cursor
     );
   }
 
@@ -128,8 +130,9 @@ public class ReportController {
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
       @RequestParam(defaultValue = "0")  @Min(0) int page,
-      @RequestParam(defaultValue = "50") @Min(1) int size) {
-    return svc.customer(from, to, page, size);
+      @RequestParam(defaultValue = "50") @Min(1) int size,
+      @RequestParam(required = false) String cursor) {
+    return svc.customer(from, to, page, size, cursor);
   }
 
   // ---------- Purchase --------------------------------------------------------
@@ -138,8 +141,9 @@ public class ReportController {
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
       @RequestParam(defaultValue = "0")  @Min(0) int page,
-      @RequestParam(defaultValue = "50") @Min(1) int size) {
-    return svc.purchase(from, to, page, size);
+      @RequestParam(defaultValue = "50") @Min(1) int size,
+      @RequestParam(required = false) String cursor) {
+    return svc.purchase(from, to, page, size, cursor);
   }
 
   // ---------- Returns / Cancellation -----------------------------------------
@@ -150,8 +154,9 @@ public class ReportController {
       @RequestParam(required = false) String cashier,
       @RequestParam(required = false) String reason,
       @RequestParam(defaultValue = "0")  @Min(0) int page,
-      @RequestParam(defaultValue = "20") @Min(1) int size) {
-    return svc.returns(from, to, cashier, reason, page, size);
+      @RequestParam(defaultValue = "20") @Min(1) int size,
+      @RequestParam(required = false) String cursor) {
+    return svc.returns(from, to, cashier, reason, page, size, cursor);
   }
 
   // ---------- VAT (existing) --------------------------------------------------
@@ -182,8 +187,9 @@ public class ReportController {
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
       @RequestParam(defaultValue = "0")  @Min(0) int page,
-      @RequestParam(defaultValue = "50") @Min(1) int size) {
-    return svc.expenses(from, to, page, size);
+      @RequestParam(defaultValue = "50") @Min(1) int size,
+      @RequestParam(required = false) String cursor) {
+    return svc.expenses(from, to, page, size, cursor);
   }
 
   // ---------- Supplier Outstanding -------------------------------------------
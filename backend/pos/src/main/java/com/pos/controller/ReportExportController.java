@@ -3,28 +3,96 @@ package com.pos.controller;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.pos.service.ReportService;
+import com.pos.util.ReportTableWriter;
 
 @RestController
 @RequestMapping("/api/reports")
 @CrossOrigin(origins = "*")
 public class ReportExportController {
 
+  /**
+   * Rows in the export. Only background job results carry it: the job knows the
+   * count once it has finished, whereas a streamed export would have to run its
+   * whole pipeline twice to know it up front.
+   */
+  public static final String ROW_COUNT = "X-Row-Count";
+
+  private static final MediaType CSV  = MediaType.parseMediaType("text/csv; charset=utf-8");
+  private static final MediaType XLSX =
+      MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+  private final ReportService reports;
+
+  public ReportExportController(ReportService reports) {
+    this.reports = reports;
+  }
+
+  // ---------- Any report as CSV / XLSX (streamed, unpaged) -------------------
+  // Filters are the JSON endpoint's params (shift, cashier, groupBy, reason, method, onlyOverdue).
+  @GetMapping("/export/{report}")
+  public ResponseEntity<StreamingResponseBody> export(
+      @PathVariable String report,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf,
+      @RequestParam(defaultValue = "csv") String format,  // csv | xlsx
+      @RequestParam(name = "excludeDiscount", defaultValue = "false") boolean excludeDiscount,
+      @RequestParam Map<String, String> filters,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+    LocalDate end = (asOf != null) ? asOf : to;
+    boolean xlsx = "xlsx".equalsIgnoreCase(format);
+    if (!xlsx && !"csv".equalsIgnoreCase(format)) {
+      throw new IllegalArgumentException("format must be csv or xlsx");
+    }
+    // validates the report name and dates while an error can still be a 400
+    reports.checkExport(report, from, end, filters);
+
+    // xlsx is already a zip; only csv is worth compressing
+    boolean gzip = !xlsx && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+    StreamingResponseBody body = out -> {
+      OutputStream os = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+      try (ReportTableWriter w = xlsx ? ReportTableWriter.xlsx(os, report) : ReportTableWriter.csv(os)) {
+        reports.export(report, from, end, filters, excludeDiscount, w::write);
+      }
+    };
+
+    String filename = report + "-" + (from != null ? from + "_" : "") + end + (xlsx ? ".xlsx" : ".csv");
+    ResponseEntity.BodyBuilder res = ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+        .contentType(xlsx ? XLSX : CSV);
+    if (gzip) res.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+    return res.body(body);
+  }
+
   @GetMapping(value = "/shift/export", produces = MediaType.APPLICATION_PDF_VALUE)
   public ResponseEntity<byte[]> exportShift(@RequestParam String type) {
     byte[] pdf = buildShiftPdf(type);
@@ -0,0 +1,94 @@
+package com.pos.controller;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.pos.service.ReportJobService;
+
+/**
+ * Background report exports: submit, poll, download. Takes the same report names and
+ * params as {@code GET /api/reports/export/{report}}; jobs belong to the {@code X-User}
+ * that submitted them.
+ */
+@RestController
+@RequestMapping("/api/reports/jobs")
+@CrossOrigin(origins = "*")
+public class ReportJobController {
+
+  private static final MediaType CSV  = MediaType.parseMediaType("text/csv; charset=utf-8");
+  private static final MediaType XLSX =
+      MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+  private final ReportJobService jobs;
+
+  public ReportJobController(ReportJobService jobs) {
+    this.jobs = jobs;
+  }
+
+  /** 202 with the queued job; 429 when the user's or the shared queue is full. */
+  @PostMapping("/{report}")
+  public ResponseEntity<Document> submit(
+      @PathVariable String report,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf,
+      @RequestParam(defaultValue = "csv") String format,  // csv | xlsx
+      @RequestParam(name = "excludeDiscount", defaultValue = "false") boolean excludeDiscount,
+      @RequestParam Map<String, String> filters,
+      @RequestHeader(value = "X-User", required = false) String user) {
+
+    boolean xlsx = "xlsx".equalsIgnoreCase(format);
+    if (!xlsx && !"csv".equalsIgnoreCase(format)) {
+      throw new IllegalArgumentException("format must be csv or xlsx");
+    }
+    Document job = jobs.submit(user, report, from, (asOf != null) ? asOf : to, xlsx, excludeDiscount, filters);
+    return ResponseEntity.accepted()
+        .location(URI.create("/api/reports/jobs/" + job.getString("_id")))
+        .body(job);
+  }
+
+  /** The caller's recent jobs, newest first. */
+  @GetMapping
+  public List<Document> list(@RequestHeader(value = "X-User", required = false) String user) {
+    return jobs.list(user);
+  }
+
+  @GetMapping("/{id}")
+  public Document status(@PathVariable String id,
+                         @RequestHeader(value = "X-User", required = false) String user) {
+    return jobs.get(id, user);
+  }
+
+  @GetMapping("/{id}/result")
+  public ResponseEntity<StreamingResponseBody> result(@PathVariable String id,
+                                                      @RequestHeader(value = "X-User", required = false) String user) {
+    Document job = jobs.get(id, user);
+    if (!ReportJobService.DONE.equals(job.getString("status"))) {
+      throw new IllegalArgumentException("Report job " + id + " is " + job.getString("status") + ", no result yet");
+    }
+    boolean xlsx = "xlsx".equals(job.getString("format"));
+    StreamingResponseBody body = out -> jobs.download(job, out);
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + job.getString("filename") + "\"")
+        .header(ReportExportController.ROW_COUNT, String.valueOf(job.get("rows")))
+        .contentType(xlsx ? XLSX : CSV)
+        .body(body);
+  }
+}
@@ -0,0 +1,52 @@
+package com.pos.controller;
+
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pos.analytics.CustomerSketchService;
+import com.pos.service.DailyRollupService;
+import com.pos.service.KpiCounterService;
+import com.pos.service.PartyBalanceService;
+
+@RestController
+@RequestMapping("/api/rollups")
+@CrossOrigin(origins = "*")
+public class RollupController {
+
+  private final DailyRollupService rollups;
+  private final CustomerSketchService customerSketches;
+  private final PartyBalanceService partyBalances;
+  private final KpiCounterService kpiCounters;
+
+  public RollupController(DailyRollupService rollups, CustomerSketchService customerSketches,
+                          PartyBalanceService partyBalances, KpiCounterService kpiCounters) {
+    this.rollups = rollups;
+    this.customerSketches = customerSketches;
+    this.partyBalances = partyBalances;
+    this.kpiCounters = kpiCounters;
+  }
+
+  /**
+   * Recompute daily_rollups from historical sales/invoices/purchases/returns/expenses,
+   * the per-day distinct-customer sketches from sales, and the party balances / aging
+   * buckets from ledgers.
+   */
+  @PostMapping("/rebuild")
+  public Map<String, Long> rebuild() {
+    Map<String, Long> written = rollups.rebuild();
+    written.put(CustomerSketchService.COLLECTION, customerSketches.rebuild());
+    written.put(PartyBalanceService.COLLECTION, partyBalances.rebuild());
+    return written;
+  }
+
+  /** Recompute the all-time dashboard counters; returns how far each source was off. */
+  @PostMapping("/kpi-counters/reconcile")
+  public Document reconcileKpiCounters() {
+    return kpiCounters.reconcile();
+  }
+}
@@ -0,0 +1,60 @@
+package com.pos.controller;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pos.service.VatPeriodService;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+
+/** VAT return periods; ids are calendar quarters such as {@code 2025-Q3}. */
+@RestController
+@RequestMapping("/api/vat-periods")
+@CrossOrigin(origins = "*")
+@Validated
+public class VatPeriodController {
+
+  private final VatPeriodService periods;
+
+  public VatPeriodController(VatPeriodService periods) {
+    this.periods = periods;
+  }
+
+  /** Closed (filed) periods, newest first. */
+  @GetMapping
+  public List<Document> closed(@RequestParam(required = false) Integer year) {
+    return periods.closed(year);
+  }
+
+  /** Totals, per-rate and per-day figures: the frozen snapshot if closed, live otherwise. */
+  @GetMapping("/{id}")
+  public Document get(@PathVariable String id) {
+    return periods.get(id);
+  }
+
+  @GetMapping("/{id}/invoices")
+  public List<Document> invoices(
+      @PathVariable String id,
+      @RequestParam(defaultValue = "0")   @Min(0) int page,
+      @RequestParam(defaultValue = "100") @Min(1) @Max(1000) int size) {
+    return periods.invoices(id, page, size);
+  }
+
+  /** Freeze an ended quarter for filing; 409 if it is already closed. */
+  @PostMapping("/{id}/close")
+  public Document close(@PathVariable String id,
+                        @RequestHeader(value = "X-User", required = false) String user) {
+    return periods.close(id, user);
+  }
+}
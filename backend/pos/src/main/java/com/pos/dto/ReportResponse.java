@@ -8,6 +8,10 @@ public class ReportResponse<T> {
   private List<T> items;
   private Map<String, Object> totals;
   private long count;
+  /** Keyset token for the page after this one; null on the last page. */
+  private String nextCursor;
+  /** True when the query ran out of its time budget: items (and possibly totals) are missing. */
+  private boolean truncated;
 
   public ReportResponse() {}
 
@@ -25,4 +29,10 @@ public class ReportResponse<T> {
 
   public long getCount() { return count; }
   public void setCount(long count) { this.count = count; }
+
+  public String getNextCursor() { return nextCursor; }
+  public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+  public boolean isTruncated() { return truncated; }
+  public void setTruncated(boolean truncated) { this.truncated = truncated; }
 }
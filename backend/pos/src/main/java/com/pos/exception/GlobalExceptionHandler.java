@@ -3,6 +3,7 @@ package com.pos.exception;
 
 import java.time.format.DateTimeParseException;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -98,6 +99,12 @@ public class GlobalExceptionHandler {
     return out(HttpStatus.CONFLICT, msg, r);
   }
 
+  // 429: bounded background queues (report jobs) are full
+  @ExceptionHandler(RejectedExecutionException.class)
+  public ResponseEntity<ApiError> busy(RejectedExecutionException ex, HttpServletRequest r) {
+    return out(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage(), r);
+  }
+
   // Mongo / data access
   @ExceptionHandler({ MongoTimeoutException.class, MongoClientException.class, DataAccessResourceFailureException.class })
   public ResponseEntity<ApiError> dbDown(Exception ex, HttpServletRequest r) {
@@ -6,6 +6,8 @@ import java.util.List;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -13,6 +15,12 @@ import org.springframework.data.mongodb.core.mapping.Document;
  * Invoice header + items stored in MongoDB.
  */
 @Document(collection = "invoices")
+@CompoundIndexes({
+    // report filters: equality field first, then the date range (product-sales / Day-Z)
+    @CompoundIndex(name = "idx_invoices_shift_date",    def = "{'shift':1,'date':1}"),
+    @CompoundIndex(name = "idx_invoices_cashier_date",  def = "{'cashier':1,'date':1}"),
+    @CompoundIndex(name = "idx_invoices_category_date", def = "{'items.category':1,'date':1}")
+})
 public class Invoice {
 
     @Id
@@ -0,0 +1,54 @@
+package com.pos.model;
+
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One dashboard KPI. Base kinds aggregate {@code expr} over {@code collection} within the
+ * requested date range (optionally only where {@code filter} is true); {@code RATIO}
+ * combines other KPIs: (sum of {@code numerator}, a leading "-" subtracts) /
+ * {@code denominator} * {@code scale}.
+ *
+ * <p>{@code expr} and {@code filter} are MongoDB aggregation expressions as JSON, or a
+ * bare field path such as {@code $netTotal}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "kpi_definitions")
+public class KpiDefinition {
+
+  public enum Kind { SUM, COUNT, AVG, MIN, MAX, RATIO }
+
+  /** Key used by the page, e.g. {@code avg_basket}. */
+  @Id
+  private String id;
+  private String label;
+  private String description;
+  private Kind kind;
+
+  private String collection;
+  private String expr;
+  private String filter;
+  /** Date field the range applies to; "date" when empty. */
+  private String dateField;
+
+  private List<String> numerator;
+  private String denominator;
+  private Double scale;
+
+  /** Display hint for the card: money, number or percent. */
+  private String format;
+  /** Shown when the page asks for "all" KPIs; disabled ones can still be requested by key. */
+  @Builder.Default
+  private boolean enabled = true;
+  private int sortOrder;
+}
@@ -3,6 +3,7 @@ package com.pos.repository;
 
 import java.util.Date;
 
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.Aggregation;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Repository;
 import com.pos.model.Expense;
 
 @Repository
+@Primary   // over its Reporting* subinterface wherever the plain type is injected
 public interface ExpenseRepository extends MongoRepository<Expense, String> {
 
   Page<Expense> findByNameContainingIgnoreCaseOrCategoryContainingIgnoreCaseOrVendorContainingIgnoreCase(
@@ -0,0 +1,8 @@
+package com.pos.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import com.pos.model.KpiDefinition;
+
+public interface KpiDefinitionRepository extends MongoRepository<KpiDefinition, String> {
+}
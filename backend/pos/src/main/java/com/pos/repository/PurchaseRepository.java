@@ -4,6 +4,7 @@ package com.pos.repository;
 import java.util.Date;
 import java.util.List;
 
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Repository;
 import com.pos.model.Purchase;
 
 @Repository
+@Primary   // over its Reporting* subinterface wherever the plain type is injected
 public interface PurchaseRepository extends MongoRepository<Purchase, String> {
 
   /** Sum of all purchases (totals.grandTotal) across the collection. */
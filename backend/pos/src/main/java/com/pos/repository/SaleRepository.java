@@ -4,6 +4,7 @@ package com.pos.repository;
 import java.util.Date;
 import java.util.List;
 
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Repository;
 import com.pos.model.Sale;
 
 @Repository
+@Primary   // over its Reporting* subinterface wherever the plain type is injected
 public interface SaleRepository extends MongoRepository<Sale, String>, SaleRepositoryCustom {
 
   /** Fast checks elsewhere */
@@ -63,6 +65,38 @@ public interface SaleRepository extends MongoRepository<Sale, String>, SaleRepos
     Double getTotal();
   }
 
+  /**
+   * Sales and purchases per day for [start, end) in one round trip: purchases are
+   * merged in with $unionWith, and $densify adds zero rows for days with neither, so
+   * the result has exactly one row per day, oldest first. Days are Asia/Dubai
+   * (fixed offset, so stepping by 24h stays on local midnights). Needs MongoDB 5.1+.
+   */
+  @Aggregation(pipeline = {
+      "{ \"$match\": { \"date\": { \"$gte\": ?0, \"$lt\": ?1 } } }",
+      "{ \"$project\": { " +
+      "    \"day\": { \"$dateTrunc\": { \"date\": \"$date\", \"unit\": \"day\", \"timezone\": \"Asia/Dubai\" } }, " +
+      "    \"sales\": { \"$toDouble\": { \"$ifNull\": [ \"$netTotal\", 0 ] } }, \"purchase\": { \"$literal\": 0 } } }",
+      "{ \"$unionWith\": { \"coll\": \"purchases\", \"pipeline\": [ " +
+      "    { \"$match\": { \"date\": { \"$gte\": ?0, \"$lt\": ?1 } } }, " +
+      "    { \"$project\": { " +
+      "        \"day\": { \"$dateTrunc\": { \"date\": \"$date\", \"unit\": \"day\", \"timezone\": \"Asia/Dubai\" } }, " +
+      "        \"sales\": { \"$literal\": 0 }, \"purchase\": { \"$toDouble\": { \"$ifNull\": [ \"$totals.grandTotal\", 0 ] } } } } ] } }",
+      "{ \"$group\": { \"_id\": \"$day\", \"sales\": { \"$sum\": \"$sales\" }, \"purchase\": { \"$sum\": \"$purchase\" } } }",
+      "{ \"$project\": { \"_id\": 0, \"day\": \"$_id\", \"sales\": 1, \"purchase\": 1 } }",
+      "{ \"$densify\": { \"field\": \"day\", \"range\": { \"step\": 1, \"unit\": \"day\", \"bounds\": [ ?0, ?1 ] } } }",
+      "{ \"$sort\": { \"day\": 1 } }",
+      "{ \"$project\": { \"_id\": 0, " +
+      "    \"date\": { \"$dateToString\": { \"format\": \"%Y-%m-%d\", \"date\": \"$day\", \"timezone\": \"Asia/Dubai\" } }, " +
+      "    \"sales\": { \"$ifNull\": [ \"$sales\", 0 ] }, \"purchase\": { \"$ifNull\": [ \"$purchase\", 0 ] } } }"
+  })
+  List<DailySalesPurchase> dailySalesAndPurchasesBetween(Date startInclusive, Date endExclusive);
+
+  interface DailySalesPurchase {
+    String getDate();   // YYYY-MM-DD
+    Double getSales();
+    Double getPurchase();
+  }
+
   /* ================= Top products (revenue = qty * unitPrice) ================= */
 
   /**
@@ -0,0 +1,8 @@
+// src/main/java/com/pos/repository/reporting/ReportingExpenseRepository.java
+package com.pos.repository.reporting;
+
+import com.pos.repository.ExpenseRepository;
+
+/** {@link ExpenseRepository} bound to the reporting template (see {@link com.pos.config.ReportingMongoConfig}). */
+public interface ReportingExpenseRepository extends ExpenseRepository {
+}
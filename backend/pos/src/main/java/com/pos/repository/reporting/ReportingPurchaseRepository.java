@@ -0,0 +1,8 @@
+// src/main/java/com/pos/repository/reporting/ReportingPurchaseRepository.java
+package com.pos.repository.reporting;
+
+import com.pos.repository.PurchaseRepository;
+
+/** {@link PurchaseRepository} bound to the reporting template (see {@link com.pos.config.ReportingMongoConfig}). */
+public interface ReportingPurchaseRepository extends PurchaseRepository {
+}
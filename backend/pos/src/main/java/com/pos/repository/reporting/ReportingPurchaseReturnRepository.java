@@ -0,0 +1,8 @@
+// src/main/java/com/pos/repository/reporting/ReportingPurchaseReturnRepository.java
+package com.pos.repository.reporting;
+
+import com.pos.repository.PurchaseReturnRepository;
+
+/** {@link PurchaseReturnRepository} bound to the reporting template (see {@link com.pos.config.ReportingMongoConfig}). */
+public interface ReportingPurchaseReturnRepository extends PurchaseReturnRepository {
+}
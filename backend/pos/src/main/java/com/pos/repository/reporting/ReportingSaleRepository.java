@@ -0,0 +1,8 @@
+// src/main/java/com/pos/repository/reporting/ReportingSaleRepository.java
+package com.pos.repository.reporting;
+
+import com.pos.repository.SaleRepository;
+
+/** {@link SaleRepository} bound to the reporting template (see {@link com.pos.config.ReportingMongoConfig}). */
+public interface ReportingSaleRepository extends SaleRepository {
+}
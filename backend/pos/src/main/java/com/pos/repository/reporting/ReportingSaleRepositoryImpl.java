@@ -0,0 +1,16 @@
+// src/main/java/com/pos/repository/reporting/ReportingSaleRepositoryImpl.java
+package com.pos.repository.reporting;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.pos.config.ReportingMongoConfig;
+import com.pos.repository.SaleRepositoryImpl;
+
+/** The {@code SaleRepositoryCustom} fragment of {@link ReportingSaleRepository}, on the reporting template. */
+public class ReportingSaleRepositoryImpl extends SaleRepositoryImpl {
+
+  public ReportingSaleRepositoryImpl(@Qualifier(ReportingMongoConfig.REPORTING) MongoTemplate reporting) {
+    super(reporting);
+  }
+}
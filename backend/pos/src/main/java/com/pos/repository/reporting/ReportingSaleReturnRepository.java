@@ -0,0 +1,8 @@
+// src/main/java/com/pos/repository/reporting/ReportingSaleReturnRepository.java
+package com.pos.repository.reporting;
+
+import com.pos.repository.SaleReturnRepository;
+
+/** {@link SaleReturnRepository} bound to the reporting template (see {@link com.pos.config.ReportingMongoConfig}). */
+public interface ReportingSaleReturnRepository extends SaleReturnRepository {
+}
@@ -0,0 +1,269 @@
+package com.pos.service;
+
+import static com.pos.util.DocValues.num;
+import static com.pos.util.DocValues.toDouble;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.RenameCollectionOptions;
+
+/**
+ * Pre-aggregated per-day totals in {@code daily_rollups}, one row per
+ * (date, shift, cashier, paymentType). Each source collection owns a section of
+ * the row (e.g. {@code sales.netTotal}, {@code expenses.amount}); writes apply
+ * {@code $inc} deltas and {@link #rebuild()} recomputes everything from the raw
+ * documents.
+ */
+@Service
+public class DailyRollupService {
+
+  private static final Logger log = LoggerFactory.getLogger(DailyRollupService.class);
+
+  public static final String COLLECTION = "daily_rollups";
+
+  private static final String F_DATE    = "date";
+  private static final String F_SHIFT   = "shift";
+  private static final String F_CASHIER = "cashier";
+  private static final String F_PAYTYPE = "paymentType";
+  private static final String K_BILLS   = "bills";
+  private static final String K_COUNT   = "count";
+
+  private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+  private static final int BULK_SIZE = 500;
+  private static final Document ALL_DATES = new Document("$type", "date");
+
+  /** source collection -> (rollup metric -> source path; null means "count documents"). */
+  private static final Map<String, Map<String, String>> METRICS = new LinkedHashMap<>();
+  static {
+    Map<String, String> bill = metrics(K_BILLS, null,
+        "grossTotal", "grossTotal", "discount", "discount", "vat", "vat",
+        "netTotal", "netTotal", "returnAmount", "returnAmount");
+    METRICS.put("sales", bill);
+    METRICS.put("invoices", bill);
+    METRICS.put("purchases", metrics(K_BILLS, null, "grandTotal", "totals.grandTotal", "vat", "totals.totalTax"));
+    METRICS.put("returns", metrics(K_COUNT, null, "amount", "amount"));
+    METRICS.put("expenses", metrics(K_COUNT, null, "amount", "amount"));
+  }
+
+  /** Expenses record the tender as paymentMethod; every other source uses paymentType. */
+  private static final Map<String, String> PAYTYPE_SOURCE = Map.of("expenses", "paymentMethod");
+
+  private final MongoTemplate mongo;
+
+  /** Serialises incremental writes against the scratch swap at the end of {@link #rebuild()}. */
+  private final Object swapLock = new Object();
+  /** Days touched by writes while a rebuild runs; null when no rebuild is in progress. */
+  private Set<Date> dirty;
+
+  public DailyRollupService(MongoTemplate mongo) {
+    this.mongo = mongo;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void ensureIndexes() {
+    try {
+      ensureIndexes(COLLECTION);
+    } catch (RuntimeException e) {
+      log.warn("Could not ensure {} indexes: {}", COLLECTION, e.getMessage());
+    }
+  }
+
+  /* ============================ incremental ============================ */
+
+  @EventListener
+  @Order(0)   // before ReportCacheInvalidator, so evicted entries never reload pre-update rows
+  public void onChange(ReportDataChangedEvent e) {
+    Map<String, String> metrics = METRICS.get(e.getCollection());
+    if (metrics == null) return;
+    synchronized (swapLock) {
+      apply(e.getCollection(), metrics, e.getBefore(), -1);
+      apply(e.getCollection(), metrics, e.getAfter(), 1);
+      if (dirty != null) {
+        markDirty(e.getBefore());
+        markDirty(e.getAfter());
+      }
+    }
+  }
+
+  private void markDirty(Document doc) {
+    Date day = (doc == null) ? null : dayOf(doc.get(F_DATE));
+    if (day != null) dirty.add(day);
+  }
+
+  private void apply(String source, Map<String, String> metrics, Document doc, int sign) {
+    if (doc == null) return;
+    Date day = dayOf(doc.get(F_DATE));
+    if (day == null) return;
+
+    Update u = new Update();
+    for (Map.Entry<String, String> m : metrics.entrySet()) {
+      double v = (m.getValue() == null) ? 1 : num(doc, m.getValue());
+      u.inc(source + "." + m.getKey(), sign * v);
+    }
+    mongo.upsert(keyQuery(day, dim(doc.get(F_SHIFT)), dim(doc.get(F_CASHIER)),
+        dim(doc.get(PAYTYPE_SOURCE.getOrDefault(source, F_PAYTYPE)))), u, COLLECTION);
+  }
+
+  /* ============================== rebuild ============================== */
+
+  /**
+   * Recomputes every rollup row from the raw collections into a scratch collection
+   * and swaps it in, so readers never see a half-built table.
+   *
+   * <p>Writes that land while the scratch table is being built still go to the live
+   * table (which the rename then discards), so their days are recorded and
+   * recomputed into the scratch table under the swap lock right before the rename.
+   * This covers writes made through this instance; other instances writing during a
+   * rebuild still need a follow-up rebuild.
+   *
+   * @return rollup rows written per source collection
+   */
+  public Map<String, Long> rebuild() {
+    synchronized (swapLock) {
+      if (dirty != null) throw new IllegalStateException("Rollup rebuild already running");
+      dirty = new HashSet<>();
+    }
+    try {
+      String scratch = COLLECTION + "_rebuild";
+      mongo.dropCollection(scratch);
+      ensureIndexes(scratch);
+
+      Map<String, Long> written = new LinkedHashMap<>();
+      for (Map.Entry<String, Map<String, String>> src : METRICS.entrySet()) {
+        written.put(src.getKey(), rebuildSource(src.getKey(), src.getValue(), scratch, ALL_DATES));
+      }
+
+      synchronized (swapLock) {
+        for (Date day : dirty) replayDay(day, scratch);
+        mongo.getCollection(scratch).renameCollection(
+            new MongoNamespace(mongo.getDb().getName(), COLLECTION),
+            new RenameCollectionOptions().dropTarget(true));
+      }
+      return written;
+    } finally {
+      synchronized (swapLock) {
+        dirty = null;
+      }
+    }
+  }
+
+  /** Replaces one day's scratch rows with a fresh aggregation of every source. */
+  private void replayDay(Date day, String scratch) {
+    mongo.remove(Query.query(Criteria.where(F_DATE).is(day)), scratch);
+    Date next = Date.from(day.toInstant().atZone(ZONE).toLocalDate().plusDays(1).atStartOfDay(ZONE).toInstant());
+    Document window = new Document("$gte", day).append("$lt", next);
+    for (Map.Entry<String, Map<String, String>> src : METRICS.entrySet()) {
+      rebuildSource(src.getKey(), src.getValue(), scratch, window);
+    }
+  }
+
+  private long rebuildSource(String source, Map<String, String> metrics, String target, Document dateFilter) {
+    Document id = new Document(F_DATE, new Document("$dateFromString", new Document()
+            .append("dateString", new Document("$dateToString", new Document("format", "%Y-%m-%d")
+                .append("date", "$" + F_DATE).append("timezone", ZONE.getId())))
+            .append("format", "%Y-%m-%d")
+            .append("timezone", ZONE.getId())))
+        .append(F_SHIFT, dimExpr(F_SHIFT))
+        .append(F_CASHIER, dimExpr(F_CASHIER))
+        .append(F_PAYTYPE, dimExpr(PAYTYPE_SOURCE.getOrDefault(source, F_PAYTYPE)));
+
+    Document group = new Document("_id", id);
+    for (Map.Entry<String, String> m : metrics.entrySet()) {
+      Object v = (m.getValue() == null) ? 1 : toDouble("$" + m.getValue());
+      group.append(m.getKey(), new Document("$sum", v));
+    }
+
+    List<Document> pipeline = List.of(
+        new Document("$match", new Document(F_DATE, dateFilter)),
+        new Document("$group", group));
+
+    long rows = 0;
+    BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, target);
+    int pending = 0;
+    try (MongoCursor<Document> cur = mongo.getCollection(source).aggregate(pipeline).allowDiskUse(true).cursor()) {
+      while (cur.hasNext()) {
+        Document row = cur.next();
+        Document key = row.get("_id", Document.class);
+        Update u = new Update();
+        for (String metric : metrics.keySet()) u.inc(source + "." + metric, num(row.get(metric)));
+        bulk.upsert(keyQuery(key.getDate(F_DATE), key.getString(F_SHIFT), key.getString(F_CASHIER),
+            key.getString(F_PAYTYPE)), u);
+        rows++;
+        if (++pending == BULK_SIZE) {
+          bulk.execute();
+          bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, target);
+          pending = 0;
+        }
+      }
+    }
+    if (pending > 0) bulk.execute();
+    return rows;
+  }
+
+  /* ============================== helpers ============================== */
+
+  private void ensureIndexes(String coll) {
+    mongo.indexOps(coll).createIndex(new Index()
+        .on(F_DATE, Sort.Direction.ASC)
+        .on(F_SHIFT, Sort.Direction.ASC)
+        .on(F_CASHIER, Sort.Direction.ASC)
+        .on(F_PAYTYPE, Sort.Direction.ASC)
+        .unique()
+        .named("ux_rollup_key"));
+  }
+
+  private static Query keyQuery(Date day, String shift, String cashier, String paymentType) {
+    return Query.query(Criteria.where(F_DATE).is(day)
+        .and(F_SHIFT).is(shift)
+        .and(F_CASHIER).is(cashier)
+        .and(F_PAYTYPE).is(paymentType));
+  }
+
+  private static Map<String, String> metrics(String... pairs) {
+    Map<String, String> m = new LinkedHashMap<>();
+    for (int i = 0; i < pairs.length; i += 2) m.put(pairs[i], pairs[i + 1]);
+    return m;
+  }
+
+  /** Blank dimensions are stored as "" so the unique key never contains null. */
+  private static String dim(Object v) {
+    return v == null ? "" : v.toString();
+  }
+
+  private static Document dimExpr(String field) {
+    return new Document("$toString", new Document("$ifNull", List.of("$" + field, "")));
+  }
+
+  private static Date startOfDay(LocalDate d) {
+    return Date.from(d.atStartOfDay(ZONE).toInstant());
+  }
+
+  private static Date dayOf(Object o) {
+    if (!(o instanceof Date)) return null;
+    return startOfDay(((Date) o).toInstant().atZone(ZONE).toLocalDate());
+  }
+}
@@ -0,0 +1,180 @@
+package com.pos.service;
+
+import static com.pos.util.DocValues.num;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Live dashboard feed over Server-Sent Events. Committed writes arrive as
+ * {@link ReportDataChangedEvent}s; their KPI deltas are summed in memory and pushed to
+ * every subscriber at most once per coalescing window, so open dashboards cost no
+ * queries beyond the one snapshot each gets when it connects.
+ *
+ * <p>Events: {@code metrics} (the full {@link DashboardService#getMetrics()} snapshot, on
+ * connect) and {@code delta} (per source: {@code total}/{@code count} change all-time and
+ * {@code today}/{@code todayCount} change for today, Asia/Dubai).
+ */
+@Service
+public class DashboardFeedService {
+
+  private static final Logger log = LoggerFactory.getLogger(DashboardFeedService.class);
+
+  /** Source collection -> amount path the dashboard cards sum. */
+  private static final Map<String, String> SOURCES = new LinkedHashMap<>();
+  static {
+    SOURCES.put("sales", "netTotal");
+    SOURCES.put("purchases", "totals.grandTotal");
+    SOURCES.put("expenses", "amount");
+    SOURCES.put("returns", "amount");
+    SOURCES.put("sale_returns", "grandTotal");
+    SOURCES.put("purchase_returns", "grandTotal");
+  }
+
+  private static final String F_DATE = "date";
+  private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+  private static final Duration HEARTBEAT = Duration.ofSeconds(25);
+
+  private final DashboardService dashboard;
+  private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+  private ThreadPoolTaskScheduler scheduler;
+
+  /** Deltas since the last push; guarded by {@code this}. */
+  private Map<String, double[]> pending = new LinkedHashMap<>();
+
+  @Value("${app.dashboard.feed.coalesce-ms:1000}")
+  private long coalesceMs;
+
+  @Value("${app.dashboard.feed.timeout-ms:1800000}")
+  private long timeoutMs;
+
+  @Value("${app.dashboard.feed.max-subscribers:100}")
+  private int maxSubscribers;
+
+  public DashboardFeedService(DashboardService dashboard) {
+    this.dashboard = dashboard;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(1);
+    scheduler.setThreadNamePrefix("dashboard-feed-");
+    scheduler.setDaemon(true);
+    scheduler.initialize();
+    scheduler.scheduleAtFixedRate(this::flush, Duration.ofMillis(coalesceMs));
+    scheduler.scheduleAtFixedRate(this::heartbeat, HEARTBEAT);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (scheduler != null) scheduler.shutdown();
+    subscribers.forEach(SseEmitter::complete);
+  }
+
+  /**
+   * Opens a stream for one dashboard. The browser's EventSource reconnects on its own
+   * after the timeout and gets a fresh snapshot.
+   *
+   * @throws RejectedExecutionException when {@code max-subscribers} streams are open
+   */
+  public SseEmitter subscribe() {
+    if (subscribers.size() >= maxSubscribers) {
+      throw new RejectedExecutionException("Too many live dashboards open; refresh manually for now");
+    }
+    SseEmitter emitter = new SseEmitter(timeoutMs);
+    emitter.onCompletion(() -> subscribers.remove(emitter));
+    emitter.onTimeout(() -> subscribers.remove(emitter));
+    emitter.onError(e -> subscribers.remove(emitter));
+    try {
+      emitter.send(SseEmitter.event().name("metrics").data(dashboard.getMetrics(), MediaType.APPLICATION_JSON));
+    } catch (IOException e) {
+      emitter.completeWithError(e);
+      return emitter;
+    }
+    subscribers.add(emitter);
+    return emitter;
+  }
+
+  /* ============================ incremental ============================ */
+
+  @EventListener
+  public void onChange(ReportDataChangedEvent e) {
+    String path = SOURCES.get(e.getCollection());
+    if (path == null || subscribers.isEmpty()) return;
+
+    LocalDate today = LocalDate.now(ZONE);
+    synchronized (this) {
+      double[] d = pending.computeIfAbsent(e.getCollection(), k -> new double[4]);
+      add(d, e.getBefore(), path, today, -1);
+      add(d, e.getAfter(), path, today, 1);
+    }
+  }
+
+  private static void add(double[] d, Document doc, String path, LocalDate today, int sign) {
+    if (doc == null) return;
+    double amount = num(doc, path);
+    d[0] += sign * amount;
+    d[1] += sign;
+    Object date = doc.get(F_DATE);
+    if (date instanceof Date && ((Date) date).toInstant().atZone(ZONE).toLocalDate().equals(today)) {
+      d[2] += sign * amount;
+      d[3] += sign;
+    }
+  }
+
+  /* =============================== push =============================== */
+
+  void flush() {
+    Map<String, double[]> batch;
+    synchronized (this) {
+      if (pending.isEmpty()) return;
+      batch = pending;
+      pending = new LinkedHashMap<>();
+    }
+
+    Document delta = new Document("at", new Date());
+    batch.forEach((source, d) -> delta.append(source, new Document("total", d[0])
+        .append("count", (long) d[1])
+        .append("today", d[2])
+        .append("todayCount", (long) d[3])));
+    send(SseEmitter.event().name("delta").data(delta, MediaType.APPLICATION_JSON));
+  }
+
+  /** Keeps idle streams open through proxies that drop silent connections. */
+  private void heartbeat() {
+    if (!subscribers.isEmpty()) send(SseEmitter.event().comment("keep-alive"));
+  }
+
+  private void send(SseEmitter.SseEventBuilder event) {
+    for (SseEmitter emitter : subscribers) {
+      try {
+        emitter.send(event);
+      } catch (IOException | IllegalStateException e) {
+        log.debug("Dropping dashboard subscriber: {}", e.getMessage());
+        subscribers.remove(emitter);
+      }
+    }
+  }
+}
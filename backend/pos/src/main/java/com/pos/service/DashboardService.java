@@ -4,10 +4,8 @@ package com.pos.service;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -17,37 +15,39 @@ import org.springframework.stereotype.Service;
 import com.pos.dto.dashboard.DashboardMetricsDTO;
 import com.pos.dto.dashboard.TopProductDTO;
 import com.pos.dto.dashboard.WeeklyPointDTO;
-import com.pos.repository.ExpenseRepository;
-import com.pos.repository.PurchaseRepository;
-import com.pos.repository.PurchaseReturnRepository;
 import com.pos.repository.SaleRepository;
-import com.pos.repository.SaleReturnRepository;
+import com.pos.repository.reporting.ReportingExpenseRepository;
+import com.pos.repository.reporting.ReportingPurchaseRepository;
+import com.pos.repository.reporting.ReportingPurchaseReturnRepository;
+import com.pos.repository.reporting.ReportingSaleRepository;
+import com.pos.repository.reporting.ReportingSaleReturnRepository;
 
 @Service
 public class DashboardService {
 
-  private final SaleRepository saleRepo;
-  private final PurchaseRepository purchaseRepo;
-  private final ExpenseRepository expenseRepo;
-  private final SaleReturnRepository saleReturnRepo;
-  private final PurchaseReturnRepository purchaseReturnRepo;
+  private final ReportingSaleRepository saleRepo;
+  private final ReportingPurchaseRepository purchaseRepo;
+  private final ReportingExpenseRepository expenseRepo;
+  private final ReportingSaleReturnRepository saleReturnRepo;
+  private final ReportingPurchaseReturnRepository purchaseReturnRepo;
+  private final KpiCounterService kpiCounters;
 
   /** Business timezone (UAE). Change if needed. */
   private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
-  private static final DateTimeFormatter DAY_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-  public DashboardService(
-      SaleRepository saleRepo,
-      PurchaseRepository purchaseRepo,
-      ExpenseRepository expenseRepo,
-      SaleReturnRepository saleReturnRepo,
-      PurchaseReturnRepository purchaseReturnRepo
-  ) {
+
+  /**
+   * The reporting repositories read from a secondary like the other reports; the
+   * application-wide repository beans stay on the primary for checkout.
+   */
+  public DashboardService(ReportingSaleRepository saleRepo, ReportingPurchaseRepository purchaseRepo,
+                          ReportingExpenseRepository expenseRepo, ReportingSaleReturnRepository saleReturnRepo,
+                          ReportingPurchaseReturnRepository purchaseReturnRepo, KpiCounterService kpiCounters) {
     this.saleRepo = saleRepo;
     this.purchaseRepo = purchaseRepo;
     this.expenseRepo = expenseRepo;
     this.saleReturnRepo = saleReturnRepo;
     this.purchaseReturnRepo = purchaseReturnRepo;
+    this.kpiCounters = kpiCounters;
   }
 
   /* =============================== KPI CARDS =============================== */
@@ -60,8 +60,11 @@ public class DashboardService {
     final Date from = Date.from(fromI);
     final Date to   = Date.from(toI);
 
-    final double salesAll           = nz(saleRepo.sumNetTotalAll());
-    final double purchasesAll       = nz(purchaseRepo.sumGrandTotalAll());
+    // all-time cards: one counters document; full-collection sums only until it is built
+    final Map<String, Double> counters = kpiCounters.totals();
+    final double salesAll           = (counters != null) ? counters.get("sales")            : nz(saleRepo.sumNetTotalAll());
+    final double purchasesAll       = (counters != null) ? counters.get("purchases")        : nz(purchaseRepo.sumGrandTotalAll());
+    // no service writes these, so there is nothing to keep a counter current
     final double salesReturnsAll    = nz(saleReturnRepo.sumGrandTotalAll());
     final double purchaseReturnsAll = nz(purchaseReturnRepo.sumGrandTotalAll());
 
@@ -69,8 +72,7 @@ public class DashboardService {
     final double todayPurchases  = nz(purchaseRepo.sumGrandTotalBetween(from, to));
     final double todayExpenses   = nz(expenseRepo.sumAmountBetween(from, to));
 
-    // If you have separate amountReceived repo, swap this line.
-    final double todayReceived   = todaySales;
+    final double todayReceived   = nz(saleRepo.sumAmountReceivedBetween(from, to));
 
     DashboardMetricsDTO dto = new DashboardMetricsDTO();
     dto.setSales(salesAll);
@@ -95,27 +97,10 @@ public class DashboardService {
     final Date from       = Date.from(start.atStartOfDay(ZONE).toInstant());
     final Date toExclusive= Date.from(endInclusive.plusDays(1).atStartOfDay(ZONE).toInstant());
 
-    // sales per day
-    final Map<String, Double> salesByDate = new HashMap<>();
-    for (SaleRepository.DailyTotal row : safeList(saleRepo.dailyNetTotalBetween(from, toExclusive))) {
-      salesByDate.put(row.getDate(), nz(row.getTotal()));
-    }
-
-    // purchases per day
-    final Map<String, Double> purchaseByDate = new HashMap<>();
-    for (PurchaseRepository.DailyTotal row : safeList(purchaseRepo.dailyGrandTotalBetween(from, toExclusive))) {
-      purchaseByDate.put(row.getDate(), nz(row.getTotal()));
-    }
-
-    // continuous series (no gaps)
+    // one aligned (date, sales, purchase) row per day, gaps filled by the pipeline
     final List<WeeklyPointDTO> out = new ArrayList<>(d);
-    for (LocalDate cur = start; !cur.isAfter(endInclusive); cur = cur.plusDays(1)) {
-      final String key = cur.format(DAY_FMT);
-      out.add(new WeeklyPointDTO(
-          key,
-          salesByDate.getOrDefault(key, 0d),
-          purchaseByDate.getOrDefault(key, 0d)
-      ));
+    for (SaleRepository.DailySalesPurchase row : safeList(saleRepo.dailySalesAndPurchasesBetween(from, toExclusive))) {
+      out.add(new WeeklyPointDTO(row.getDate(), nz(row.getSales()), nz(row.getPurchase())));
     }
     return out;
   }
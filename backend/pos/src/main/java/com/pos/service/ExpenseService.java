@@ -4,6 +4,7 @@ import com.pos.dto.ExpenseRequest;
 import com.pos.dto.ExpenseResponse;
 import com.pos.model.Expense;
 import com.pos.repository.ExpenseRepository;
+import org.bson.Document;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
@@ -22,10 +23,14 @@ import static org.springframework.http.HttpStatus.NOT_FOUND;
 @Service
 public class ExpenseService {
 
+    private static final String COLLECTION = "expenses";
+
     private final ExpenseRepository repo;
+    private final ReportDataPublisher reporting;
 
-    public ExpenseService(ExpenseRepository repo) {
+    public ExpenseService(ExpenseRepository repo, ReportDataPublisher reporting) {
         this.repo = repo;
+        this.reporting = reporting;
     }
 
     /* ---------- Converters ---------- */
@@ -195,6 +200,7 @@ public class ExpenseService {
     public ExpenseResponse create(ExpenseRequest req) {
         requireValid(req);
         Expense saved = repo.save(fromRequest(req));
+        reporting.changed(COLLECTION, null, saved);
         return toDto(saved);
     }
 
@@ -202,13 +208,17 @@ public class ExpenseService {
         requireValid(req);
         Expense e = repo.findById(id).orElseThrow(() ->
                 new ResponseStatusException(NOT_FOUND, "Expense not found"));
+        Document before = reporting.snapshot(e);   // untouched copy for the delta
         apply(e, req);
-        return toDto(repo.save(e));
+        Expense saved = repo.save(e);
+        reporting.changed(COLLECTION, before, saved);
+        return toDto(saved);
     }
 
     public void delete(String id) {
-        if (!repo.existsById(id))
-            throw new ResponseStatusException(NOT_FOUND, "Expense not found");
+        Expense before = repo.findById(id).orElseThrow(() ->
+                new ResponseStatusException(NOT_FOUND, "Expense not found"));
         repo.deleteById(id);
+        reporting.changed(COLLECTION, before, null);
     }
 }
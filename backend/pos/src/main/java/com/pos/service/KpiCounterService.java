@@ -0,0 +1,204 @@
+package com.pos.service;
+
+import static com.pos.util.DocValues.num;
+import static com.pos.util.DocValues.toDouble;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * All-time dashboard totals kept in one {@code kpi_counters} document, so the KPI cards
+ * read a single row instead of summing whole collections. Each source collection owns a
+ * section ({@code sales.total}, {@code sales.count}, ...); writes apply {@code $inc}
+ * deltas (after minus before) and {@link #reconcile()} recomputes the sections from the
+ * raw documents, catching writes that bypass the services. Deltas only update an existing
+ * document; the first reconcile creates it.
+ *
+ * <p>Only collections the services write (and so announce) are counted; the dashboard
+ * sums the others directly. A change-stream event is applied together with its stream
+ * position in one update, guarded on the stored position being older, so a change
+ * replayed after a restart is not counted twice.
+ */
+@Service
+public class KpiCounterService {
+
+  private static final Logger log = LoggerFactory.getLogger(KpiCounterService.class);
+
+  public static final String COLLECTION = "kpi_counters";
+  private static final String ALL_TIME = "all_time";
+
+  public static final String K_TOTAL = "total";
+  public static final String K_COUNT = "count";
+  private static final String F_CREATED_AT = "createdAt";
+  private static final String F_RECONCILED_AT = "reconciledAt";
+  private static final String F_POSITION = "position";
+
+  /** Source collection -> amount path, matching the dashboard's all-time sums. */
+  public static final Map<String, String> SOURCES = new LinkedHashMap<>();
+  static {
+    SOURCES.put("sales", "netTotal");
+    SOURCES.put("purchases", "totals.grandTotal");
+  }
+
+  private final MongoTemplate mongo;
+  private final TaskScheduler scheduler;
+
+  /** Set once a reconcile has written the counters; the dashboard sums the collections until then. */
+  private volatile boolean ready;
+
+  public KpiCounterService(MongoTemplate mongo, TaskScheduler scheduler) {
+    this.mongo = mongo;
+    this.scheduler = scheduler;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    scheduler.schedule(() -> {
+      try {
+        if (!isReady()) reconcile();
+      } catch (RuntimeException e) {
+        log.warn("KPI counter startup pass stopped: {}", e.getMessage());
+      }
+    }, Instant.now());
+  }
+
+  @Scheduled(cron = "${app.kpi-counters.reconcile-cron:0 15 0 * * *}", zone = "Asia/Dubai")
+  public void nightly() {
+    try {
+      Document drift = reconcile();
+      if (!drift.isEmpty()) log.info("KPI counters corrected: {}", drift.toJson());
+    } catch (RuntimeException e) {
+      log.warn("Nightly KPI reconcile failed: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * True once a reconcile has completed. The document itself exists from the start of
+   * the first reconcile, while its sections still hold only the deltas seen so far.
+   */
+  public boolean isReady() {
+    if (!ready) {
+      ready = mongo.exists(Query.query(Criteria.where("_id").is(ALL_TIME).and(F_RECONCILED_AT).exists(true)),
+          COLLECTION);
+    }
+    return ready;
+  }
+
+  /* ============================ incremental ============================ */
+
+  /**
+   * Applies a write's delta. Never creates the document: before the first reconcile
+   * there is nothing to add to, and that reconcile counts the write from the source.
+   */
+  @EventListener
+  @Order(0)   // before ReportCacheInvalidator, like the other pre-aggregations
+  public void onChange(ReportDataChangedEvent e) {
+    String path = SOURCES.get(e.getCollection());
+    if (path == null) return;
+
+    int count = (e.getAfter() != null ? 1 : 0) - (e.getBefore() != null ? 1 : 0);
+    double total = num(e.getAfter(), path) - num(e.getBefore(), path);
+    if (count == 0 && total == 0) return;
+
+    Update u = new Update()
+        .inc(e.getCollection() + "." + K_TOTAL, total)
+        .inc(e.getCollection() + "." + K_COUNT, count);
+    Criteria c = Criteria.where("_id").is(ALL_TIME);
+    if (e.getPosition() != null) {
+      // an already-applied position fails the filter and the update matches nothing
+      c.orOperator(Criteria.where(F_POSITION).lt(e.getPosition()), Criteria.where(F_POSITION).exists(false));
+      u.set(F_POSITION, e.getPosition());
+    }
+    if (mongo.updateFirst(Query.query(c), u, COLLECTION).getMatchedCount() == 0) {
+      log.debug("KPI counters skipped {} change {}", e.getCollection(), e.getPosition());
+    }
+  }
+
+  /* ============================= reconcile ============================= */
+
+  /**
+   * Recomputes every section from the source collections without losing the deltas
+   * applied while the sums ran: it reads the stored section first, sums, and then
+   * {@code $inc}s by {@code actual - storedAtStart}, so the section ends at
+   * {@code actual + (storedNow - storedAtStart)}.
+   *
+   * <p>A write that commits before the sum reads it but whose {@code $inc} lands after
+   * the stored section was read is in both terms and is counted twice. The window is the
+   * delay between a save and its event, so the over-count is rare and lasts only until
+   * the next reconcile, which runs when the tills are idle.
+   *
+   * @return per source, how far the stored counters were off (empty when they matched)
+   */
+  public Document reconcile() {
+    // create the document up front so deltas arriving during the sums have somewhere to land
+    mongo.upsert(byId(), new Update().setOnInsert(F_CREATED_AT, new Date()), COLLECTION);
+
+    Document drift = new Document();
+    for (Map.Entry<String, String> src : SOURCES.entrySet()) {
+      Query q = byId();
+      q.fields().include(src.getKey());
+      Document current = mongo.findOne(q, Document.class, COLLECTION);
+      Document stored = (current == null) ? null : current.get(src.getKey(), Document.class);
+
+      Document actual = sum(src.getKey(), src.getValue());
+      double dTotal = num(actual.get(K_TOTAL)) - ((stored == null) ? 0 : num(stored.get(K_TOTAL)));
+      long dCount = (long) num(actual.get(K_COUNT)) - ((stored == null) ? 0 : (long) num(stored.get(K_COUNT)));
+      if (Math.abs(dTotal) >= 0.005 || dCount != 0) {
+        drift.append(src.getKey(), new Document(K_TOTAL, dTotal).append(K_COUNT, dCount));
+      }
+      mongo.updateFirst(byId(), new Update()
+          .inc(src.getKey() + "." + K_TOTAL, dTotal)
+          .inc(src.getKey() + "." + K_COUNT, dCount), COLLECTION);
+    }
+    mongo.updateFirst(byId(), new Update().set(F_RECONCILED_AT, new Date()), COLLECTION);
+    ready = true;
+    return drift;
+  }
+
+  private Document sum(String source, String path) {
+    List<Document> pipeline = List.of(new Document("$group", new Document("_id", null)
+        .append(K_TOTAL, new Document("$sum", toDouble("$" + path)))
+        .append(K_COUNT, new Document("$sum", 1))));
+    Document row = mongo.getCollection(source).aggregate(pipeline).allowDiskUse(true).first();
+    return new Document(K_TOTAL, (row == null) ? 0d : num(row.get(K_TOTAL)))
+        .append(K_COUNT, (row == null) ? 0L : (long) num(row.get(K_COUNT)));
+  }
+
+  /* ============================== readers ============================== */
+
+  /** All-time total per source collection, or null while the counters are not built yet. */
+  public Map<String, Double> totals() {
+    if (!isReady()) return null;
+    Document d = mongo.findOne(byId(), Document.class, COLLECTION);
+    if (d == null) return null;
+    Map<String, Double> out = new LinkedHashMap<>();
+    for (String source : SOURCES.keySet()) {
+      Document s = d.get(source, Document.class);
+      out.put(source, (s == null) ? 0d : num(s.get(K_TOTAL)));
+    }
+    return out;
+  }
+
+  /* ============================== helpers ============================== */
+
+  private static Query byId() {
+    return Query.query(Criteria.where("_id").is(ALL_TIME));
+  }
+}
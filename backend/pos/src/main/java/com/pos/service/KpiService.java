@@ -0,0 +1,388 @@
+package com.pos.service;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import com.pos.config.ReportingMongoConfig;
+import com.pos.model.KpiDefinition;
+import com.pos.model.KpiDefinition.Kind;
+import com.pos.repository.KpiDefinitionRepository;
+
+/**
+ * Declarative dashboard KPIs. Definitions live in {@code kpi_definitions} (seeded with
+ * the defaults below), so a store adds or changes cards without a release.
+ *
+ * <p>A request compiles every base KPI it needs, including those behind ratios, into
+ * one {@code $match + $group} per source collection, one accumulator per KPI. The
+ * ratios are then worked out in memory. Round trips therefore follow the number of
+ * collections involved, not the number of cards.
+ */
+@Service
+public class KpiService {
+
+  private static final Logger log = LoggerFactory.getLogger(KpiService.class);
+
+  private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+  private static final String DEFAULT_DATE_FIELD = "date";
+
+  /** Collections a definition may read; keeps user-defined KPIs off users, settings, etc. */
+  private static final Set<String> SOURCES = Set.of(
+      "sales", "invoices", "purchases", "expenses", "returns", "sale_returns", "purchase_returns");
+
+  /**
+   * Expression operators a definition may use: arithmetic, comparison, conditionals,
+   * conversions and per-document array/date helpers. Anything else (server-side
+   * JavaScript, regexes, other collections, variables like {@code $$NOW}) is rejected.
+   */
+  private static final Set<String> ALLOWED_OPERATORS = Set.of(
+      "$add", "$subtract", "$multiply", "$divide", "$mod", "$abs", "$ceil", "$floor", "$round", "$trunc",
+      "$eq", "$ne", "$gt", "$gte", "$lt", "$lte", "$cmp", "$and", "$or", "$not", "$in",
+      "$cond", "$ifNull", "$switch", "$literal",
+      "$convert", "$toDouble", "$toDecimal", "$toInt", "$toLong", "$toString", "$toBool", "$type", "$isNumber",
+      "$map", "$filter", "$reduce", "$size", "$sum", "$avg", "$min", "$max", "$arrayElemAt", "$first", "$last",
+      "$toLower", "$toUpper", "$trim", "$concat",
+      "$year", "$month", "$dayOfMonth", "$dayOfWeek", "$hour", "$dateToString", "$dateTrunc");
+
+  private static final Pattern FIELD_PATH = Pattern.compile("\\$[A-Za-z_][A-Za-z0-9_.]*");
+  private static final Pattern KEY = Pattern.compile("[a-z][a-z0-9_]{0,63}");
+
+  private static final String ITEM_QTY_SUM =
+      "{ \"$sum\": { \"$map\": { \"input\": { \"$ifNull\": [\"$items\", []] }, \"as\": \"i\", "
+      + "\"in\": { \"$convert\": { \"input\": \"$$i.qty\", \"to\": \"double\", \"onError\": 0, \"onNull\": 0 } } } } }";
+  private static final String ITEM_COST_SUM =
+      "{ \"$sum\": { \"$map\": { \"input\": { \"$ifNull\": [\"$items\", []] }, \"as\": \"i\", "
+      + "\"in\": { \"$multiply\": ["
+      + "{ \"$convert\": { \"input\": \"$$i.qty\", \"to\": \"double\", \"onError\": 0, \"onNull\": 0 } }, "
+      + "{ \"$convert\": { \"input\": \"$$i.cost\", \"to\": \"double\", \"onError\": 0, \"onNull\": 0 } } ] } } } }";
+  private static final String NET_EX_VAT =
+      "{ \"$subtract\": ["
+      + "{ \"$convert\": { \"input\": \"$netTotal\", \"to\": \"double\", \"onError\": 0, \"onNull\": 0 } }, "
+      + "{ \"$convert\": { \"input\": \"$vat\", \"to\": \"double\", \"onError\": 0, \"onNull\": 0 } } ] }";
+
+  /** Seeded into an empty {@code kpi_definitions}. */
+  static final List<KpiDefinition> DEFAULTS = List.of(
+      base("sales_total", "Sales", Kind.SUM, "sales", "$netTotal", "money", 10),
+      base("sales_bills", "Bills", Kind.COUNT, "sales", null, "number", 20),
+      base("sales_received", "Received", Kind.SUM, "sales", "$amountReceived", "money", 30),
+      base("sales_items", "Items sold", Kind.SUM, "sales", ITEM_QTY_SUM, "number", 40),
+      base("returns_total", "Returns", Kind.SUM, "returns", "$amount", "money", 50),
+      base("purchases_total", "Purchases", Kind.SUM, "purchases", "$totals.grandTotal", "money", 60),
+      base("expenses_total", "Expenses", Kind.SUM, "expenses", "$amount", "money", 70),
+      ratio("avg_basket", "Average basket", List.of("sales_total"), "sales_bills", 1, "money", 80),
+      ratio("items_per_bill", "Items per bill", List.of("sales_items"), "sales_bills", 1, "number", 90),
+      ratio("refund_rate", "Refund rate", List.of("returns_total"), "sales_total", 100, "percent", 100),
+      base("sales_revenue", "Revenue (ex VAT)", Kind.SUM, "sales", NET_EX_VAT, "money", 110),
+      disabled(base("sales_cost", "Cost of goods sold", Kind.SUM, "sales", ITEM_COST_SUM, "money", 120),
+          "Needs items[].cost captured at sale time"),
+      disabled(ratio("gross_margin", "Gross margin", List.of("sales_revenue", "-sales_cost"), "sales_revenue",
+          100, "percent", 130), "Needs items[].cost captured at sale time"));
+
+  /** Time budget name under {@code app.reports.budget}. */
+  private static final String BUDGET = "kpi";
+
+  private final KpiDefinitionRepository definitions;
+  private final MongoTemplate mongo;
+  private final ReportBudgets budgets;
+
+  public KpiService(KpiDefinitionRepository definitions,
+                    @Qualifier(ReportingMongoConfig.REPORTING) MongoTemplate mongo, ReportBudgets budgets) {
+    this.definitions = definitions;
+    this.mongo = mongo;
+    this.budgets = budgets;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void seed() {
+    try {
+      if (definitions.count() == 0) definitions.saveAll(DEFAULTS);
+    } catch (RuntimeException e) {
+      log.warn("Could not seed KPI definitions: {}", e.getMessage());
+    }
+  }
+
+  /* ============================ definitions ============================ */
+
+  public List<KpiDefinition> definitions() {
+    return definitions.findAll(Sort.by("sortOrder", "id"));
+  }
+
+  /** Creates or replaces the definition {@code key}; it must compile against the others. */
+  public KpiDefinition save(String key, KpiDefinition d) {
+    if (key == null || !KEY.matcher(key).matches()) {
+      throw new IllegalArgumentException("KPI key must be lower-case letters, digits and _: " + key);
+    }
+    d.setId(key);
+    Map<String, KpiDefinition> all = byKey();
+    all.put(key, d);
+    validate(d);
+    resolve(key, all, new LinkedHashSet<>(), new HashSet<>());
+    return definitions.save(d);
+  }
+
+  public void delete(String key) {
+    if (!definitions.existsById(key)) throw new IllegalArgumentException("KPI not found: " + key);
+    for (KpiDefinition d : definitions.findAll()) {
+      if (d.getKind() == Kind.RATIO && refs(d).contains(key)) {
+        throw new IllegalArgumentException("KPI " + key + " is used by " + d.getId());
+      }
+    }
+    definitions.deleteById(key);
+  }
+
+  /* ============================== compute ============================== */
+
+  /**
+   * Values for {@code keys} (all enabled KPIs, in definition order, when empty) over
+   * [from, to] in Asia/Dubai days: key -> {label, value, format}. A ratio with a zero
+   * denominator, or an average over no rows, is null.
+   */
+  public Map<String, Document> compute(List<String> keys, LocalDate from, LocalDate to) {
+    if (from.isAfter(to)) throw new IllegalArgumentException("from must not be after to");
+    Map<String, KpiDefinition> all = byKey();
+
+    List<String> wanted = new ArrayList<>();
+    if (keys == null || keys.isEmpty()) {
+      for (KpiDefinition d : definitions()) if (d.isEnabled()) wanted.add(d.getId());
+    } else {
+      wanted.addAll(keys);
+    }
+
+    Set<String> bases = new LinkedHashSet<>();
+    for (String k : wanted) resolve(k, all, bases, new HashSet<>());
+
+    Set<String> timedOut = new HashSet<>();
+    Map<String, Double> values = aggregate(bases, all, from, to, timedOut);
+
+    Map<String, Document> out = new LinkedHashMap<>();
+    for (String k : wanted) {
+      KpiDefinition d = all.get(k);
+      Document card = new Document("label", d.getLabel())
+          .append("value", value(k, all, values))
+          .append("format", d.getFormat());
+      if (!timedOut.isEmpty()) {
+        Set<String> own = new HashSet<>();
+        resolve(k, all, own, new HashSet<>());
+        own.retainAll(timedOut);
+        if (!own.isEmpty()) card.append("truncated", true);
+      }
+      out.put(k, card);
+    }
+    return out;
+  }
+
+  /**
+   * One aggregation per (collection, date field), one accumulator per base KPI, each
+   * within the {@code kpi} time budget. KPIs of a group that runs out of time have no
+   * value and are added to {@code timedOut}.
+   */
+  private Map<String, Double> aggregate(Set<String> bases, Map<String, KpiDefinition> all,
+                                        LocalDate from, LocalDate to, Set<String> timedOut) {
+    Map<String, List<KpiDefinition>> groups = new LinkedHashMap<>();
+    for (String k : bases) {
+      KpiDefinition d = all.get(k);
+      groups.computeIfAbsent(d.getCollection() + "|" + dateField(d), g -> new ArrayList<>()).add(d);
+    }
+
+    Date start = Date.from(from.atStartOfDay(ZONE).toInstant());
+    Date end = Date.from(to.plusDays(1).atStartOfDay(ZONE).toInstant());
+
+    Map<String, Double> values = new HashMap<>();
+    for (List<KpiDefinition> group : groups.values()) {
+      KpiDefinition first = group.get(0);
+      Document match = new Document(dateField(first), new Document("$gte", start).append("$lt", end));
+      Document acc = new Document("_id", null);
+      // positional aliases: KPI keys are safe, but field names stay independent of them
+      for (int i = 0; i < group.size(); i++) acc.append("m" + i, accumulator(group.get(i)));
+
+      Document row;
+      try {
+        row = mongo.aggregate(newAggregation(
+                ctx -> new Document("$match", match),
+                ctx -> new Document("$group", acc)).withOptions(budgets.options(BUDGET)),
+            first.getCollection(), Document.class).getUniqueMappedResult();
+      } catch (RuntimeException e) {
+        if (!budgets.exceeded(BUDGET, e)) throw e;
+        for (KpiDefinition d : group) {
+          values.put(d.getId(), null);
+          timedOut.add(d.getId());
+        }
+        continue;
+      }
+
+      for (int i = 0; i < group.size(); i++) {
+        Object v = (row == null) ? null : row.get("m" + i);
+        Kind kind = group.get(i).getKind();
+        boolean zeroWhenEmpty = kind == Kind.SUM || kind == Kind.COUNT;
+        values.put(group.get(i).getId(), (v instanceof Number) ? ((Number) v).doubleValue() : (zeroWhenEmpty ? 0d : null));
+      }
+    }
+    return values;
+  }
+
+  private static Document accumulator(KpiDefinition d) {
+    Object when = blank(d.getFilter()) ? null : expression(d.getFilter());
+    if (d.getKind() == Kind.COUNT) {
+      return new Document("$sum", (when == null) ? 1 : new Document("$cond", List.of(when, 1, 0)));
+    }
+    boolean sum = d.getKind() == Kind.SUM;
+    // numbers may be stored as strings (BigDecimal mapping)
+    Object v = new Document("$convert", new Document("input", expression(d.getExpr()))
+        .append("to", "double").append("onError", sum ? 0 : null).append("onNull", sum ? 0 : null));
+    if (when != null) v = new Document("$cond", Arrays.asList(when, v, sum ? 0 : null));
+    return new Document("$" + d.getKind().name().toLowerCase(), v);
+  }
+
+  private static Double value(String key, Map<String, KpiDefinition> all, Map<String, Double> values) {
+    KpiDefinition d = all.get(key);
+    if (d.getKind() != Kind.RATIO) return values.get(key);
+
+    double num = 0;
+    for (String term : d.getNumerator()) {
+      boolean minus = term.startsWith("-");
+      Double v = value(minus ? term.substring(1) : term, all, values);
+      if (v == null) return null;
+      num += minus ? -v : v;
+    }
+    Double den = value(d.getDenominator(), all, values);
+    if (den == null || den == 0) return null;
+    return num / den * ((d.getScale() == null) ? 1 : d.getScale());
+  }
+
+  /* ============================ validation ============================ */
+
+  /** Collects the base KPIs behind {@code key} into {@code bases}; rejects unknown keys and cycles. */
+  static void resolve(String key, Map<String, KpiDefinition> all, Set<String> bases, Set<String> path) {
+    KpiDefinition d = all.get(key);
+    if (d == null) throw new IllegalArgumentException("KPI not found: " + key);
+    if (d.getKind() != Kind.RATIO) {
+      bases.add(key);
+      return;
+    }
+    if (!path.add(key)) throw new IllegalArgumentException("KPI " + key + " refers to itself");
+    for (String ref : refs(d)) resolve(ref, all, bases, path);
+    path.remove(key);
+  }
+
+  static void validate(KpiDefinition d) {
+    if (d.getKind() == null) throw new IllegalArgumentException("KPI kind is required");
+    if (blank(d.getLabel())) d.setLabel(d.getId());
+
+    if (d.getKind() == Kind.RATIO) {
+      if (d.getNumerator() == null || d.getNumerator().isEmpty() || blank(d.getDenominator())) {
+        throw new IllegalArgumentException("A RATIO KPI needs numerator and denominator");
+      }
+      return;
+    }
+
+    if (!SOURCES.contains(d.getCollection())) {
+      throw new IllegalArgumentException("KPI collection must be one of " + SOURCES);
+    }
+    if (d.getKind() != Kind.COUNT && blank(d.getExpr())) {
+      throw new IllegalArgumentException("A " + d.getKind() + " KPI needs expr");
+    }
+    if (d.getKind() != Kind.COUNT) expression(d.getExpr());
+    if (!blank(d.getFilter())) expression(d.getFilter());
+    if (!blank(d.getDateField()) && !FIELD_PATH.matcher("$" + d.getDateField()).matches()) {
+      throw new IllegalArgumentException("Bad dateField: " + d.getDateField());
+    }
+  }
+
+  /** A bare field path ({@code $netTotal}) or a JSON aggregation expression. */
+  static Object expression(String s) {
+    String t = s.trim();
+    if (FIELD_PATH.matcher(t).matches()) return t;
+    Object e;
+    try {
+      e = Document.parse("{\"e\": " + t + "}").get("e");
+    } catch (JsonParseException ex) {
+      throw new IllegalArgumentException("Bad KPI expression: " + ex.getMessage());
+    }
+    checkOperators(e);
+    return e;
+  }
+
+  /** Operator keys must be allowed; other keys are operator arguments ({@code input}, {@code if}, ...). */
+  private static void checkOperators(Object e) {
+    if (e instanceof Document) {
+      for (Map.Entry<String, Object> en : ((Document) e).entrySet()) {
+        if (en.getKey().startsWith("$") && !ALLOWED_OPERATORS.contains(en.getKey())) {
+          throw new IllegalArgumentException("Operator not allowed in a KPI: " + en.getKey());
+        }
+        checkOperators(en.getValue());
+      }
+    } else if (e instanceof List) {
+      for (Object o : (List<?>) e) checkOperators(o);
+    } else if (e instanceof String && ((String) e).startsWith("$$")) {
+      // user variables ($map/$filter/$reduce) start lowercase; system ones ($$NOW, $$ROOT) uppercase
+      String var = ((String) e).substring(2).split("\\.", 2)[0];
+      if (var.isEmpty() || Character.isUpperCase(var.charAt(0))) {
+        throw new IllegalArgumentException("Variable not allowed in a KPI: " + e);
+      }
+    }
+  }
+
+  /* ============================== helpers ============================== */
+
+  private Map<String, KpiDefinition> byKey() {
+    Map<String, KpiDefinition> m = new LinkedHashMap<>();
+    for (KpiDefinition d : definitions()) m.put(d.getId(), d);
+    return m;
+  }
+
+  private static List<String> refs(KpiDefinition d) {
+    List<String> out = new ArrayList<>();
+    for (String term : d.getNumerator()) out.add(term.startsWith("-") ? term.substring(1) : term);
+    out.add(d.getDenominator());
+    return out;
+  }
+
+  private static String dateField(KpiDefinition d) {
+    return blank(d.getDateField()) ? DEFAULT_DATE_FIELD : d.getDateField();
+  }
+
+  private static boolean blank(String s) {
+    return s == null || s.isBlank();
+  }
+
+  private static KpiDefinition base(String key, String label, Kind kind, String collection, String expr,
+                                    String format, int order) {
+    return KpiDefinition.builder().id(key).label(label).kind(kind).collection(collection).expr(expr)
+        .format(format).sortOrder(order).build();
+  }
+
+  private static KpiDefinition ratio(String key, String label, List<String> numerator, String denominator,
+                                     double scale, String format, int order) {
+    return KpiDefinition.builder().id(key).label(label).kind(Kind.RATIO).numerator(numerator)
+        .denominator(denominator).scale(scale).format(format).sortOrder(order).build();
+  }
+
+  private static KpiDefinition disabled(KpiDefinition d, String description) {
+    d.setEnabled(false);
+    d.setDescription(description);
+    return d;
+  }
+}
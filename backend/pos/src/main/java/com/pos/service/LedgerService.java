@@ -13,10 +13,14 @@ import java.util.List;
 @Service
 public class LedgerService {
 
+    private static final String COLLECTION = "ledgers";
+
     private final LedgerEntryRepository repo;
+    private final ReportDataPublisher reporting;
 
-    public LedgerService(LedgerEntryRepository repo) {
+    public LedgerService(LedgerEntryRepository repo, ReportDataPublisher reporting) {
         this.repo = repo;
+        this.reporting = reporting;
     }
 
     /** Get all entries (consider pagination later if this grows large). */
@@ -36,17 +40,24 @@ public class LedgerService {
     /** Create or update (if dto.id present). */
     @Transactional
     public LedgerDTO save(LedgerDTO dto) {
-        LedgerEntry e = (dto.getId() != null && !dto.getId().isBlank())
-                ? repo.findById(dto.getId()).orElse(new LedgerEntry())
-                : new LedgerEntry();
+        LedgerEntry before = (dto.getId() != null && !dto.getId().isBlank())
+                ? repo.findById(dto.getId()).orElse(null)
+                : null;
+        // apply() sets every field, so a fresh entity keeps 'before' intact for the change event
+        LedgerEntry e = new LedgerEntry();
+        if (before != null) e.setId(before.getId());
 
         apply(dto, e);
-        return toDto(repo.save(e));
+        LedgerEntry saved = repo.save(e);
+        reporting.changed(COLLECTION, before, saved);
+        return toDto(saved);
     }
 
     @Transactional
     public void delete(String id) {
+        LedgerEntry before = repo.findById(id).orElse(null);
         repo.deleteById(id);
+        reporting.changed(COLLECTION, before, null);
     }
 
     // ---------- mapping ----------
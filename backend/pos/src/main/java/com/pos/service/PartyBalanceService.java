@@ -0,0 +1,424 @@
+package com.pos.service;
+
+import static com.pos.util.DocValues.num;
+import static com.pos.util.DocValues.toDouble;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.RenameCollectionOptions;
+
+/**
+ * Running balance and aging buckets per customer / vendor in {@code party_balances},
+ * kept current from ledger writes so the aging and supplier-outstanding reports read
+ * precomputed rows instead of aggregating {@code ledgers}.
+ *
+ * <p>Each row holds the party's net movement per day ({@code days.yyyy-MM-dd}, positive
+ * = owed to us for customers, owed by us for vendors). Buckets are derived from that map
+ * first-in-first-out: credits settle the oldest charges, and what is left is aged by
+ * day. A write applies {@code $inc} deltas and re-buckets its own row; the nightly job
+ * only re-buckets rows as days pass and never reads the ledger.
+ */
+@Service
+public class PartyBalanceService {
+
+  private static final Logger log = LoggerFactory.getLogger(PartyBalanceService.class);
+
+  public static final String COLLECTION = "party_balances";
+  private static final String C_LEDGERS = "ledgers";
+  /** Holds {@code {_id: "party_balances", builtAt}} once a rebuild has completed. */
+  private static final String C_STATE = "reporting_state";
+
+  public static final String F_ENTITY_TYPE = "entityType";
+  public static final String F_ENTITY_ID   = "entityId";
+  public static final String F_ENTITY_NAME = "entityName";
+  public static final String F_BALANCE     = "balance";
+  private static final String F_DEBIT   = "debit";
+  private static final String F_CREDIT  = "credit";
+  private static final String F_DAYS    = "days";
+  private static final String F_REV     = "rev";
+  private static final String F_AGED_ON = "agedOn";
+
+  private static final String CUSTOMER = "CUSTOMER";
+
+  /** Bucket field -> oldest age (days) it holds; the last bucket is open-ended. */
+  public static final String B_0_30  = "d0_30";
+  public static final String B_31_60 = "d31_60";
+  public static final String B_61_90 = "d61_90";
+  public static final String B_90P   = "d90plus";
+
+  private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+  private static final double EPS = 0.005;
+  private static final int BULK_SIZE = 500;
+
+  private final MongoTemplate mongo;
+  private final TaskScheduler scheduler;
+
+  @Value("${app.party-balances.rebuild-if-empty:true}")
+  private boolean rebuildIfEmpty;
+
+  /** Set once the table is known to be complete; reports use the ledger until then. */
+  private volatile boolean ready;
+
+  /** Serialises incremental writes against the scratch swap at the end of {@link #rebuild()}. */
+  private final Object swapLock = new Object();
+  /** Parties touched by ledger writes while a rebuild runs; null when none is in progress. */
+  private Set<String> dirty;
+
+  public PartyBalanceService(MongoTemplate mongo, TaskScheduler scheduler) {
+    this.mongo = mongo;
+    this.scheduler = scheduler;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    try {
+      ensureIndexes(COLLECTION);
+    } catch (RuntimeException e) {
+      log.warn("Could not ensure {} indexes: {}", COLLECTION, e.getMessage());
+    }
+
+    scheduler.schedule(() -> {
+      try {
+        if (isReady()) reageAll();
+        else if (mongo.estimatedCount(C_LEDGERS) == 0) markBuilt(0);
+        else if (rebuildIfEmpty) rebuild();
+      } catch (RuntimeException e) {
+        log.warn("Party balance startup pass stopped: {}", e.getMessage());
+      }
+    }, Instant.now());
+  }
+
+  @Scheduled(cron = "${app.party-balances.nightly-cron:0 5 0 * * *}", zone = "Asia/Dubai")
+  public void nightly() {
+    try {
+      long n = reageAll();
+      log.info("Party aging shifted to {}: {} rows", today(), n);
+    } catch (RuntimeException e) {
+      log.warn("Nightly party aging failed: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * True when the precomputed rows can stand in for the ledger: a rebuild has run to
+   * completion at some point, after which ledger writes keep the rows current. Rows
+   * left by an interrupted rebuild never count.
+   */
+  public boolean isReady() {
+    if (!ready) {
+      ready = mongo.exists(stateQuery(), C_STATE);
+    }
+    return ready;
+  }
+
+  private void markBuilt(long rows) {
+    mongo.upsert(stateQuery(), new Update().set("builtAt", new Date()).set("rows", rows), C_STATE);
+    ready = true;
+  }
+
+  private static Query stateQuery() {
+    return Query.query(Criteria.where("_id").is(COLLECTION));
+  }
+
+  /* ============================ incremental ============================ */
+
+  @EventListener
+  @Order(0)   // before ReportCacheInvalidator
+  public void onChange(ReportDataChangedEvent e) {
+    if (!C_LEDGERS.equals(e.getCollection())) return;
+    synchronized (swapLock) {
+      apply(e.getBefore(), -1);
+      apply(e.getAfter(), 1);
+      if (dirty != null) {
+        markDirty(e.getBefore());
+        markDirty(e.getAfter());
+      }
+    }
+  }
+
+  private void markDirty(Document entry) {
+    if (entry == null || entry.get(F_ENTITY_TYPE) == null || entry.get(F_ENTITY_ID) == null) return;
+    dirty.add(key(entry.get(F_ENTITY_TYPE).toString(), entry.get(F_ENTITY_ID).toString()));
+  }
+
+  private void apply(Document entry, int sign) {
+    if (entry == null || entry.get(F_ENTITY_TYPE) == null || entry.get(F_ENTITY_ID) == null) return;
+    String type = entry.get(F_ENTITY_TYPE).toString();
+    String entityId = entry.get(F_ENTITY_ID).toString();
+    LocalDate day = dayOf(entry.get("date"));
+    if (day == null) return;
+
+    double debit = sign * num(entry.get(F_DEBIT));
+    double credit = sign * num(entry.get(F_CREDIT));
+    double net = CUSTOMER.equals(type) ? debit - credit : credit - debit;
+
+    Update u = new Update()
+        .inc(F_DEBIT, debit)
+        .inc(F_CREDIT, credit)
+        .inc(F_BALANCE, net)
+        .inc(F_DAYS + "." + day, net)
+        .inc(F_REV, 1)
+        .set(F_ENTITY_TYPE, type)
+        .set(F_ENTITY_ID, entityId);
+    if (sign > 0 && entry.get(F_ENTITY_NAME) != null) u.set(F_ENTITY_NAME, entry.get(F_ENTITY_NAME));
+
+    Document row = mongo.findAndModify(Query.query(Criteria.where("_id").is(key(type, entityId))), u,
+        FindAndModifyOptions.options().returnNew(true).upsert(true), Document.class, COLLECTION);
+    if (row != null) {
+      // the rev guard drops this write if a later change already re-bucketed the row
+      mongo.updateFirst(Query.query(Criteria.where("_id").is(row.get("_id")).and(F_REV).is(row.get(F_REV))),
+          buckets(row, today()), COLLECTION);
+    }
+  }
+
+  /* ============================ nightly ============================ */
+
+  /**
+   * Moves every row's amounts into the buckets for today's date. Balances and day
+   * totals are untouched.
+   *
+   * @return rows re-bucketed
+   */
+  public long reageAll() {
+    LocalDate today = today();
+    Query q = new Query(Criteria.where(F_AGED_ON).ne(today.toString()));
+    q.fields().include(F_DAYS, F_REV);
+
+    long n = 0;
+    BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+    int pending = 0;
+    try (Stream<Document> rows = mongo.stream(q, Document.class, COLLECTION)) {
+      for (Document row : (Iterable<Document>) rows::iterator) {
+        bulk.updateOne(Query.query(Criteria.where("_id").is(row.get("_id")).and(F_REV).is(row.get(F_REV))),
+            buckets(row, today));
+        n++;
+        if (++pending == BULK_SIZE) {
+          bulk.execute();
+          bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+          pending = 0;
+        }
+      }
+    }
+    if (pending > 0) bulk.execute();
+    return n;
+  }
+
+  /* ============================== rebuild ============================== */
+
+  /**
+   * Recomputes every row from {@code ledgers} into a scratch collection and swaps it in,
+   * so readers never see a half-built table. Ledger writes during the build still go to
+   * the live table, which the rename discards, so the parties they touch are recomputed
+   * into the scratch table under the swap lock just before the rename. Only writes seen
+   * by this instance are covered.
+   *
+   * @return rows written
+   */
+  public long rebuild() {
+    synchronized (swapLock) {
+      if (dirty != null) throw new IllegalStateException("Party balance rebuild already running");
+      dirty = new HashSet<>();
+    }
+    try {
+      String scratch = COLLECTION + "_rebuild";
+      mongo.dropCollection(scratch);
+      ensureIndexes(scratch);
+
+      LocalDate today = today();
+      long rows = aggregateInto(scratch, new Document(), today);
+
+      synchronized (swapLock) {
+        for (String party : dirty) {
+          mongo.remove(Query.query(Criteria.where("_id").is(party)), scratch);
+          aggregateInto(scratch, partyMatch(party), today);
+        }
+        mongo.getCollection(scratch).renameCollection(
+            new MongoNamespace(mongo.getDb().getName(), COLLECTION),
+            new RenameCollectionOptions().dropTarget(true));
+        markBuilt(rows);
+      }
+      log.info("Party balances rebuilt: {} rows", rows);
+      return rows;
+    } finally {
+      synchronized (swapLock) {
+        dirty = null;
+      }
+    }
+  }
+
+  /** Ledger entries of one party key; ids may be stored as ObjectId or as their hex string. */
+  private static Document partyMatch(String party) {
+    int sep = party.indexOf(':');
+    String id = party.substring(sep + 1);
+    List<Object> ids = new ArrayList<>(List.of(id));
+    if (ObjectId.isValid(id)) ids.add(new ObjectId(id));
+    return new Document(F_ENTITY_TYPE, party.substring(0, sep)).append(F_ENTITY_ID, new Document("$in", ids));
+  }
+
+  /** Aggregates the ledger entries matching {@code match} into one row per party in {@code target}. */
+  private long aggregateInto(String target, Document match, LocalDate today) {
+    Document day = new Document("$dateToString", new Document("format", "%Y-%m-%d")
+        .append("date", "$date").append("timezone", ZONE.getId()));
+    Document filter = new Document("date", new Document("$type", "date"))
+        .append(F_ENTITY_TYPE, new Document("$ne", null))
+        .append(F_ENTITY_ID, new Document("$ne", null));
+    List<Document> pipeline = List.of(
+        new Document("$match", new Document("$and", List.of(filter, match))),
+        new Document("$group", new Document("_id", new Document("t", "$" + F_ENTITY_TYPE)
+                .append("e", new Document("$toString", "$" + F_ENTITY_ID)).append("d", day))
+            .append(F_ENTITY_NAME, new Document("$last", "$" + F_ENTITY_NAME))
+            .append(F_DEBIT, new Document("$sum", toDouble("$" + F_DEBIT)))
+            .append(F_CREDIT, new Document("$sum", toDouble("$" + F_CREDIT)))),
+        new Document("$sort", new Document("_id.t", 1).append("_id.e", 1).append("_id.d", 1)));
+
+    long rows = 0;
+    BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, target);
+    int pending = 0;
+    Document party = null;
+    try (MongoCursor<Document> cur = mongo.getCollection(C_LEDGERS).aggregate(pipeline).allowDiskUse(true).cursor()) {
+      while (cur.hasNext()) {
+        Document g = cur.next();
+        Document id = g.get("_id", Document.class);
+        String type = id.getString("t");
+        String key = key(type, id.getString("e"));
+        if (party == null || !key.equals(party.get("_id"))) {
+          if (party != null) {
+            bulk.insert(finish(party, today));
+            rows++;
+            if (++pending == BULK_SIZE) {
+              bulk.execute();
+              bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, target);
+              pending = 0;
+            }
+          }
+          party = new Document("_id", key).append(F_ENTITY_TYPE, type).append(F_ENTITY_ID, id.getString("e"))
+              .append(F_DEBIT, 0d).append(F_CREDIT, 0d).append(F_BALANCE, 0d)
+              .append(F_DAYS, new Document()).append(F_REV, 0L);
+        }
+        double debit = num(g.get(F_DEBIT));
+        double credit = num(g.get(F_CREDIT));
+        double net = CUSTOMER.equals(type) ? debit - credit : credit - debit;
+        if (g.get(F_ENTITY_NAME) != null) party.put(F_ENTITY_NAME, g.get(F_ENTITY_NAME));
+        party.put(F_DEBIT, party.getDouble(F_DEBIT) + debit);
+        party.put(F_CREDIT, party.getDouble(F_CREDIT) + credit);
+        party.put(F_BALANCE, party.getDouble(F_BALANCE) + net);
+        party.get(F_DAYS, Document.class).put(id.getString("d"), net);
+      }
+    }
+    if (party != null) {
+      bulk.insert(finish(party, today));
+      rows++;
+      pending++;
+    }
+    if (pending > 0) bulk.execute();
+    return rows;
+  }
+
+  /* ============================== aging ============================== */
+
+  /** Rebuilt row with its buckets filled in directly (no update round trip). */
+  private static Document finish(Document party, LocalDate today) {
+    Document set = buckets(party, today).getUpdateObject().get("$set", Document.class);
+    party.putAll(set);
+    return party;
+  }
+
+  /**
+   * First-in-first-out aging of a row's day map: the sum of credits settles the oldest
+   * charges, what remains is bucketed by age, and any overpayment sits in the newest
+   * bucket as a negative amount.
+   */
+  static Update buckets(Document row, LocalDate today) {
+    Map<String, Double> days = new TreeMap<>();
+    Document map = row.get(F_DAYS, Document.class);
+    if (map != null) {
+      for (Map.Entry<String, Object> e : map.entrySet()) days.put(e.getKey(), num(e.getValue()));
+    }
+
+    double settled = 0;
+    for (double v : days.values()) if (v < 0) settled -= v;
+
+    double b0 = 0, b31 = 0, b61 = 0, b90 = 0;
+    for (Map.Entry<String, Double> e : days.entrySet()) {
+      double open = e.getValue();
+      if (open <= 0) continue;
+      double used = Math.min(settled, open);
+      settled -= used;
+      open -= used;
+      if (open < EPS) continue;
+      long age = ChronoUnit.DAYS.between(LocalDate.parse(e.getKey()), today);
+      if (age <= 30) b0 += open;
+      else if (age <= 60) b31 += open;
+      else if (age <= 90) b61 += open;
+      else b90 += open;
+    }
+    if (settled > EPS) b0 -= settled;
+
+    return new Update()
+        .set(B_0_30, round2(b0))
+        .set(B_31_60, round2(b31))
+        .set(B_61_90, round2(b61))
+        .set(B_90P, round2(b90))
+        .set(F_AGED_ON, today.toString())
+        .set("updatedAt", new Date());
+  }
+
+  /* ============================== helpers ============================== */
+
+  private void ensureIndexes(String coll) {
+    // report order: balance DESC, _id ASC (the keyset tie-break)
+    mongo.indexOps(coll).createIndex(new Index()
+        .on(F_ENTITY_TYPE, Sort.Direction.ASC)
+        .on(F_BALANCE, Sort.Direction.DESC)
+        .on("_id", Sort.Direction.ASC)
+        .named("idx_party_type_balance"));
+  }
+
+  private static String key(String type, String entityId) {
+    return type + ":" + entityId;
+  }
+
+  private static LocalDate today() {
+    return LocalDate.now(ZONE);
+  }
+
+  private static LocalDate dayOf(Object o) {
+    return (o instanceof Date) ? ((Date) o).toInstant().atZone(ZONE).toLocalDate() : null;
+  }
+
+  private static double round2(double v) {
+    return Math.round(v * 100.0) / 100.0;
+  }
+}
@@ -11,11 +11,19 @@ import com.pos.repository.PurchaseRepository;
 @Service
 public class PurchaseService {
     private final PurchaseRepository repo;
-    public PurchaseService(PurchaseRepository repo) { this.repo = repo; }
+    private final ReportDataPublisher reporting;
+
+    public PurchaseService(PurchaseRepository repo, ReportDataPublisher reporting) {
+        this.repo = repo;
+        this.reporting = reporting;
+    }
 
     public Purchase create(Purchase p) {
         if (p.getDate() == null) p.setDate(new Date()); // ensure reporting date
-        return repo.save(p);
+        Purchase before = (p.getId() == null) ? null : repo.findById(p.getId()).orElse(null);
+        Purchase saved = repo.save(p);
+        reporting.changed("purchases", before, saved);
+        return saved;
     }
     public List<Purchase> list() {
         return repo.findAll();
@@ -0,0 +1,115 @@
+package com.pos.service;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoExecutionTimeoutException;
+
+/**
+ * Per-report query budgets ({@code maxTimeMS}, {@code allowDiskUse}) and how often each
+ * report runs out of its budget. Defaults come from {@code app.reports.budget.*}; a
+ * report overrides them under {@code app.reports.budget.<report>.*}, e.g.
+ * {@code app.reports.budget.product-sales.max-time-ms=30000}.
+ */
+@Component
+public class ReportBudgets {
+
+  private static final String PREFIX = "app.reports.budget.";
+  /** Server error code for an operation that exceeded its maxTimeMS. */
+  private static final int MAX_TIME_EXPIRED = 50;
+
+  private final Environment env;
+  private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+  @Value("${app.reports.budget.max-time-ms:15000}")
+  private long defaultMaxTimeMs;
+
+  @Value("${app.reports.budget.allow-disk-use:true}")
+  private boolean defaultAllowDiskUse;
+
+  public ReportBudgets(Environment env) {
+    this.env = env;
+  }
+
+  private static final class Counters {
+    final AtomicLong runs = new AtomicLong();
+    final AtomicLong timeouts = new AtomicLong();
+    volatile Date lastTimeout;
+  }
+
+  public long maxTimeMs(String report) {
+    return env.getProperty(PREFIX + report + ".max-time-ms", Long.class, defaultMaxTimeMs);
+  }
+
+  public boolean allowDiskUse(String report) {
+    return env.getProperty(PREFIX + report + ".allow-disk-use", Boolean.class, defaultAllowDiskUse);
+  }
+
+  /** Options for one run of {@code report}; counts the run. A max time of 0 means unbounded. */
+  public AggregationOptions options(String report) {
+    return options(report, deadline(report));
+  }
+
+  /**
+   * When a request for {@code report} that starts now runs out of budget, in epoch
+   * millis; {@link Long#MAX_VALUE} when unbounded. A request that runs several queries
+   * (e.g. a retry of the totals alone) passes it to {@link #options(String, long)} so
+   * together they stay within one budget.
+   */
+  public long deadline(String report) {
+    long ms = maxTimeMs(report);
+    return (ms > 0) ? System.currentTimeMillis() + ms : Long.MAX_VALUE;
+  }
+
+  /** Options for one run of {@code report} that must finish by {@code deadline}; counts the run. */
+  public AggregationOptions options(String report, long deadline) {
+    counters(report).runs.incrementAndGet();
+    AggregationOptions.Builder b = AggregationOptions.builder().allowDiskUse(allowDiskUse(report));
+    // a spent budget still gets 1 ms (0 would mean unbounded), so the query fails as over budget
+    if (deadline != Long.MAX_VALUE) b.maxTime(Duration.ofMillis(Math.max(1, deadline - System.currentTimeMillis())));
+    return b.build();
+  }
+
+  /**
+   * True when {@code e} (or a cause) is the server stopping a query at its maxTimeMS; the
+   * hit is counted against {@code report}.
+   */
+  public boolean exceeded(String report, RuntimeException e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof MongoExecutionTimeoutException
+          || (t instanceof MongoException && ((MongoException) t).getCode() == MAX_TIME_EXPIRED)) {
+        Counters c = counters(report);
+        c.timeouts.incrementAndGet();
+        c.lastTimeout = new Date();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Per report: budget, runs, budget hits and the last hit. */
+  public Map<String, Document> snapshot() {
+    Map<String, Document> out = new TreeMap<>();
+    counters.forEach((report, c) -> out.put(report, new Document("maxTimeMs", maxTimeMs(report))
+        .append("allowDiskUse", allowDiskUse(report))
+        .append("runs", c.runs.get())
+        .append("timeouts", c.timeouts.get())
+        .append("lastTimeout", c.lastTimeout)));
+    return out;
+  }
+
+  private Counters counters(String report) {
+    return counters.computeIfAbsent(report, k -> new Counters());
+  }
+}
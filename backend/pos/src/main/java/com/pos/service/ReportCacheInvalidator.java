@@ -0,0 +1,56 @@
+package com.pos.service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.pos.config.DateRangeKey;
+import com.pos.config.LruCache;
+import com.pos.config.ReportCacheConfig;
+
+/** Write-through invalidation: a change only evicts cached ranges that contain its day. */
+@Component
+public class ReportCacheInvalidator {
+
+  private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+
+  private final CacheManager caches;
+
+  public ReportCacheInvalidator(CacheManager caches) {
+    this.caches = caches;
+  }
+
+  @EventListener
+  @Order(Ordered.LOWEST_PRECEDENCE)   // after the rollup / canonical-shape listeners have written
+  public void onChange(ReportDataChangedEvent e) {
+    Set<LocalDate> days = new HashSet<>();
+    for (Document d : Arrays.asList(e.getBefore(), e.getAfter())) {
+      Object v = (d == null) ? null : d.get("date");
+      if (v instanceof Date) days.add(((Date) v).toInstant().atZone(ZONE).toLocalDate());
+    }
+
+    for (Map.Entry<String, Set<String>> c : ReportCacheConfig.SOURCES.entrySet()) {
+      if (!c.getValue().contains(e.getCollection())) continue;
+      Cache cache = caches.getCache(c.getKey());
+      if (!(cache instanceof LruCache)) continue;
+      if (days.isEmpty()) {
+        cache.clear();   // undated document: can't tell which ranges it touches
+        continue;
+      }
+      ((LruCache) cache).evictIf(k -> !(k instanceof DateRangeKey)
+          || days.stream().anyMatch(((DateRangeKey) k)::covers));
+    }
+  }
+}
@@ -0,0 +1,327 @@
+package com.pos.service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import com.mongodb.client.model.changestream.OperationType;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Drives the reporting bookkeeping (rollups, KPI counters, party balances, cache
+ * eviction, the live dashboard) from a MongoDB change stream instead of the request
+ * thread. When {@code app.change-streams.enabled} is set, {@link ReportDataPublisher}
+ * stops publishing for the watched collections and this service republishes each
+ * committed change as the same {@link ReportDataChangedEvent}, with the pre-image as
+ * {@code before} and the post-image as {@code after}.
+ *
+ * <p>The resume token is saved in {@code change_stream_tokens} after every event, so a
+ * restart continues where the last process stopped. Delivery is at-least-once: a crash
+ * between handling an event and saving its token replays that one event. Each event
+ * carries its stream position so the KPI counters skip replays; the rollups are
+ * corrected by {@code POST /api/rollups/rebuild}.
+ *
+ * <p>The switch happens before the web server takes requests: pre-images are enabled
+ * and the cluster time recorded while the context starts, and a stream with no saved
+ * token starts at that time, so writes made before the cursor opens are not lost.
+ *
+ * <p>Only one instance consumes the stream: the holder of a lease kept on the token
+ * document, renewed while it reads and taken over by another instance once it
+ * expires. The token is saved only while the lease is still this instance's, so a
+ * holder that stalled past its lease cannot move the new holder's position. The bookkeeping it drives lives in the database, so one
+ * consumer is what keeps it from being counted once per instance. The other instances
+ * still leave the watched collections to the stream, so their in-process listeners
+ * (the report caches) see no events for them and fall back on the cache TTL and the
+ * shared generations.
+ *
+ * <p>When the switch is off the saved token is dropped, so turning it back on later
+ * starts from that moment rather than replaying, or failing to find, an old position.
+ *
+ * <p>Needs a replica set (a single node is enough: {@code mongod --replSet rs0}, then
+ * {@code rs.initiate()}) and MongoDB 6.0+ for pre-images.
+ */
+@Service
+public class ReportChangeStreamService {
+
+  private static final Logger log = LoggerFactory.getLogger(ReportChangeStreamService.class);
+
+  public static final String TOKENS = "change_stream_tokens";
+  private static final String STREAM_ID = "reporting";
+
+  /** Server codes for a resume token that fell off the oplog. */
+  private static final Set<Integer> HISTORY_LOST = Set.of(280, 286);
+  private static final long RETRY_MS = 5000;
+  /** Idle streams still advance their token; it is saved at most this often. */
+  private static final long IDLE_SAVE_MS = 10_000;
+  /** How long a lease holds without renewal, and how often the holder renews it. */
+  static final long LEASE_MS = 30_000;
+  private static final long RENEW_MS = 10_000;
+
+  private final MongoTemplate mongo;
+  private final ApplicationEventPublisher events;
+
+  private final boolean enabled;
+  private final Set<String> collections;
+  private final String instanceId = UUID.randomUUID().toString();
+
+  /** Set once pre-images are enabled; until then (or if they can't be) the publisher keeps the in-process path. */
+  private volatile boolean active;
+  /** Where a stream without a saved token starts: the cluster time when the switch happened. */
+  private volatile BsonTimestamp startAt;
+  private volatile boolean running;
+  private BsonDocument savedToken;
+  private long savedAt;
+  private long renewedAt;
+  private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+  private Thread worker;
+
+  public ReportChangeStreamService(MongoTemplate mongo, ApplicationEventPublisher events,
+                                   @Value("${app.change-streams.enabled:false}") boolean enabled,
+                                   @Value("${app.change-streams.collections:sales,invoices,purchases,expenses,returns}")
+                                   Set<String> collections) {
+    this.mongo = mongo;
+    this.events = events;
+    this.enabled = enabled;
+    this.collections = collections;
+  }
+
+  /** True when changes to {@code collection} arrive through the change stream. */
+  public boolean handles(String collection) {
+    return active && collections.contains(collection);
+  }
+
+  @PostConstruct
+  public void prepare() {
+    if (!enabled) {
+      try {
+        clearToken();
+      } catch (RuntimeException e) {
+        log.warn("Could not drop the saved change stream token: {}", e.getMessage());
+      }
+      return;
+    }
+    try {
+      for (String coll : collections) {
+        mongo.getDb().runCommand(new Document("collMod", coll)
+            .append("changeStreamPreAndPostImages", new Document("enabled", true)));
+      }
+      Object time = mongo.getDb().runCommand(new Document("hello", 1)).get("operationTime");
+      startAt = (time instanceof BsonTimestamp) ? (BsonTimestamp) time : null;
+    } catch (MongoException e) {
+      log.error("Change streams disabled, reporting stays on the request path: {}", e.getMessage());
+      return;
+    }
+    active = true;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!active) return;
+    running = true;
+    worker = new Thread(this::loop, "report-change-stream");
+    worker.setDaemon(true);
+    worker.start();
+    log.info("Reporting change stream watching {}", collections);
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    MongoChangeStreamCursor<ChangeStreamDocument<Document>> c = cursor;
+    if (c != null) {
+      try {
+        c.close();
+      } catch (RuntimeException e) {
+        log.debug("Closing change stream: {}", e.getMessage());
+      }
+    }
+    if (worker != null) worker.interrupt();
+    try {
+      releaseLease();
+    } catch (RuntimeException e) {
+      log.debug("Releasing change stream lease: {}", e.getMessage());
+    }
+  }
+
+  /* =============================== stream =============================== */
+
+  private void loop() {
+    while (running) {
+      try {
+        if (!acquireLease()) {
+          pause();
+          continue;
+        }
+      } catch (RuntimeException e) {
+        log.warn("Change stream lease check failed, retrying: {}", e.getMessage());
+        pause();
+        continue;
+      }
+      log.info("Reporting change stream lease taken by {}", instanceId);
+      savedToken = null;
+      try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> c = open(loadToken()).cursor()) {
+        cursor = c;
+        while (running) {
+          if (System.currentTimeMillis() - renewedAt >= RENEW_MS && !acquireLease()) {
+            log.warn("Reporting change stream lease lost; another instance consumes the stream");
+            break;
+          }
+          ChangeStreamDocument<Document> change = c.tryNext();
+          if (change == null) {
+            // tryNext waits up to maxAwaitTime; the post-batch token moves on even when idle
+            if (System.currentTimeMillis() - savedAt >= IDLE_SAVE_MS && !saveToken(c.getResumeToken())) {
+              log.warn("Reporting change stream lease lost; another instance consumes the stream");
+              break;
+            }
+            continue;
+          }
+          if (change.getOperationType() == OperationType.INVALIDATE) {
+            log.warn("Reporting change stream invalidated; restarting from now");
+            clearToken();
+            break;
+          }
+          handle(change);
+          if (!saveToken(change.getResumeToken())) {
+            log.warn("Reporting change stream lease lost; another instance consumes the stream");
+            break;
+          }
+        }
+      } catch (RuntimeException e) {
+        if (!running) return;
+        if (e instanceof MongoServerException && HISTORY_LOST.contains(((MongoServerException) e).getCode())) {
+          log.warn("Change stream resume point is gone from the oplog; restarting from now. "
+              + "Run POST /api/rollups/rebuild to recover missed changes.");
+          clearToken();
+          continue;
+        }
+        log.warn("Reporting change stream failed, retrying: {}", e.getMessage());
+        pause();
+      }
+    }
+  }
+
+  private ChangeStreamIterable<Document> open(BsonDocument token) {
+    ChangeStreamIterable<Document> it = mongo.getDb()
+        .watch(List.of(Aggregates.match(Filters.in("ns.coll", collections))), Document.class)
+        .fullDocument(FullDocument.WHEN_AVAILABLE)
+        .fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE)
+        .maxAwaitTime(1, TimeUnit.SECONDS);
+    if (token != null) return it.resumeAfter(token);
+    return (startAt == null) ? it : it.startAtOperationTime(startAt);
+  }
+
+  private void handle(ChangeStreamDocument<Document> change) {
+    OperationType op = change.getOperationType();
+    if (op != OperationType.INSERT && op != OperationType.UPDATE
+        && op != OperationType.REPLACE && op != OperationType.DELETE) return;
+    if (change.getNamespace() == null) return;
+
+    Document before = change.getFullDocumentBeforeChange();
+    Document after = (op == OperationType.DELETE) ? null : change.getFullDocument();
+    if (before == null && after == null) return;
+    try {
+      events.publishEvent(new ReportDataChangedEvent(change.getNamespace().getCollectionName(), before, after,
+          position(change.getResumeToken())));
+    } catch (RuntimeException e) {
+      // same contract as the in-request path: bookkeeping never stops the stream
+      log.warn("Reporting update for {} failed: {}", change.getNamespace().getCollectionName(), e.getMessage());
+    }
+  }
+
+  /* =============================== lease =============================== */
+
+  /**
+   * Takes or renews the lease. It is granted when nobody holds it, this instance holds
+   * it, or the holder let it expire; otherwise the upsert collides on {@code _id}.
+   */
+  boolean acquireLease() {
+    long now = System.currentTimeMillis();
+    Criteria free = new Criteria().orOperator(Criteria.where("owner").exists(false),
+        Criteria.where("owner").is(instanceId), Criteria.where("expiresAt").lt(new Date(now)));
+    try {
+      mongo.upsert(Query.query(Criteria.where("_id").is(STREAM_ID).andOperator(free)),
+          new Update().set("owner", instanceId).set("expiresAt", new Date(now + LEASE_MS)), TOKENS);
+    } catch (DuplicateKeyException held) {
+      return false;
+    }
+    renewedAt = now;
+    return true;
+  }
+
+  /** Hands the lease back so another instance takes over without waiting for it to expire. */
+  void releaseLease() {
+    mongo.updateFirst(owned(), new Update().unset("owner").unset("expiresAt"), TOKENS);
+  }
+
+  /* =============================== tokens =============================== */
+
+  /** The token's {@code _data} string; tokens of one stream sort in event order. */
+  private static String position(BsonDocument token) {
+    return (token == null || !token.isString("_data")) ? null : token.getString("_data").getValue();
+  }
+
+  private BsonDocument loadToken() {
+    Document row = mongo.findById(STREAM_ID, Document.class, TOKENS);
+    Document token = (row == null) ? null : row.get("token", Document.class);
+    return (token == null) ? null : token.toBsonDocument();
+  }
+
+  /** Saves the token; false when the lease is no longer this instance's. */
+  private boolean saveToken(BsonDocument token) {
+    savedAt = System.currentTimeMillis();
+    if (token == null || token.equals(savedToken)) return true;
+    if (mongo.updateFirst(owned(), new Update().set("token", Document.parse(token.toJson())).set("at", new Date()),
+        TOKENS).getMatchedCount() == 0) return false;
+    savedToken = token;
+    return true;
+  }
+
+  /** Drops the saved token, keeping the lease; the next stream starts from now. */
+  private void clearToken() {
+    mongo.updateFirst(Query.query(Criteria.where("_id").is(STREAM_ID)), new Update().unset("token").unset("at"), TOKENS);
+    savedToken = null;
+    startAt = null;
+  }
+
+  private Query owned() {
+    return Query.query(Criteria.where("_id").is(STREAM_ID).and("owner").is(instanceId));
+  }
+
+  private void pause() {
+    try {
+      Thread.sleep(RETRY_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.pos.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import org.bson.BSONException;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriterSettings;
+
+/**
+ * Opaque keyset-pagination token: the sort key and {@code _id} of the last row
+ * served, plus the count and totals from the first page so later pages don't
+ * recompute them. Encoded as URL-safe Base64 of extended JSON, which keeps dates and
+ * number types intact across the round trip.
+ */
+final class ReportCursor {
+
+  private static final JsonWriterSettings JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+  private static final String K_KEY    = "k";
+  private static final String K_ID     = "id";
+  private static final String K_COUNT  = "n";
+  private static final String K_TOTALS = "t";
+
+  final Object key;
+  final Object id;
+  final long count;
+  final Map<String, Object> totals;
+
+  private ReportCursor(Object key, Object id, long count, Map<String, Object> totals) {
+    this.key = key;
+    this.id = id;
+    this.count = count;
+    this.totals = totals;
+  }
+
+  /** Null/blank means "first page"; a malformed token is a client error. */
+  static ReportCursor decode(String token) {
+    if (token == null || token.isBlank()) return null;
+    try {
+      Document d = Document.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+      Document t = d.get(K_TOTALS, Document.class);
+      return new ReportCursor(d.get(K_KEY), d.get(K_ID), ((Number) d.get(K_COUNT, 0L)).longValue(), t);
+    } catch (IllegalArgumentException | JsonParseException | BSONException | ClassCastException e) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+  }
+
+  static String encode(Object key, Object id, long count, Map<String, ?> totals) {
+    Document d = new Document(K_KEY, key).append(K_ID, id).append(K_COUNT, count);
+    if (totals != null) d.append(K_TOTALS, new Document(totals));
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(d.toJson(JSON).getBytes(StandardCharsets.UTF_8));
+  }
+}
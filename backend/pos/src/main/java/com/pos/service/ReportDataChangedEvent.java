@@ -0,0 +1,41 @@
+package com.pos.service;
+
+import org.bson.Document;
+
+/**
+ * Raised after a reporting-relevant document (sale, invoice, purchase, return,
+ * expense) was written. Carries the stored shape before and after the write so
+ * listeners can apply exact deltas: {@code before == null} is an insert,
+ * {@code after == null} a delete.
+ *
+ * <p>Events from {@link ReportChangeStreamService} also carry their stream position,
+ * so listeners with non-idempotent updates can skip a change replayed after a restart.
+ */
+public class ReportDataChangedEvent {
+
+  private final String collection;
+  private final Document before;
+  private final Document after;
+  private final String position;
+
+  public ReportDataChangedEvent(String collection, Document before, Document after) {
+    this(collection, before, after, null);
+  }
+
+  public ReportDataChangedEvent(String collection, Document before, Document after, String position) {
+    this.collection = collection;
+    this.before = before;
+    this.after = after;
+    this.position = position;
+  }
+
+  public String getCollection() { return collection; }
+  public Document getBefore() { return before; }
+  public Document getAfter() { return after; }
+
+  /**
+   * The change's resume token data (hex, ordered like the stream), or null for changes
+   * published in-process, which are delivered exactly once.
+   */
+  public String getPosition() { return position; }
+}
@@ -0,0 +1,89 @@
+package com.pos.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Single entry point the write services use to announce reporting changes.
+ * Entities are converted with the template's converter so listeners see the same
+ * document shape that is stored (e.g. BigDecimal as string). Collections watched by
+ * {@link ReportChangeStreamService} are skipped here; the stream publishes them.
+ *
+ * <p>Listeners run on one background thread, in write order, so the rollup, balance
+ * and KPI updates stay off the request thread. Conversion happens on the caller so
+ * later mutation of the entity cannot leak into the event.
+ */
+@Component
+public class ReportDataPublisher {
+
+  private static final Logger log = LoggerFactory.getLogger(ReportDataPublisher.class);
+
+  private final ApplicationEventPublisher events;
+  private final MongoTemplate mongo;
+  private final ReportChangeStreamService changeStream;
+  private final ThreadPoolExecutor executor;
+
+  public ReportDataPublisher(ApplicationEventPublisher events, MongoTemplate mongo,
+                             ReportChangeStreamService changeStream,
+                             @Value("${app.reporting-events.queue-capacity:10000}") int queueCapacity) {
+    this.events = events;
+    this.mongo = mongo;
+    this.changeStream = changeStream;
+
+    CustomizableThreadFactory tf = new CustomizableThreadFactory("reporting-events-");
+    tf.setDaemon(true);
+    // one thread keeps $inc deltas in write order; CallerRunsPolicy applies back-pressure
+    // instead of dropping bookkeeping when the queue is full
+    this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), tf, new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    executor.shutdown();
+    if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+      log.warn("{} reporting events still pending at shutdown", executor.getQueue().size());
+    }
+  }
+
+  public void changed(String collection, Object before, Object after) {
+    if (before == null && after == null) return;
+    // the change stream delivers it off the request thread instead
+    if (changeStream.handles(collection)) return;
+    ReportDataChangedEvent event = new ReportDataChangedEvent(collection, snapshot(before), snapshot(after));
+    executor.execute(() -> publish(event));
+  }
+
+  /**
+   * The stored form of {@code entity}; write services take one before mutating a
+   * loaded entity so the "before" side of the delta needs no second read.
+   */
+  public Document snapshot(Object entity) {
+    if (entity == null) return null;
+    if (entity instanceof Document d) return d;
+    Document d = new Document();
+    mongo.getConverter().write(entity, d);
+    return d;
+  }
+
+  private void publish(ReportDataChangedEvent event) {
+    try {
+      events.publishEvent(event);
+    } catch (RuntimeException e) {
+      // reporting bookkeeping must never fail the business write that already happened
+      log.warn("Reporting update for {} failed: {}", event.getCollection(), e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package com.pos.service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Service;
+
+import com.pos.model.Invoice;
+import com.pos.model.Sale;
+
+/**
+ * Creates the indexes the report, search and dashboard queries rely on, and checks them
+ * with {@code explain}. Spring's auto-index creation is off, so without this neither the
+ * {@code @Indexed}/{@code @CompoundIndex} declarations on the report entities nor the
+ * indexes of the untyped report collections exist on a fresh database.
+ */
+@Service
+public class ReportIndexService {
+
+  private static final Logger log = LoggerFactory.getLogger(ReportIndexService.class);
+
+  private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+
+  /** Entities whose annotation-declared indexes are provisioned. */
+  private static final List<Class<?>> ENTITIES = List.of(Invoice.class, Sale.class);
+
+  /**
+   * Indexes of collections the reports read as raw documents. Equality fields come
+   * first, then the date range; descending keys match the keyset sort of the row reports.
+   */
+  private static final Map<String, List<Index>> INDEXES = new LinkedHashMap<>();
+  static {
+    // VAT summary date candidates: any of the three may hold the bill date
+    INDEXES.put("sales", List.of(
+        new Index().on("saleDate", Sort.Direction.ASC).sparse().named("idx_sales_saleDate"),
+        new Index().on("invoiceDate", Sort.Direction.ASC).sparse().named("idx_sales_invoiceDate"),
+        new Index().on("createdAt", Sort.Direction.ASC).named("idx_sales_createdAt")));
+    INDEXES.put("purchases", List.of(
+        new Index().on("date", Sort.Direction.ASC).named("idx_purchases_date")));
+    INDEXES.put("returns", List.of(
+        new Index().on("date", Sort.Direction.ASC).named("idx_returns_date"),
+        new Index().on("cashier", Sort.Direction.ASC).on("date", Sort.Direction.ASC).named("idx_returns_cashier_date")));
+    INDEXES.put("payments", List.of(
+        new Index().on("entityType", Sort.Direction.ASC).on("date", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)
+            .named("idx_payments_type_date_id")));
+    INDEXES.put("expenses", List.of(
+        new Index().on("date", Sort.Direction.DESC).on("_id", Sort.Direction.DESC).named("idx_expenses_date_id")));
+    INDEXES.put("ledgers", List.of(
+        new Index().on("entityType", Sort.Direction.ASC).on("date", Sort.Direction.ASC).named("idx_ledgers_type_date"),
+        new Index().on("entityId", Sort.Direction.ASC).on("date", Sort.Direction.ASC).named("idx_ledgers_entity_date")));
+    INDEXES.put("sale_returns", List.of(
+        new Index().on("date", Sort.Direction.ASC).named("idx_sale_returns_date")));
+    INDEXES.put("purchase_returns", List.of(
+        new Index().on("date", Sort.Direction.ASC).named("idx_purchase_returns_date")));
+    INDEXES.put(VatPeriodService.LINES, List.of(
+        new Index().on("periodId", Sort.Direction.ASC).on("date", Sort.Direction.ASC).on("_id", Sort.Direction.ASC)
+            .named("idx_vat_period_invoices_period_date")));
+    INDEXES.put("shift_events", List.of(
+        new Index().on("type", Sort.Direction.ASC).on("ts", Sort.Direction.DESC).named("idx_shift_events_type_ts")));
+  }
+
+  /** Report query shapes checked by {@link #check()}: label -> (report, filters). */
+  private static final Map<String, Map.Entry<String, Map<String, String>>> REPORT_SHAPES = new LinkedHashMap<>();
+  static {
+    shape("sales-summary",            "sales-summary", Map.of());
+    shape("sales-summary by shift",   "sales-summary", Map.of("shift", "A", "groupBy", "SHIFT"));
+    shape("sales-summary by cashier", "sales-summary", Map.of("cashier", "?", "groupBy", "CASHIER"));
+    shape("product-sales",            "product-sales", Map.of());
+    shape("product-sales by category","product-sales", Map.of("category", "?", "groupBy", "CATEGORY"));
+    shape("dayz",                     "dayz",          Map.of());
+    shape("dayz by shift",            "dayz",          Map.of("shift", "A"));
+    shape("shift",                    "shift",         Map.of());
+    shape("purchase",                 "purchase",      Map.of());
+    shape("returns",                  "returns",       Map.of());
+    shape("returns by cashier",       "returns",       Map.of("cashier", "?"));
+    shape("payments",                 "payments",      Map.of());
+    shape("vat",                      "vat",           Map.of());
+    shape("expenses",                 "expenses",      Map.of());
+    shape("supplier-outstanding",     "supplier-outstanding", Map.of());
+    shape("customer",                 "customer",      Map.of());
+    shape("aging",                    "aging",         Map.of());
+  }
+
+  private static void shape(String label, String report, Map<String, String> filters) {
+    REPORT_SHAPES.put(label, Map.entry(report, filters));
+  }
+
+  private final MongoTemplate mongo;
+  private final ReportService reports;
+
+  @Value("${app.indexes.provision-on-startup:true}")
+  private boolean provisionOnStartup;
+
+  @Value("${app.indexes.explain-on-startup:false}")
+  private boolean explainOnStartup;
+
+  public ReportIndexService(MongoTemplate mongo, ReportService reports) {
+    this.mongo = mongo;
+    this.reports = reports;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onReady() {
+    if (!provisionOnStartup && !explainOnStartup) return;
+    // index builds on large collections can take a while; don't hold up startup
+    Thread t = new Thread(() -> {
+      try {
+        if (provisionOnStartup) provision();
+        if (explainOnStartup) {
+          for (Document r : check()) {
+            if (r.getBoolean("collscan", false)) {
+              log.warn("Query shape '{}' on {} falls back to COLLSCAN: {}", r.get("shape"), r.get("collection"), r.get("stages"));
+            }
+          }
+        }
+      } catch (RuntimeException e) {
+        log.warn("Report index provisioning stopped: {}", e.getMessage());
+      }
+    }, "report-indexes");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /**
+   * Creates every declared index. Existing indexes are a no-op. One that clashes with an
+   * index of the same keys but another name or options is logged and skipped.
+   *
+   * @return collection -> names of the indexes now in place
+   */
+  public Map<String, List<String>> provision() {
+    Map<String, List<String>> done = new LinkedHashMap<>();
+    IndexResolver resolver = IndexResolver.create(mongo.getConverter().getMappingContext());
+    for (Class<?> type : ENTITIES) {
+      String coll = mongo.getCollectionName(type);
+      for (IndexDefinition d : resolver.resolveIndexFor(type)) create(coll, d, done);
+    }
+    for (Map.Entry<String, List<Index>> e : INDEXES.entrySet()) {
+      for (Index i : e.getValue()) create(e.getKey(), i, done);
+    }
+    return done;
+  }
+
+  private void create(String coll, IndexDefinition d, Map<String, List<String>> done) {
+    try {
+      String name = mongo.indexOps(coll).createIndex(d);
+      done.computeIfAbsent(coll, k -> new ArrayList<>()).add(name);
+    } catch (RuntimeException e) {
+      log.warn("Could not create index {} on {}: {}", d.getIndexKeys().toJson(), coll, e.getMessage());
+    }
+  }
+
+  /**
+   * Explains every report shape over the last 30 days, plus the dashboard and search
+   * lookups. Each result lists the plan stages and flags {@code collscan} when any
+   * stage reads the whole collection.
+   */
+  public List<Document> check() {
+    LocalDate to = LocalDate.now(ZONE);
+    LocalDate from = to.minusDays(30);
+    Date lo = Date.from(from.atStartOfDay(ZONE).toInstant());
+    Date hi = Date.from(to.plusDays(1).atStartOfDay(ZONE).toInstant());
+
+    List<Document> out = new ArrayList<>();
+    for (Map.Entry<String, Map.Entry<String, Map<String, String>>> s : REPORT_SHAPES.entrySet()) {
+      String report = s.getValue().getKey();
+      try {
+        Document plan = reports.explain(report, from, to, s.getValue().getValue());
+        out.add(result(s.getKey(), plan.getString("collection"), plan.get("explain", Document.class)));
+      } catch (RuntimeException e) {
+        out.add(new Document("shape", s.getKey()).append("error", e.getMessage()));
+      }
+    }
+
+    Document range = new Document("$gte", lo).append("$lt", hi);
+    explainFind(out, "dashboard sales today", "sales", new Document("date", range), null);
+    explainFind(out, "dashboard purchases today", "purchases", new Document("date", range), null);
+    explainFind(out, "dashboard expenses today", "expenses", new Document("date", range), null);
+    explainFind(out, "sales by invoiceNo", "sales", new Document("invoiceNo", "?"), null);
+    explainFind(out, "invoices by invoiceNo", "invoices", new Document("invoiceNo", "?"), null);
+    explainFind(out, "invoices by date", "invoices", new Document("date", range), new Document("date", -1));
+    explainFind(out, "last Z event", "shift_events",
+        new Document("type", "Z").append("ts", new Document("$lte", hi)), new Document("ts", -1));
+    return out;
+  }
+
+  private void explainFind(List<Document> out, String shape, String coll, Document filter, Document sort) {
+    Document find = new Document("find", coll).append("filter", filter);
+    if (sort != null) find.append("sort", sort);
+    try {
+      Document plan = mongo.getDb().runCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+      out.add(result(shape, coll, plan));
+    } catch (RuntimeException e) {
+      out.add(new Document("shape", shape).append("collection", coll).append("error", e.getMessage()));
+    }
+  }
+
+  private static Document result(String shape, String coll, Document plan) {
+    Set<String> stages = new LinkedHashSet<>();
+    Set<String> indexes = new LinkedHashSet<>();
+    walk(plan, stages, indexes);
+    return new Document("shape", shape)
+        .append("collection", coll)
+        .append("stages", new ArrayList<>(stages))
+        .append("indexes", new ArrayList<>(indexes))
+        .append("collscan", stages.contains("COLLSCAN"));
+  }
+
+  /** Collects every plan {@code stage} and {@code indexName}, wherever the server nested them. */
+  private static void walk(Object node, Set<String> stages, Set<String> indexes) {
+    if (node instanceof Document) {
+      Document d = (Document) node;
+      if (d.get("stage") instanceof String) stages.add(d.getString("stage"));
+      if (d.get("indexName") instanceof String) indexes.add(d.getString("indexName"));
+      for (Object v : d.values()) walk(v, stages, indexes);
+    } else if (node instanceof List) {
+      for (Object v : (List<?>) node) walk(v, stages, indexes);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package com.pos.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+import com.pos.util.ReportTableWriter;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs heavy report exports off the request thread. A job is queued on a small bounded
+ * executor (and capped per user), streams its rows into GridFS, and is kept for a TTL:
+ * the status row in {@code report_jobs} expires through a TTL index, the result file is
+ * removed by a periodic sweep. Status and results live in MongoDB, so a download works
+ * from any instance.
+ */
+@Service
+public class ReportJobService {
+
+  private static final Logger log = LoggerFactory.getLogger(ReportJobService.class);
+
+  public static final String COLLECTION = "report_jobs";
+  private static final String BUCKET = "report_results";
+
+  public static final String QUEUED  = "QUEUED";
+  public static final String RUNNING = "RUNNING";
+  public static final String DONE    = "DONE";
+  public static final String FAILED  = "FAILED";
+
+  private static final String F_USER    = "user";
+  private static final String F_STATUS  = "status";
+  private static final String F_FILE    = "fileId";
+  private static final String F_EXPIRES = "expiresAt";
+
+  private final MongoTemplate mongo;
+  private final ReportService reports;
+  private final ThreadPoolExecutor executor;
+  private final ThreadPoolTaskScheduler sweeper;
+  private final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+
+  @Value("${app.report-jobs.per-user:2}")
+  private int perUser;
+
+  @Value("${app.report-jobs.ttl-hours:24}")
+  private long ttlHours;
+
+  public ReportJobService(MongoTemplate mongo, ReportService reports,
+                          @Value("${app.report-jobs.threads:2}") int threads,
+                          @Value("${app.report-jobs.queue-capacity:20}") int queueCapacity) {
+    this.mongo = mongo;
+    this.reports = reports;
+
+    CustomizableThreadFactory tf = new CustomizableThreadFactory("report-job-");
+    tf.setDaemon(true);
+    // AbortPolicy: a full queue is the caller's "try later", never an unbounded backlog
+    this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), tf, new ThreadPoolExecutor.AbortPolicy());
+
+    this.sweeper = new ThreadPoolTaskScheduler();
+    sweeper.setPoolSize(1);
+    sweeper.setThreadNamePrefix("report-job-sweep-");
+    sweeper.setDaemon(true);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    try {
+      mongo.indexOps(COLLECTION).createIndex(new Index().on(F_EXPIRES, Sort.Direction.ASC).expire(0)
+          .named("ttl_report_jobs_expires"));
+      mongo.indexOps(COLLECTION).createIndex(new Index().on(F_USER, Sort.Direction.ASC)
+          .on("createdAt", Sort.Direction.DESC).named("idx_report_jobs_user_created"));
+      // jobs queued or running when the process stopped will never finish
+      mongo.updateMulti(Query.query(Criteria.where(F_STATUS).in(QUEUED, RUNNING)),
+          new Update().set(F_STATUS, FAILED).set("error", "Interrupted by a restart"), COLLECTION);
+    } catch (RuntimeException e) {
+      log.warn("Could not prepare {}: {}", COLLECTION, e.getMessage());
+    }
+    sweeper.initialize();
+    sweeper.scheduleWithFixedDelay(this::sweep, Duration.ofMinutes(15));
+  }
+
+  @PreDestroy
+  public void stop() {
+    executor.shutdownNow();
+    sweeper.shutdown();
+  }
+
+  /**
+   * Queues an export of {@code report}; arguments are those of {@link ReportService#export}.
+   * Bad report names or dates fail here, as a 400, rather than inside the job.
+   *
+   * @throws RejectedExecutionException when the user already has {@code perUser} jobs
+   *         pending or the shared queue is full
+   */
+  public Document submit(String user, String report, LocalDate from, LocalDate to, boolean xlsx,
+                         boolean excludeDiscount, Map<String, String> filters) {
+    reports.checkExport(report, from, to, filters);
+    String owner = (user == null || user.isBlank()) ? "anonymous" : user.trim();
+
+    AtomicInteger mine = active.computeIfAbsent(owner, k -> new AtomicInteger());
+    if (mine.incrementAndGet() > perUser) {
+      mine.decrementAndGet();
+      throw new RejectedExecutionException("You already have " + perUser + " report jobs running; try again when one finishes");
+    }
+
+    Date now = new Date();
+    Document job = new Document("_id", UUID.randomUUID().toString())
+        .append(F_USER, owner)
+        .append("report", report)
+        .append("from", from == null ? null : from.toString())
+        .append("to", to.toString())
+        .append("format", xlsx ? "xlsx" : "csv")
+        .append("filters", storable(filters))
+        .append(F_STATUS, QUEUED)
+        .append("createdAt", now)
+        .append(F_EXPIRES, new Date(now.getTime() + TimeUnit.HOURS.toMillis(ttlHours)));
+    mongo.insert(job, COLLECTION);
+
+    try {
+      executor.execute(() -> {
+        try {
+          run(job, report, from, to, xlsx, excludeDiscount, filters);
+        } finally {
+          mine.decrementAndGet();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      mine.decrementAndGet();
+      mongo.remove(Query.query(Criteria.where("_id").is(job.get("_id"))), COLLECTION);
+      throw new RejectedExecutionException("The report queue is full; try again shortly");
+    }
+    return job;
+  }
+
+  private void run(Document job, String report, LocalDate from, LocalDate to, boolean xlsx,
+                   boolean excludeDiscount, Map<String, String> filters) {
+    Query byId = Query.query(Criteria.where("_id").is(job.get("_id")));
+    mongo.updateFirst(byId, new Update().set(F_STATUS, RUNNING).set("startedAt", new Date()), COLLECTION);
+
+    String filename = report + "-" + (from != null ? from + "_" : "") + to + (xlsx ? ".xlsx" : ".csv");
+    GridFSUploadOptions opts = new GridFSUploadOptions().metadata(new Document("jobId", job.get("_id"))
+        .append("contentType", xlsx ? "xlsx" : "csv")
+        .append(F_EXPIRES, job.get(F_EXPIRES)));
+    ObjectId fileId = null;
+    try {
+      long rows;
+      GridFSUploadStream up = bucket().openUploadStream(filename, opts);
+      fileId = up.getObjectId();
+      // closing the writer finishes the workbook/CSV and the upload
+      try (ReportTableWriter w = xlsx ? ReportTableWriter.xlsx(up, report) : ReportTableWriter.csv(up)) {
+        rows = reports.export(report, from, to, filters, excludeDiscount, w::write);
+      }
+      mongo.updateFirst(byId, new Update()
+          .set(F_STATUS, DONE)
+          .set("rows", rows)
+          .set(F_FILE, fileId)
+          .set("filename", filename)
+          .set("finishedAt", new Date()), COLLECTION);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Report job {} ({}) failed: {}", job.get("_id"), report, e.getMessage());
+      if (fileId != null) deleteQuietly(fileId);
+      mongo.updateFirst(byId, new Update()
+          .set(F_STATUS, FAILED)
+          .set("error", String.valueOf(e.getMessage()))
+          .set("finishedAt", new Date()), COLLECTION);
+    }
+  }
+
+  /** Job status; {@code user} must own it, so ids can't be probed across users. */
+  public Document get(String id, String user) {
+    Document job = mongo.findById(id, Document.class, COLLECTION);
+    String owner = (user == null || user.isBlank()) ? "anonymous" : user.trim();
+    if (job == null || !owner.equals(job.getString(F_USER))) {
+      throw new IllegalArgumentException("Report job not found: " + id);
+    }
+    return job;
+  }
+
+  public List<Document> list(String user) {
+    String owner = (user == null || user.isBlank()) ? "anonymous" : user.trim();
+    Query q = Query.query(Criteria.where(F_USER).is(owner))
+        .with(Sort.by(Sort.Direction.DESC, "createdAt")).limit(50);
+    return mongo.find(q, Document.class, COLLECTION);
+  }
+
+  /** Copies a finished job's file to {@code out}. */
+  public void download(Document job, OutputStream out) {
+    try (InputStream in = bucket().openDownloadStream(job.getObjectId(F_FILE))) {
+      in.transferTo(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Deletes result files past their TTL (the status rows expire on their own). */
+  void sweep() {
+    try {
+      GridFSBucket b = bucket();
+      for (var f : b.find(Filters.lt("metadata." + F_EXPIRES, new Date()))) {
+        deleteQuietly(f.getObjectId());
+      }
+    } catch (RuntimeException e) {
+      log.warn("Report result sweep failed: {}", e.getMessage());
+    }
+  }
+
+  private void deleteQuietly(ObjectId fileId) {
+    try {
+      bucket().delete(fileId);
+    } catch (RuntimeException e) {
+      log.debug("Could not delete report result {}: {}", fileId, e.getMessage());
+    }
+  }
+
+  /** Request params as a sub-document; keys Mongo can't store ($-prefixed, dotted) are dropped. */
+  private static Document storable(Map<String, String> filters) {
+    Document d = new Document();
+    filters.forEach((k, v) -> {
+      if (!k.startsWith("$") && k.indexOf('.') < 0) d.append(k, v);
+    });
+    return d;
+  }
+
+  private GridFSBucket bucket() {
+    return GridFSBuckets.create(mongo.getDb(), BUCKET);
+  }
+}
@@ -3,16 +3,26 @@ package com.pos.service;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.count;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.facet;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.fields;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.limit;
@@ -22,12 +32,21 @@ import static org.springframework.data.mongodb.core.aggregation.Aggregation.proj
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.skip;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.unwind;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
 import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
 import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
 import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.FacetOperation;
+import org.springframework.data.mongodb.core.aggregation.GroupOperation;
+import org.springframework.data.mongodb.core.aggregation.UnionWithOperation;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import com.pos.config.ReportCacheConfig;
+import com.pos.config.ReportingMongoConfig;
 import com.pos.dto.ReportResponse;
 
 /** Report aggregation service (MongoDB). */
@@ -35,7 +54,21 @@ import com.pos.dto.ReportResponse;
 public class ReportService {
 
   private final MongoTemplate mongo;
-  public ReportService(MongoTemplate mongo) { this.mongo = mongo; }
+  private final VatPeriodService vatPeriods;
+  private final PartyBalanceService partyBalances;
+  private final ReportBudgets budgets;
+
+  /** Serve sales summary from daily_rollups (enable after POST /api/rollups/rebuild). */
+  @Value("${app.rollups.read-enabled:false}")
+  private boolean rollupReads;
+
+  public ReportService(@Qualifier(ReportingMongoConfig.REPORTING) MongoTemplate mongo, VatPeriodService vatPeriods,
+                       PartyBalanceService partyBalances, ReportBudgets budgets) {
+    this.mongo = mongo;
+    this.vatPeriods = vatPeriods;
+    this.partyBalances = partyBalances;
+    this.budgets = budgets;
+  }
 
   /* ================= Collections ================= */
   private static final String C_INVOICES  = "invoices";
@@ -103,11 +136,224 @@ public class ReportService {
     return (m == null) ? Map.of() : new HashMap<>(m);
   }
 
+  /** A truncated response is never cached: the next call gets another try at the full result. */
+  private static final String TRUNCATED_RESULT = "#result != null && #result.truncated";
+
   private static <T> ReportResponse<T> makeResp(List<T> items, Map<String,?> totals, long count){
+    return makeResp(items, totals, count, false);
+  }
+
+  private static ReportResponse<Document> makeResp(Ran ran, Map<String,?> totals, long count){
+    return makeResp(ran.rows(), totals, count, ran.truncated());
+  }
+
+  /** {@code truncated}: a query ran out of its time budget, so the rows or totals are partial. */
+  private static <T> ReportResponse<T> makeResp(List<T> items, Map<String,?> totals, long count, boolean truncated){
     ReportResponse<T> r = new ReportResponse<>();
     r.setItems(items);
     r.setTotals(toObjMap(totals));
     r.setCount(count);
+    r.setTruncated(truncated);
+    return r;
+  }
+
+  /* ================= $facet paging ================= */
+  private static final String FACET_ITEMS  = "items";
+  private static final String FACET_TOTALS = "totals";
+  private static final String FACET_COUNT  = "count";
+  /** Set on a {@link #facetPage} result that ran out of its time budget. */
+  private static final String FACET_TRUNCATED = "truncated";
+
+  /**
+   * Runs {@code prefix} once and branches into the page, the totals (optional) and the
+   * row count with {@code $facet}, so a paginated report costs one round trip instead
+   * of three. {@code count} must end in a stage that outputs {@code n}.
+   *
+   * <p>An unbounded page ({@code size == Integer.MAX_VALUE}, the unpaged overloads) would
+   * put every row into the single $facet output document, which the server caps at
+   * 16 MB. There the $facet carries only the totals and count, and the rows are read
+   * off their own cursor into {@link #FACET_ITEMS}.
+   *
+   * <p>All of its queries share one time budget for the report. If the budget runs
+   * out, the totals are retried on their own (no sort, page or count) in what is left
+   * of it and the result carries {@link #FACET_TRUNCATED}; if even they don't fit, it is
+   * empty and truncated. Rows of an unbounded page that run out of time keep what was
+   * read, marked truncated.
+   */
+  private Document facetPage(Rows q, int page, int size,
+                             List<AggregationOperation> totals, List<AggregationOperation> count) {
+    boolean unbounded = (size == Integer.MAX_VALUE);
+    long offset = (long) page * size;
+    long deadline = budgets.deadline(q.report());
+
+    FacetOperation f = facet(count.toArray(new AggregationOperation[0])).as(FACET_COUNT);
+    if (totals != null) f = f.and(totals.toArray(new AggregationOperation[0])).as(FACET_TOTALS);
+    if (!unbounded) f = f.and(q.items(skip(offset), limit(size)).toArray(new AggregationOperation[0])).as(FACET_ITEMS);
+
+    List<AggregationOperation> ops = new ArrayList<>(q.prefix());
+    ops.add(f);
+    Document r;
+    try {
+      r = mongo.aggregate(newAggregation(ops).withOptions(budgets.options(q.report(), deadline)), q.coll(), Document.class)
+        .getUniqueMappedResult();
+    } catch (RuntimeException e) {
+      if (!budgets.exceeded(q.report(), e)) throw e;
+      return totalsOnly(q, totals, deadline);
+    }
+    if (r == null) r = new Document();
+
+    if (unbounded) {
+      List<Document> items = new ArrayList<>();
+      if (!readAll(q, offset, items, deadline)) r.append(FACET_TRUNCATED, true);
+      r.append(FACET_ITEMS, items);
+    }
+    return r;
+  }
+
+  /** The totals alone, after the full $facet ran out of time; always marked truncated. */
+  private Document totalsOnly(Rows q, List<AggregationOperation> totals, long deadline) {
+    Document partial = new Document(FACET_TRUNCATED, true);
+    if (totals == null) return partial;
+    try {
+      List<Document> t = mongo.aggregate(newAggregation(concat(q.prefix(), totals))
+        .withOptions(budgets.options(q.report(), deadline)), q.coll(), Document.class).getMappedResults();
+      return partial.append(FACET_TOTALS, t);
+    } catch (RuntimeException e) {
+      if (!budgets.exceeded(q.report(), e)) throw e;
+      return partial;
+    }
+  }
+
+  /** Every row of {@code q} off a cursor into {@code out}; false when the budget ran out first. */
+  private boolean readAll(Rows q, long offset, List<Document> out, long deadline) {
+    List<AggregationOperation> ops = (offset > 0) ? q.all(skip(offset)) : q.all();
+    try (Stream<Document> rows = mongo.aggregateStream(newAggregation(ops).withOptions(budgets.options(q.report(), deadline)),
+        q.coll(), Document.class)) {
+      rows.forEachOrdered(out::add);
+      return true;
+    } catch (RuntimeException e) {
+      if (!budgets.exceeded(q.report(), e)) throw e;
+      return false;
+    }
+  }
+
+  private static boolean truncated(Document r) {
+    return r.getBoolean(FACET_TRUNCATED, false);
+  }
+
+  private static List<Document> facetItems(Document r) {
+    return r.getList(FACET_ITEMS, Document.class, List.of());
+  }
+
+  /** First row of a facet, or null when it is empty (no matching documents). */
+  private static Document facetFirst(Document r, String facet) {
+    List<Document> rows = r.getList(facet, Document.class, List.of());
+    return rows.isEmpty() ? null : rows.get(0);
+  }
+
+  private static long facetCount(Document r) {
+    Document cd = facetFirst(r, FACET_COUNT);
+    return (cd == null) ? 0 : numL(cd, "n");
+  }
+
+  /* ================= report pipelines ================= */
+
+  /**
+   * A report's unpaged pipeline. {@code report} names its time budget, {@code prefix} is
+   * what the $facet branches share (totals and count run on it), {@code body} turns it
+   * into report rows and {@code order} sorts them. Paged JSON, cursor pages and exports
+   * all run the same stages.
+   */
+  private record Rows(String report, String coll, List<AggregationOperation> prefix,
+                      List<AggregationOperation> body, AggregationOperation order) {
+
+    /** The $facet items branch: body, sort, then paging. */
+    List<AggregationOperation> items(AggregationOperation... paging) {
+      return concat(body, List.of(order), List.of(paging));
+    }
+
+    /** The whole pipeline, optionally followed by {@code tail} (e.g. a cursor-page limit). */
+    List<AggregationOperation> all(AggregationOperation... tail) {
+      return concat(prefix, items(tail));
+    }
+  }
+
+  private static Criteria andSeek(Criteria c, Criteria seek) {
+    return (seek == null) ? c : new Criteria().andOperator(c, seek);
+  }
+
+  /** A $group followed by the post-group seek, if any. */
+  private static List<AggregationOperation> thenSeek(AggregationOperation group, Criteria seek) {
+    return (seek == null) ? List.of(group) : List.of(group, match(seek));
+  }
+
+  /* ================= keyset (cursor) paging ================= */
+
+  /** Rows of a {@link #run}, and whether it ran out of its time budget. */
+  private record Ran(List<Document> rows, boolean truncated) {}
+
+  /** A cursor page (or unpaged report) within its budget; out of time, it is empty and truncated. */
+  private Ran run(Rows q, List<AggregationOperation> ops) {
+    try {
+      return new Ran(mongo.aggregate(newAggregation(ops).withOptions(budgets.options(q.report())), q.coll(), Document.class)
+        .getMappedResults(), false);
+    } catch (RuntimeException e) {
+      if (!budgets.exceeded(q.report(), e)) throw e;
+      return new Ran(List.of(), true);
+    }
+  }
+
+  @SafeVarargs
+  private static List<AggregationOperation> concat(List<AggregationOperation>... parts) {
+    List<AggregationOperation> out = new ArrayList<>();
+    for (List<AggregationOperation> p : parts) out.addAll(p);
+    return out;
+  }
+
+  /** Rows after {@code last} on an ascending group key; the key is unique per row, so no tie-break. */
+  static Criteria after(String field, Object last) {
+    return (last == null) ? Criteria.where(field).ne(null) : Criteria.where(field).gt(last);
+  }
+
+  /** Rows after ({@code last}, {@code lastId}) in {@code field DESC, _id DESC} order. */
+  static Criteria beforeDesc(String field, Object last, Object lastId) {
+    return new Criteria().orOperator(
+      Criteria.where(field).lt(last),
+      Criteria.where(field).is(last).and("_id").lt(lastId));
+  }
+
+  /**
+   * Rows after ({@code last}, {@code lastId}) in {@code field dir, _id ASC} order. Nulls
+   * sort lowest and never match a range operator, so they get their own branch.
+   */
+  static Criteria seekAfter(String field, Sort.Direction dir, Object last, Object lastId) {
+    Criteria tie = Criteria.where(field).is(last).and("_id").gt(lastId);
+    if (last == null) {
+      return dir.isAscending() ? new Criteria().orOperator(tie, Criteria.where(field).ne(null)) : tie;
+    }
+    return dir.isAscending()
+      ? new Criteria().orOperator(Criteria.where(field).gt(last), tie)
+      : new Criteria().orOperator(Criteria.where(field).lt(last), tie, Criteria.where(field).is(null));
+  }
+
+  private static ReportResponse<Document> withNextCursor(ReportResponse<Document> r, int size,
+                                                         Function<Document, Object> sortKey) {
+    return withNextCursor(r, size, sortKey, true);
+  }
+
+  /**
+   * A full page gets a {@code nextCursor} pointing after its last row. Whole-range
+   * totals ride along in the token; page-level totals ({@code carryTotals=false}) are
+   * recomputed per page as in offset mode.
+   */
+  private static ReportResponse<Document> withNextCursor(ReportResponse<Document> r, int size,
+                                                         Function<Document, Object> sortKey, boolean carryTotals) {
+    List<Document> items = r.getItems();
+    if (size > 0 && items != null && items.size() == size) {
+      Document last = items.get(items.size() - 1);
+      r.setNextCursor(ReportCursor.encode(sortKey.apply(last), last.get("_id"), r.getCount(),
+        carryTotals ? r.getTotals() : null));
+    }
     return r;
   }
 
@@ -129,196 +375,377 @@ public class ReportService {
   /* ================= 1) Sales Summary ================= */
   public ReportResponse<Document> salesSummary(LocalDate from, LocalDate to, String shift,
                                                String cashier, String groupBy, int page, int size) {
+    return salesSummary(from, to, shift, cashier, groupBy, page, size, (ReportCursor) null);
+  }
+
+  private ReportResponse<Document> salesSummary(LocalDate from, LocalDate to, String shift, String cashier,
+                                                String groupBy, int page, int size, ReportCursor cur) {
+    String key = salesSummaryKey(groupBy);
+
+    if (cur != null) {
+      // groups are keyed by a raw field, so the seek runs before $group (index-backed)
+      Rows q = salesSummaryRows(from, to, shift, cashier, key, after(key, cur.key));
+      return withNextCursor(makeResp(run(q, q.all(limit(size))), cur.totals, cur.count), size, d -> d.get(key));
+    }
+
+    Rows q = salesSummaryRows(from, to, shift, cashier, key, null);
+    Document r = facetPage(q, page, size,
+      List.of(billTotals(group(), billsPrefix())),
+      List.of(group(key), count().as("n")));
+
+    return withNextCursor(makeResp(facetItems(r), facetFirst(r, FACET_TOTALS), facetCount(r), truncated(r)), size, d -> d.get(key));
+  }
+
+  private static String salesSummaryKey(String groupBy) {
+    if ("SHIFT".equalsIgnoreCase(groupBy))   return F_SHIFT;
+    if ("CASHIER".equalsIgnoreCase(groupBy)) return F_CASHIER;
+    return F_DATE;
+  }
+
+  /** Rollup rows carry the invoice sums under "invoices.*" and are keyed by the same fields. */
+  private String billsPrefix() {
+    return rollupReads ? C_INVOICES + "." : "";
+  }
+
+  private Rows salesSummaryRows(LocalDate from, LocalDate to, String shift, String cashier, String key, Criteria seek) {
     Criteria c = dateRange(from, to);
     if (shift != null && !shift.isBlank())     c = c.and(F_SHIFT).is(shift);
     if (cashier != null && !cashier.isBlank()) c = c.and(F_CASHIER).is(cashier);
 
-    String key = F_DATE;
-    if ("SHIFT".equalsIgnoreCase(groupBy))   key = F_SHIFT;
-    if ("CASHIER".equalsIgnoreCase(groupBy)) key = F_CASHIER;
+    String src = rollupReads ? DailyRollupService.COLLECTION : C_INVOICES;
+    String p   = billsPrefix();
+    if (rollupReads) c = c.and(p + K_BILLS).gt(0);   // skip rows that only hold sales/purchase sums
 
-    Aggregation agg = newAggregation(
-      match(c),
-      project(F_DATE, F_SHIFT, F_CASHIER, F_GROSS, F_DISCOUNT, F_VAT, F_NET, F_PAYTYPE, F_RETAMT),
-      group(key)
-        .first(key).as(key)
-        .count().as(K_BILLS)
-        .sum(F_GROSS).as(F_GROSS)
-        .sum(F_DISCOUNT).as(F_DISCOUNT)
-        .sum(F_VAT).as(F_VAT)
-        .sum(F_NET).as(F_NET)
-        .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CASH)).thenValueOf(F_NET).otherwise(0)).as("cash")
-        .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CARD)).thenValueOf(F_NET).otherwise(0)).as("card")
-        .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CREDIT)).thenValueOf(F_NET).otherwise(0)).as("credit")
-        .sum(F_RETAMT).as("returns"),
-      sort(Sort.Direction.ASC, key),
-      skip((long) page * size),
-      limit(size)
-    );
-    List<Document> items = mongo.aggregate(agg, C_INVOICES, Document.class).getMappedResults();
-
-    Aggregation totalsAgg = newAggregation(
-      match(c),
-      group()
-        .count().as(K_BILLS)
-        .sum(F_GROSS).as(F_GROSS)
-        .sum(F_DISCOUNT).as(F_DISCOUNT)
-        .sum(F_VAT).as(F_VAT)
-        .sum(F_NET).as(F_NET)
-        .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CASH)).thenValueOf(F_NET).otherwise(0)).as("cash")
-        .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CARD)).thenValueOf(F_NET).otherwise(0)).as("card")
-        .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CREDIT)).thenValueOf(F_NET).otherwise(0)).as("credit")
-        .sum(F_RETAMT).as("returns")
-    );
-    Document t = mongo.aggregate(totalsAgg, C_INVOICES, Document.class).getUniqueMappedResult();
-
-    Aggregation countAgg = newAggregation(match(c), group(key), count().as("n"));
-    Document cd = mongo.aggregate(countAgg, C_INVOICES, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? 0 : numL(cd, "n");
+    List<AggregationOperation> prefix = rollupReads
+      ? List.of(match(andSeek(c, seek)))
+      : List.of(match(andSeek(c, seek)), project(F_DATE, F_SHIFT, F_CASHIER, F_GROSS, F_DISCOUNT, F_VAT, F_NET, F_PAYTYPE, F_RETAMT));
+    return new Rows("sales-summary", src, prefix,
+      List.of(billTotals(group(key).first(key).as(key), p)),
+      sort(Sort.Direction.ASC, key));
+  }
 
-    return makeResp(items, t, count);
+  /** Sales-summary sums; {@code p} prefixes the source fields ("" for raw bills, "invoices." for rollups). */
+  private static GroupOperation billTotals(GroupOperation g, String p) {
+    g = p.isEmpty() ? g.count().as(K_BILLS) : g.sum(p + K_BILLS).as(K_BILLS);
+    return g
+      .sum(p + F_GROSS).as(F_GROSS)
+      .sum(p + F_DISCOUNT).as(F_DISCOUNT)
+      .sum(p + F_VAT).as(F_VAT)
+      .sum(p + F_NET).as(F_NET)
+      .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CASH)).thenValueOf(p + F_NET).otherwise(0)).as("cash")
+      .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CARD)).thenValueOf(p + F_NET).otherwise(0)).as("card")
+      .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CREDIT)).thenValueOf(p + F_NET).otherwise(0)).as("credit")
+      .sum(p + F_RETAMT).as("returns");
   }
 
   /* ---- overload with excludeDiscount (used by controller) ---- */
+  @Cacheable(cacheNames = ReportCacheConfig.REPORTS_INVOICES, keyGenerator = ReportCacheConfig.RANGE_KEY,
+             unless = TRUNCATED_RESULT)
   public ReportResponse<Document> salesSummary(
-      LocalDate from, LocalDate to, String shift, String cashier, String groupBy, int page, int size, boolean excludeDiscount
+      LocalDate from, LocalDate to, String shift, String cashier, String groupBy, int page, int size, boolean excludeDiscount,
+      String cursor
   ) {
-    ReportResponse<Document> out = this.salesSummary(from, to, shift, cashier, groupBy, page, size);
+    ReportResponse<Document> out = this.salesSummary(from, to, shift, cashier, groupBy, page, size, ReportCursor.decode(cursor));
     if (excludeDiscount) stripDiscount(out);
     return out;
   }
 
   /* ================= 2) Product Sales ================= */
+  private static final String PS_PRODUCT  = "PRODUCT";
+  private static final String PS_CATEGORY = "CATEGORY";
+  private static final String PS_DAY      = "DAY";
+  private static final String PS_CASHIER  = "CASHIER";
+
   public ReportResponse<Document> productSales(LocalDate from, LocalDate to, int page, int size) {
+    return productSales(from, to, null, null, null, null, PS_PRODUCT, null, null, page, size, null);
+  }
+
+  private ReportResponse<Document> productSales(LocalDate from, LocalDate to, String shift, String cashier,
+                                                String category, String search, String groupBy, String sortBy,
+                                                String sortDir, int page, int size, ReportCursor cur) {
+    String gb = productGroupBy(groupBy);
+    String key = productSortField(sortBy);
+    Sort.Direction dir = direction(sortDir, Sort.Direction.DESC);
+
+    if (cur != null) {
+      Rows q = productSalesRows(from, to, shift, cashier, category, search, gb, key, dir, seekAfter(key, dir, cur.key, cur.id));
+      return withNextCursor(makeResp(run(q, q.all(limit(size))), cur.totals, cur.count), size, d -> d.get(key));
+    }
+
+    Rows q = productSalesRows(from, to, shift, cashier, category, search, gb, key, dir, null);
+    Document r = facetPage(q, page, size,
+      List.of(group().sum("$items.qty").as("qty").sum("$items.amount").as(K_AMOUNT).sum("$items.vat").as(F_VAT)),
+      List.of(productGroup(gb), count().as("n")));
+
+    return withNextCursor(makeResp(facetItems(r), facetFirst(r, FACET_TOTALS), facetCount(r), truncated(r)), size, d -> d.get(key));
+  }
+
+  /**
+   * Bill filters (shift, cashier) go in the first $match next to the date range. Item filters
+   * (category, search) are applied twice: before $unwind they drop bills with no matching
+   * line, and after it they drop the other lines of the bills that remain.
+   */
+  private static Rows productSalesRows(LocalDate from, LocalDate to, String shift, String cashier, String category,
+                                       String search, String groupBy, String sortField, Sort.Direction dir,
+                                       Criteria seek) {
     Criteria c = dateRange(from, to);
+    if (shift != null && !shift.isBlank())     c = c.and(F_SHIFT).is(shift);
+    if (cashier != null && !cashier.isBlank()) c = c.and(F_CASHIER).is(cashier);
+
+    List<Criteria> lines = new ArrayList<>();
+    if (category != null && !category.isBlank()) lines.add(Criteria.where("items.category").is(category));
+    if (search != null && !search.isBlank()) {
+      String rx = Pattern.quote(search.trim());
+      lines.add(new Criteria().orOperator(
+        Criteria.where("items.productName").regex(rx, "i"),
+        Criteria.where("items.productCode").regex(rx, "i")));
+    }
+
+    List<AggregationOperation> prefix = new ArrayList<>();
+    if (lines.isEmpty()) {
+      prefix.add(match(c));
+      prefix.add(unwind(F_ITEMS));
+    } else {
+      Criteria line = new Criteria().andOperator(lines);
+      prefix.add(match(new Criteria().andOperator(c, line)));
+      prefix.add(unwind(F_ITEMS));
+      prefix.add(match(line));
+    }
+
+    return new Rows("product-sales", C_INVOICES, prefix,
+      thenSeek(productGroup(groupBy), seek),
+      sort(Sort.by(dir, sortField).and(Sort.by(Sort.Direction.ASC, "_id"))));
+  }
+
+  private static String productGroupBy(String groupBy) {
+    if (groupBy == null || groupBy.isBlank()) return PS_PRODUCT;
+    String g = groupBy.trim().toUpperCase();
+    if (!List.of(PS_PRODUCT, PS_CATEGORY, PS_DAY, PS_CASHIER).contains(g)) {
+      throw new IllegalArgumentException("groupBy must be PRODUCT, CATEGORY, DAY or CASHIER");
+    }
+    return g;
+  }
 
-    Aggregation a = newAggregation(
-      match(c),
-      unwind(F_ITEMS),
-      group(fields()
-        .and("productCode", "$items.productCode")
-        .and("productName", "$items.productName")
-        .and("unit",        "$items.unit"))
-        .sum("$items.qty").as("qty")
-        .sum("$items.amount").as(K_AMOUNT)
-        .sum("$items.vat").as(F_VAT),
-      sort(Sort.by(Sort.Direction.DESC, K_AMOUNT)),
-      skip((long) page * size),
-      limit(size)
-    );
-    List<Document> items = mongo.aggregate(a, C_INVOICES, Document.class).getMappedResults();
-
-    Aggregation totalsAgg = newAggregation(
-      match(c), unwind(F_ITEMS),
-      group().sum("$items.qty").as("qty").sum("$items.amount").as(K_AMOUNT).sum("$items.vat").as(F_VAT)
-    );
-    Document t = mongo.aggregate(totalsAgg, C_INVOICES, Document.class).getUniqueMappedResult();
-
-    Aggregation countAgg = newAggregation(match(c), unwind(F_ITEMS),
-      group(fields().and("productCode", "$items.productCode")).count().as("n"));
-    Document cd = mongo.aggregate(countAgg, C_INVOICES, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? items.size() : numL(cd, "n");
-
-    return makeResp(items, t, count);
+  /**
+   * One row per {@code groupBy} key with the label columns the UI reads (productCode/
+   * productName/unit, category, date or cashier) and the qty/amount/vat sums. Raw stage:
+   * the _id expressions differ per grouping and DAY buckets by the business-zone day.
+   */
+  private static AggregationOperation productGroup(String groupBy) {
+    Document g;
+    switch (groupBy) {
+      case PS_CATEGORY -> g = new Document("_id", "$items.category")
+          .append("category", new Document("$first", "$items.category"));
+      case PS_DAY -> {
+        Document day = new Document("$dateToString", new Document("format", "%Y-%m-%d")
+          .append("date", "$" + F_DATE).append("timezone", ZONE.getId()));
+        g = new Document("_id", day).append("date", new Document("$first", day));
+      }
+      case PS_CASHIER -> g = new Document("_id", "$" + F_CASHIER)
+          .append(F_CASHIER, new Document("$first", "$" + F_CASHIER));
+      default -> g = new Document("_id", new Document("productCode", "$items.productCode")
+            .append("productName", "$items.productName")
+            .append("unit", "$items.unit"))
+          .append("productCode", new Document("$first", "$items.productCode"))
+          .append("productName", new Document("$first", "$items.productName"))
+          .append("unit", new Document("$first", "$items.unit"));
+    }
+    g.append("qty", new Document("$sum", "$items.qty"))
+     .append(K_AMOUNT, new Document("$sum", "$items.amount"))
+     .append(F_VAT, new Document("$sum", "$items.vat"));
+    return ctx -> new Document("$group", g);
+  }
+
+  /** UI column -> product-sales output field; amount when unset. */
+  private static String productSortField(String sortBy) {
+    if (sortBy == null || sortBy.isBlank()) return K_AMOUNT;
+    if (List.of(K_AMOUNT, "grossTotal", "netTotal").contains(sortBy)) return K_AMOUNT;
+    if (List.of("qty", F_VAT, "productCode", "productName", "unit", "category", F_DATE, F_CASHIER).contains(sortBy)) return sortBy;
+    throw new IllegalArgumentException("Unsupported sortBy '" + sortBy + "'");
+  }
+
+  private static Sort.Direction direction(String sortDir, Sort.Direction dflt) {
+    return (sortDir == null || sortDir.isBlank()) ? dflt : Sort.Direction.fromString(sortDir.trim());
   }
 
   /* ---- overload that matches controller signature (filters + exclude) ---- */
+  @Cacheable(cacheNames = ReportCacheConfig.REPORTS_INVOICES, keyGenerator = ReportCacheConfig.RANGE_KEY,
+             unless = TRUNCATED_RESULT)
   public ReportResponse<Document> productSales(
       LocalDate from,
       LocalDate to,
-      String shift,          // currently unused by agg
-      String cashier,        // currently unused
-      String category,       // currently unused
-      String search,         // currently unused
-      String groupBy,        // currently unused (existing agg groups by product)
-      String sortBy,         // currently unused
-      String sortDir,        // currently unused
+      String shift,
+      String cashier,
+      String category,
+      String search,
+      String groupBy,        // PRODUCT | CATEGORY | DAY | CASHIER
+      String sortBy,         // UI column; amount when unset
+      String sortDir,
       int page,
       int size,
-      boolean excludeDiscount
+      boolean excludeDiscount,
+      String cursor
   ) {
-    ReportResponse<Document> out = this.productSales(from, to, page, size);
+    ReportResponse<Document> out = this.productSales(from, to, shift, cashier, category, search, groupBy, sortBy, sortDir,
+      page, size, ReportCursor.decode(cursor));
     if (excludeDiscount) stripDiscount(out); // safe even if discount is absent
     return out;
   }
 
   /* ================= 3) Day / Z ================= */
+  private static final String C_SHIFT_EVENTS = "shift_events";
+
   public ReportResponse<Document> dayZ(LocalDate from, LocalDate to) {
-    Criteria c = dateRange(from, to);
-    Aggregation a = newAggregation(
-      match(c),
-      group(F_DATE, F_SHIFT)
+    return dayZ(from, to, null, "DAY", null, "ASC", 0, Integer.MAX_VALUE);
+  }
+
+  private ReportResponse<Document> dayZ(LocalDate from, LocalDate to, String shift, String type,
+                                        String sortBy, String sortDir, int page, int size) {
+    Rows q = dayZRows(dayZWindow(from, to, type), shift, dayZSortField(sortBy), direction(sortDir, Sort.Direction.ASC));
+    Document r = facetPage(q, page, size,
+      List.of(dayZSums(group())),
+      concat(q.body(), List.of(count().as("n"))));
+
+    Document totals = facetFirst(r, FACET_TOTALS);
+    if (totals != null) totals.remove("_id");
+    return makeResp(facetItems(r), totals, facetCount(r), truncated(r));
+  }
+
+  /** One row per bill timestamp and shift, with the columns of the Day/Z screen. */
+  private static Rows dayZRows(Criteria window, String shift, String sortField, Sort.Direction dir) {
+    Criteria c = window;
+    if (shift != null && !shift.isBlank()) c = c.and(F_SHIFT).is(shift);
+    return new Rows("dayz", C_INVOICES,
+      List.of(match(c)),
+      List.of(dayZSums(group(F_DATE, F_SHIFT)
         .first(F_DATE).as(F_DATE)
         .first(F_SHIFT).as(F_SHIFT)
-        .count().as(K_BILLS)
-        .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CASH)).thenValueOf(F_NET).otherwise(0)).as("cash")
-        .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CARD)).thenValueOf(F_NET).otherwise(0)).as("card")
-        .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CREDIT)).thenValueOf(F_NET).otherwise(0)).as("credit")
-        .sum(F_VAT).as(F_VAT)
-        .sum(F_NET).as("net"),
-      sort(Sort.Direction.ASC, F_DATE, F_SHIFT)
-    );
-    List<Document> items = mongo.aggregate(a, C_INVOICES, Document.class).getMappedResults();
+        .first("invoiceNo").as("invoiceNo")
+        .first(F_CASHIER).as(F_CASHIER))),
+      sort(Sort.by(dir, sortField).and(Sort.by(Sort.Direction.ASC, "_id"))));
+  }
 
-    long bills = 0;
-    double cash = 0, card = 0, credit = 0, vat = 0, net = 0;
-    for (Document d : items) {
-      bills  += numL(d, K_BILLS);
-      cash   += num(d, "cash");
-      card   += num(d, "card");
-      credit += num(d, "credit");
-      vat    += num(d, F_VAT);
-      net    += num(d, "net");
+  private static GroupOperation dayZSums(GroupOperation g) {
+    return g
+      .count().as(K_BILLS)
+      .sum(F_GROSS).as("gross")
+      .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CASH)).thenValueOf(F_NET).otherwise(0)).as("cash")
+      .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CARD)).thenValueOf(F_NET).otherwise(0)).as("card")
+      .sum(ConditionalOperators.when(ComparisonOperators.valueOf(F_PAYTYPE).equalToValue(PT_CREDIT)).thenValueOf(F_NET).otherwise(0)).as("credit")
+      .sum(F_VAT).as(F_VAT)
+      .sum(F_NET).as("net")
+      .sum(F_RETAMT).as("returns");
+  }
+
+  /** UI column -> Day/Z output field; bill time when unset. */
+  private static String dayZSortField(String sortBy) {
+    if (sortBy == null || sortBy.isBlank() || "time".equals(sortBy)) return F_DATE;
+    if ("billNo".equals(sortBy)) return "invoiceNo";
+    if (List.of(F_DATE, "invoiceNo", F_SHIFT, F_CASHIER, K_BILLS, "gross", F_VAT, "net", "cash", "card", "credit", "returns")
+        .contains(sortBy)) return sortBy;
+    throw new IllegalArgumentException("Unsupported sortBy '" + sortBy + "'");
+  }
+
+  /**
+   * Bills a Day/X/Z report covers. DAY is the whole range. X reads the open span since the
+   * last Z. Z is the span closed by the last Z in range, or the open span until one is taken.
+   * Both stay within the requested days.
+   */
+  private Criteria dayZWindow(LocalDate from, LocalDate to, String type) {
+    String t = (type == null || type.isBlank()) ? "DAY" : type.trim().toUpperCase();
+    if ("DAY".equals(t)) return dateRange(from, to);
+    if (!"X".equals(t) && !"Z".equals(t)) throw new IllegalArgumentException("type must be DAY, X or Z");
+
+    Date lo = start(from), hi = end(to);
+    Date z = lastZ(hi, false);
+    if ("Z".equals(t) && z != null && !z.before(lo)) {
+      hi = z;
+      z = lastZ(z, true);
     }
-    return makeResp(items, Map.of(K_BILLS, bills, "cash", cash, "card", card, "credit", credit, F_VAT, vat, "net", net), items.size());
+    return (z != null && z.after(lo))
+      ? Criteria.where(F_DATE).gt(z).lte(hi)
+      : Criteria.where(F_DATE).gte(lo).lte(hi);
+  }
+
+  /** Time of the latest Z event at (or, when {@code strict}, before) {@code t}; null if none. */
+  private Date lastZ(Date t, boolean strict) {
+    Criteria ts = strict ? Criteria.where("ts").lt(t) : Criteria.where("ts").lte(t);
+    Query q = Query.query(Criteria.where("type").is("Z").andOperator(ts)).with(Sort.by(Sort.Direction.DESC, "ts")).limit(1);
+    q.fields().include("ts");
+    Document e = mongo.findOne(q, Document.class, C_SHIFT_EVENTS);
+    return (e == null) ? null : e.getDate("ts");
   }
 
   /* ---- overload that matches controller signature (filters + exclude) ---- */
+  // X/Z windows move when a Z is logged, which publishes no change event; only DAY is cached
+  @Cacheable(cacheNames = ReportCacheConfig.REPORTS_INVOICES, keyGenerator = ReportCacheConfig.RANGE_KEY,
+             condition = "#p3 == null || #p3.equalsIgnoreCase('DAY')", unless = TRUNCATED_RESULT)
   public ReportResponse<Document> dayZ(
       LocalDate from,
       LocalDate to,
-      String shift,      // not used by current pipeline
-      String type,       // DAY | X | Z – not used by current pipeline
-      String sortBy,     // not used
-      String sortDir,    // not used
-      int page,          // not used
-      int size,          // not used
+      String shift,
+      String type,       // DAY | X | Z
+      String sortBy,     // UI column; bill time when unset
+      String sortDir,
+      int page,
+      int size,
       boolean excludeDiscount
   ) {
-    ReportResponse<Document> out = this.dayZ(from, to);
+    ReportResponse<Document> out = this.dayZ(from, to, shift, type, sortBy, sortDir, page, size);
     if (excludeDiscount) stripDiscount(out);
     return out;
   }
 
   /* ================= 4) Shift Summary ================= */
+  @Cacheable(cacheNames = ReportCacheConfig.REPORTS_INVOICES, keyGenerator = ReportCacheConfig.RANGE_KEY,
+             unless = TRUNCATED_RESULT)
   public ReportResponse<Document> shift(LocalDate from, LocalDate to) {
-    Criteria c = dateRange(from, to);
-    Aggregation a = newAggregation(
-      match(c),
-      group(F_SHIFT)
+    Rows q = shiftRows(from, to);
+    Ran ran = run(q, q.all());
+    return makeResp(ran, Map.of(), ran.rows().size());
+  }
+
+  private static Rows shiftRows(LocalDate from, LocalDate to) {
+    return new Rows("shift", C_INVOICES,
+      List.of(match(dateRange(from, to))),
+      List.of(group(F_SHIFT)
         .first(F_SHIFT).as(F_SHIFT)
         .count().as(K_BILLS)
         .sum(F_GROSS).as("gross")
         .sum(F_DISCOUNT).as(F_DISCOUNT)
         .sum(F_VAT).as(F_VAT)
-        .sum(F_NET).as("net"),
-      sort(Sort.Direction.ASC, F_SHIFT)
-    );
-    List<Document> items = mongo.aggregate(a, C_INVOICES, Document.class).getMappedResults();
-    return makeResp(items, Map.of(), items.size());
+        .sum(F_NET).as("net")),
+      sort(Sort.Direction.ASC, F_SHIFT));
   }
 
   /* ================= 5) Purchases ================= */
   public ReportResponse<Document> purchase(LocalDate from, LocalDate to, int page, int size){
-    Criteria c = dateRange(from, to);
-    Aggregation a = newAggregation(
-      match(c),
-      group(F_DATE).first(F_DATE).as(F_DATE).count().as(K_BILLS).sum(F_VAT).as(F_VAT).sum(F_NET).as("net"),
-      sort(Sort.Direction.ASC, F_DATE),
-      skip((long) page * size),
-      limit(size)
-    );
-    List<Document> items = mongo.aggregate(a, C_PURCHASES, Document.class).getMappedResults();
+    return purchase(from, to, page, size, null);
+  }
+
+  @Cacheable(cacheNames = ReportCacheConfig.REPORTS_PURCHASES, keyGenerator = ReportCacheConfig.RANGE_KEY,
+             unless = TRUNCATED_RESULT)
+  public ReportResponse<Document> purchase(LocalDate from, LocalDate to, int page, int size, String cursor){
+    ReportCursor cur = ReportCursor.decode(cursor);
+
+    List<Document> items;
+    long count;
+    boolean truncated;
+    if (cur != null) {
+      Rows q = purchaseRows(from, to, after(F_DATE, cur.key));
+      Ran ran = run(q, q.all(limit(size)));
+      items = ran.rows();
+      count = cur.count;
+      truncated = ran.truncated();
+    } else {
+      Rows q = purchaseRows(from, to, null);
+      Document r = facetPage(q, page, size,
+        null,
+        List.of(group(F_DATE), count().as("n")));
+      items = facetItems(r);
+      count = facetCount(r);
+      truncated = truncated(r);
+    }
 
     long bills = 0; double vat = 0, net = 0;
     for (Document d : items) {
@@ -327,177 +754,320 @@ public class ReportService {
       net   += num(d, "net");
     }
 
-    Aggregation countAgg = newAggregation(match(c), group(F_DATE), count().as("n"));
-    Document cd = mongo.aggregate(countAgg, C_PURCHASES, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? items.size() : numL(cd, "n");
-
-    return makeResp(items, Map.of(K_BILLS, bills, F_VAT, vat, "net", net), count);
+    return withNextCursor(makeResp(items, Map.of(K_BILLS, bills, F_VAT, vat, "net", net), count, truncated), size,
+      d -> d.get(F_DATE), false);
   }
   public ReportResponse<Document> purchase(LocalDate from, LocalDate to){
     return purchase(from, to, 0, Integer.MAX_VALUE);
   }
 
+  private static Rows purchaseRows(LocalDate from, LocalDate to, Criteria seek) {
+    return new Rows("purchase", C_PURCHASES,
+      List.of(match(andSeek(dateRange(from, to), seek))),
+      List.of(group(F_DATE).first(F_DATE).as(F_DATE).count().as(K_BILLS).sum(F_VAT).as(F_VAT).sum(F_NET).as("net")),
+      sort(Sort.Direction.ASC, F_DATE));
+  }
+
   /* ================= 6) Returns / Cancellation ================= */
   public ReportResponse<Document> returns(LocalDate from, LocalDate to, String cashier, String reason, int page, int size){
-    Criteria c = dateRange(from, to);
-    if (cashier != null && !cashier.isBlank()) c = c.and(F_CASHIER).is(cashier);
-    if (reason  != null && !reason.isBlank())  c = c.and("reason").regex(reason, "i");
+    return returns(from, to, cashier, reason, page, size, null);
+  }
 
-    Aggregation a = newAggregation(
-      match(c),
-      group(F_DATE)
-        .first(F_DATE).as(F_DATE)
-        .sum(K_AMOUNT).as(K_AMOUNT)
-        .count().as(K_COUNT),
-      sort(Sort.Direction.ASC, F_DATE),
-      skip((long) page * size),
-      limit(size)
-    );
-    List<Document> items = mongo.aggregate(a, C_RETURNS, Document.class).getMappedResults();
+  @Cacheable(cacheNames = ReportCacheConfig.REPORTS_RETURNS, keyGenerator = ReportCacheConfig.RANGE_KEY,
+             unless = TRUNCATED_RESULT)
+  public ReportResponse<Document> returns(LocalDate from, LocalDate to, String cashier, String reason, int page, int size,
+                                          String cursor){
+    ReportCursor cur = ReportCursor.decode(cursor);
 
-    Aggregation totalsAgg = newAggregation(match(c), group().sum(K_AMOUNT).as(K_AMOUNT).count().as(K_COUNT));
-    Document t = mongo.aggregate(totalsAgg, C_RETURNS, Document.class).getUniqueMappedResult();
+    if (cur != null) {
+      Rows q = returnsRows(from, to, cashier, reason, after(F_DATE, cur.key));
+      return withNextCursor(makeResp(run(q, q.all(limit(size))), cur.totals, cur.count), size, d -> d.get(F_DATE));
+    }
 
-    Aggregation countAgg = newAggregation(match(c), group(F_DATE), count().as("n"));
-    Document cd = mongo.aggregate(countAgg, C_RETURNS, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? items.size() : numL(cd, "n");
+    Rows q = returnsRows(from, to, cashier, reason, null);
+    Document r = facetPage(q, page, size,
+      List.of(group().sum(K_AMOUNT).as(K_AMOUNT).count().as(K_COUNT)),
+      List.of(group(F_DATE), count().as("n")));
 
-    return makeResp(items, t, count);
+    return withNextCursor(makeResp(facetItems(r), facetFirst(r, FACET_TOTALS), facetCount(r), truncated(r)), size, d -> d.get(F_DATE));
   }
   public ReportResponse<Document> returns(LocalDate from, LocalDate to){
     return returns(from, to, null, null, 0, Integer.MAX_VALUE);
   }
 
+  private static Rows returnsRows(LocalDate from, LocalDate to, String cashier, String reason, Criteria seek) {
+    Criteria c = dateRange(from, to);
+    if (cashier != null && !cashier.isBlank()) c = c.and(F_CASHIER).is(cashier);
+    if (reason  != null && !reason.isBlank())  c = c.and("reason").regex(reason, "i");
+
+    return new Rows("returns", C_RETURNS,
+      List.of(match(andSeek(c, seek))),
+      List.of(group(F_DATE)
+        .first(F_DATE).as(F_DATE)
+        .sum(K_AMOUNT).as(K_AMOUNT)
+        .count().as(K_COUNT)),
+      sort(Sort.Direction.ASC, F_DATE));
+  }
+
   /* ================= 7) Payments / Collections ================= */
   public ReportResponse<Document> payments(LocalDate from, LocalDate to, String method, int page, int size){
-    Criteria c = dateRange(from, to).and(K_ENTITY_TYPE).is(K_CUSTOMER);
-    if (method != null && !method.isBlank()) c = c.and("method").is(method);
+    return payments(from, to, method, page, size, null);
+  }
 
-    Aggregation a = newAggregation(match(c), sort(Sort.Direction.DESC, F_DATE), skip((long) page * size), limit(size));
-    List<Document> items = mongo.aggregate(a, C_PAYMENTS, Document.class).getMappedResults();
+  public ReportResponse<Document> payments(LocalDate from, LocalDate to, String method, int page, int size, String cursor){
+    ReportCursor cur = ReportCursor.decode(cursor);
 
-    Document t = mongo.aggregate(newAggregation(match(c), group().sum(K_AMOUNT).as(K_AMOUNT)), C_PAYMENTS, Document.class)
-                      .getUniqueMappedResult();
+    if (cur != null) {
+      Rows q = paymentsRows(from, to, method, beforeDesc(F_DATE, cur.key, cur.id));
+      return withNextCursor(makeResp(run(q, q.all(limit(size))), cur.totals, cur.count), size, d -> d.get(F_DATE));
+    }
+
+    Rows q = paymentsRows(from, to, method, null);
+    Document r = facetPage(q, page, size,
+      List.of(group().sum(K_AMOUNT).as(K_AMOUNT)),
+      List.of(count().as("n")));
 
-    Aggregation countAgg = newAggregation(match(c), group().count().as("n"));
-    Document cd = mongo.aggregate(countAgg, C_PAYMENTS, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? items.size() : numL(cd, "n");
+    return withNextCursor(makeResp(facetItems(r), facetFirst(r, FACET_TOTALS), facetCount(r), truncated(r)), size, d -> d.get(F_DATE));
+  }
 
-    return makeResp(items, t, count);
+  private static Rows paymentsRows(LocalDate from, LocalDate to, String method, Criteria seek) {
+    Criteria c = dateRange(from, to).and(K_ENTITY_TYPE).is(K_CUSTOMER);
+    if (method != null && !method.isBlank()) c = c.and("method").is(method);
+    return new Rows("payments", C_PAYMENTS, List.of(match(andSeek(c, seek))), List.of(), sort(Sort.by(Sort.Direction.DESC, F_DATE, "_id")));
   }
 
   /* ================= 8) VAT ================= */
+  @Cacheable(cacheNames = ReportCacheConfig.REPORTS_VAT, keyGenerator = ReportCacheConfig.RANGE_KEY,
+             unless = TRUNCATED_RESULT)
   public ReportResponse<Document> vat(LocalDate from, LocalDate to, String groupBy, int page, int size){
-    if ("SUMMARY".equalsIgnoreCase(groupBy)) {
-      Criteria cs = dateRange(from, to);
-      Criteria cp = dateRange(from, to);
+    // filed quarters come from their frozen snapshot; only the rest is aggregated live
+    List<Document> closed = vatPeriods.closedBetween(from, to);
 
-      Document out = mongo.aggregate(newAggregation(match(cs), group().sum(F_VAT).as(K_OUTPUT_VAT)), C_INVOICES,  Document.class).getUniqueMappedResult();
-      Document in  = mongo.aggregate(newAggregation(match(cp), group().sum(F_VAT).as(K_INPUT_VAT)),  C_PURCHASES, Document.class).getUniqueMappedResult();
+    if ("SUMMARY".equalsIgnoreCase(groupBy)) {
+      Criteria cs = liveVatRange(from, to, closed);
+      Criteria cp = liveVatRange(from, to, closed);
+
+      // output VAT from invoices and input VAT from purchases in one round trip
+      Document both;
+      boolean truncated = false;
+      try {
+        both = mongo.aggregate(newAggregation(
+            match(cs),
+            group().sum(F_VAT).as(K_OUTPUT_VAT),
+            UnionWithOperation.unionWith(C_PURCHASES).pipeline(match(cp),
+              group().sum(ConditionalOperators.ifNull(F_VAT).thenValueOf("totals.totalTax")).as(K_INPUT_VAT)),
+            // raw stage: inputVat only exists in the unioned rows, not in the typed field chain
+            ctx -> new Document("$group", new Document("_id", null)
+                .append(K_OUTPUT_VAT, new Document("$sum", "$" + K_OUTPUT_VAT))
+                .append(K_INPUT_VAT,  new Document("$sum", "$" + K_INPUT_VAT)))).withOptions(budgets.options("vat")),
+          C_INVOICES, Document.class).getUniqueMappedResult();
+      } catch (RuntimeException e) {
+        if (!budgets.exceeded("vat", e)) throw e;
+        truncated = true;
+        both = null;
+      }
 
-      double outputVat = (out == null) ? 0 : num(out, K_OUTPUT_VAT);
-      double inputVat  = (in  == null) ? 0 : num(in,  K_INPUT_VAT);
+      double outputVat = (both == null) ? 0 : num(both, K_OUTPUT_VAT);
+      double inputVat  = (both == null) ? 0 : num(both, K_INPUT_VAT);
+      for (Document day : closedVatDays(from, to, closed)) {
+        outputVat += num(day, K_OUTPUT_VAT);
+        inputVat  += num(day, K_INPUT_VAT);
+      }
       Document row = new Document(Map.of("period", "Custom", K_OUTPUT_VAT, outputVat, K_INPUT_VAT, inputVat, "netVat", outputVat - inputVat));
 
-      return makeResp(List.of(row), Map.of(K_OUTPUT_VAT, outputVat, K_INPUT_VAT, inputVat, "netVat", outputVat - inputVat), 1);
+      return makeResp(List.of(row), Map.of(K_OUTPUT_VAT, outputVat, K_INPUT_VAT, inputVat, "netVat", outputVat - inputVat), 1,
+        truncated);
     }
 
-    Criteria c = dateRange(from, to);
-    Aggregation a = newAggregation(
-      match(c),
-      group(F_DATE)
-        .first(F_DATE).as(F_DATE)
-        .sum(F_NET).as(K_TOTAL)
-        .sum(F_VAT).as(F_VAT),
-      project(F_DATE, F_VAT, K_TOTAL)
-        .and(ArithmeticOperators.Subtract.valueOf(K_TOTAL).subtract("$" + F_VAT)).as(K_TAXABLE),
-      sort(Sort.Direction.ASC, F_DATE),
-      skip((long) page * size),
-      limit(size)
-    );
+    if (closed.isEmpty()) {
+      Rows q = vatRows(dateRange(from, to));
+      Document r = facetPage(q, page, size,
+        null,
+        List.of(group(F_DATE), count().as("n")));
+      return vatPage(facetItems(r), facetCount(r), truncated(r));
+    }
 
-    List<Document> items = mongo.aggregate(a, C_INVOICES, Document.class).getMappedResults();
+    // some quarters are filed: their days come from the snapshots, the rest is read live,
+    // and the two are merged by date before paging
+    List<Document> days = new ArrayList<>();
+    for (Document d : closedVatDays(from, to, closed)) {
+      if (numL(d, "invoices") == 0) continue;   // purchase-only day: no output row
+      days.add(new Document(F_DATE, start(LocalDate.parse(d.getString(F_DATE))))
+        .append(K_TOTAL, num(d, K_TOTAL))
+        .append(F_VAT, num(d, K_OUTPUT_VAT))
+        .append(K_TAXABLE, num(d, K_TAXABLE)));
+    }
+    boolean truncated = false;
+    if (!coversRange(from, to, closed)) {
+      Rows live = vatRows(liveVatRange(from, to, closed));
+      truncated = !readAll(live, 0, days, budgets.deadline(live.report()));
+    }
+    days.sort(Comparator.comparing(d -> d.getDate(F_DATE)));
 
+    int fromIdx = (int) Math.min((long) page * size, days.size());
+    List<Document> items = new ArrayList<>(days.subList(fromIdx, (int) Math.min((long) fromIdx + size, days.size())));
+    return vatPage(items, days.size(), truncated);
+  }
+
+  /** A DAY-grouped VAT page; its totals cover the rows on the page. */
+  private static ReportResponse<Document> vatPage(List<Document> items, long count, boolean truncated) {
     double taxable = 0, vat = 0, total = 0;
     for (Document d : items) {
       taxable += num(d, K_TAXABLE);
       vat     += num(d, F_VAT);
       total   += num(d, K_TOTAL);
     }
-
-    Aggregation countAgg = newAggregation(match(c), group(F_DATE), count().as("n"));
-    Document cd = mongo.aggregate(countAgg, C_INVOICES, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? items.size() : numL(cd, "n");
-
-    return makeResp(items, Map.of(K_TAXABLE, taxable, F_VAT, vat, K_TOTAL, total), count);
+    return makeResp(items, Map.of(K_TAXABLE, taxable, F_VAT, vat, K_TOTAL, total), count, truncated);
   }
   public ReportResponse<Document> vat(LocalDate from, LocalDate to){
     return vat(from, to, "SUMMARY", 0, 1);
   }
 
+  /** [from, to] minus the closed VAT quarters. */
+  private static Criteria liveVatRange(LocalDate from, LocalDate to, List<Document> closed) {
+    Criteria c = dateRange(from, to);
+    if (closed.isEmpty()) return c;
+    List<Criteria> filed = new ArrayList<>();
+    for (Document p : closed) {
+      filed.add(dateRange(LocalDate.parse(p.getString("from")), LocalDate.parse(p.getString("to"))));
+    }
+    return new Criteria().andOperator(c, new Criteria().norOperator(filed.toArray(new Criteria[0])));
+  }
+
+  /** Snapshot day rows of the closed quarters that fall inside [from, to]. */
+  private static List<Document> closedVatDays(LocalDate from, LocalDate to, List<Document> closed) {
+    String lo = from.toString(), hi = to.toString();
+    List<Document> out = new ArrayList<>();
+    for (Document p : closed) {
+      for (Document d : p.getList("byDay", Document.class, List.of())) {
+        String day = d.getString(F_DATE);
+        if (day.compareTo(lo) >= 0 && day.compareTo(hi) <= 0) out.add(d);
+      }
+    }
+    return out;
+  }
+
+  /** True when every quarter touching [from, to] is closed. */
+  private static boolean coversRange(LocalDate from, LocalDate to, List<Document> closed) {
+    int quarters = 0;
+    for (LocalDate q = VatPeriodService.firstDay(VatPeriodService.periodOf(from)); !q.isAfter(to); q = q.plusMonths(3)) quarters++;
+    return !closed.isEmpty() && closed.size() == quarters;
+  }
+
+  /** Per-day VAT breakdown (the DAY grouping) of the invoices matching {@code c}. */
+  private static Rows vatRows(Criteria c) {
+    return new Rows("vat", C_INVOICES,
+      List.of(match(c)),
+      List.of(
+        group(F_DATE)
+          .first(F_DATE).as(F_DATE)
+          .sum(F_NET).as(K_TOTAL)
+          .sum(F_VAT).as(F_VAT),
+        project(F_DATE, F_VAT, K_TOTAL)
+          .and(ArithmeticOperators.Subtract.valueOf(K_TOTAL).subtract("$" + F_VAT)).as(K_TAXABLE)),
+      sort(Sort.Direction.ASC, F_DATE));
+  }
+
   /* ================= 9) Expenses ================= */
   public ReportResponse<Document> expenses(LocalDate from, LocalDate to, int page, int size){
-    Criteria c = dateRange(from, to);
-    Aggregation a = newAggregation(match(c), sort(Sort.Direction.DESC, F_DATE), skip((long) page * size), limit(size));
-    List<Document> items = mongo.aggregate(a, C_EXPENSES, Document.class).getMappedResults();
+    return expenses(from, to, page, size, null);
+  }
+
+  @Cacheable(cacheNames = ReportCacheConfig.REPORTS_EXPENSES, keyGenerator = ReportCacheConfig.RANGE_KEY,
+             unless = TRUNCATED_RESULT)
+  public ReportResponse<Document> expenses(LocalDate from, LocalDate to, int page, int size, String cursor){
+    ReportCursor cur = ReportCursor.decode(cursor);
 
-    Document t = mongo.aggregate(newAggregation(match(c), group().sum(K_AMOUNT).as(K_AMOUNT)), C_EXPENSES, Document.class)
-                      .getUniqueMappedResult();
+    if (cur != null) {
+      Rows q = expensesRows(from, to, beforeDesc(F_DATE, cur.key, cur.id));
+      return withNextCursor(makeResp(run(q, q.all(limit(size))), cur.totals, cur.count), size, d -> d.get(F_DATE));
+    }
 
-    Aggregation countAgg = newAggregation(match(c), group().count().as("n"));
-    Document cd = mongo.aggregate(countAgg, C_EXPENSES, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? items.size() : numL(cd, "n");
+    Rows q = expensesRows(from, to, null);
+    Document r = facetPage(q, page, size,
+      List.of(group().sum(K_AMOUNT).as(K_AMOUNT)),
+      List.of(count().as("n")));
 
-    return makeResp(items, t, count);
+    return withNextCursor(makeResp(facetItems(r), facetFirst(r, FACET_TOTALS), facetCount(r), truncated(r)), size, d -> d.get(F_DATE));
+  }
+
+  private static Rows expensesRows(LocalDate from, LocalDate to, Criteria seek) {
+    return new Rows("expenses", C_EXPENSES,
+      List.of(match(andSeek(dateRange(from, to), seek))),
+      List.of(),
+      sort(Sort.by(Sort.Direction.DESC, F_DATE, "_id")));
   }
 
   /* ================= 10) Supplier Outstanding (AP) ================= */
   public ReportResponse<Document> supplierOutstanding(LocalDate asOf, int page, int size){
-    Date asOfDate = start(asOf);
-
-    Aggregation a = newAggregation(
-      match(Criteria.where(K_ENTITY_TYPE).is(K_VENDOR).and(F_DATE).lte(asOfDate)),
-      group(K_ENTITY_ID, K_ENTITY_NAME)
-        .first(K_ENTITY_NAME).as("vendor")
-        .sum(K_DEBIT).as(K_DEBIT)
-        .sum(K_CREDIT).as(K_CREDIT),
-      project("vendor").and(ArithmeticOperators.Subtract.valueOf(K_CREDIT).subtract(K_DEBIT)).as(K_TOTAL),
-      sort(Sort.Direction.DESC, K_TOTAL),
-      skip((long) page * size),
-      limit(size)
-    );
-    List<Document> items = mongo.aggregate(a, C_LEDGERS, Document.class).getMappedResults();
+    Rows q = supplierOutstandingRows(asOf);
+    Document r = facetPage(q, page, size,
+      null,
+      List.of(group(K_ENTITY_ID), count().as("n")));
+    List<Document> items = facetItems(r);
 
     double total = items.stream().mapToDouble(d -> num(d, K_TOTAL)).sum();
 
-    Aggregation countAgg = newAggregation(
-      match(Criteria.where(K_ENTITY_TYPE).is(K_VENDOR).and(F_DATE).lte(asOfDate)),
-      group(K_ENTITY_ID), count().as("n")
-    );
-    Document cd = mongo.aggregate(countAgg, C_LEDGERS, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? items.size() : numL(cd, "n");
-
-    return makeResp(items, Map.of(K_TOTAL, total), count);
+    return makeResp(items, Map.of(K_TOTAL, total), facetCount(r), truncated(r));
   }
   public ReportResponse<Document> supplierOutstanding(LocalDate asOf){
     return supplierOutstanding(asOf, 0, Integer.MAX_VALUE);
   }
 
+  private Rows supplierOutstandingRows(LocalDate asOf) {
+    if (currentBalances(asOf)) {
+      return new Rows("supplier-outstanding", PartyBalanceService.COLLECTION,
+        List.of(match(Criteria.where(K_ENTITY_TYPE).is(K_VENDOR))),
+        List.of(project(K_ENTITY_ID, PartyBalanceService.B_0_30, PartyBalanceService.B_31_60,
+            PartyBalanceService.B_61_90, PartyBalanceService.B_90P)
+          .and(K_ENTITY_NAME).as("vendor")
+          .and(K_BALANCE).as(K_TOTAL)),
+        sort(Sort.by(Sort.Direction.DESC, K_TOTAL).and(Sort.by(Sort.Direction.ASC, "_id"))));
+    }
+    return new Rows("supplier-outstanding", C_LEDGERS,
+      List.of(match(Criteria.where(K_ENTITY_TYPE).is(K_VENDOR).and(F_DATE).lte(start(asOf)))),
+      List.of(
+        group(K_ENTITY_ID, K_ENTITY_NAME)
+          .first(K_ENTITY_NAME).as("vendor")
+          .sum(K_DEBIT).as(K_DEBIT)
+          .sum(K_CREDIT).as(K_CREDIT),
+        project("vendor").and(ArithmeticOperators.Subtract.valueOf(K_CREDIT).subtract(K_DEBIT)).as(K_TOTAL)),
+      sort(Sort.Direction.DESC, K_TOTAL));
+  }
+
+  /** Precomputed party balances are "now"; a past as-of date still needs the ledger. */
+  private boolean currentBalances(LocalDate asOf) {
+    return !asOf.isBefore(LocalDate.now(ZONE)) && partyBalances.isReady();
+  }
+
   /* ================= 11) Customer Summary ================= */
   public ReportResponse<Document> customer(LocalDate from, LocalDate to, int page, int size){
-    Criteria c = dateRange(from, to);
-    Aggregation a = newAggregation(
-      match(c),
-      group(F_CUSTOMER_ID, F_CUSTOMER_NAME)
-        .first(F_CUSTOMER_NAME).as(K_CUSTOMER_TXT)
-        .count().as(K_BILLS)
-        .sum(F_VAT).as(F_VAT)
-        .sum(F_NET).as("net"),
-      sort(Sort.Direction.DESC, "net"),
-      skip((long) page * size),
-      limit(size)
-    );
-    List<Document> items = mongo.aggregate(a, C_INVOICES, Document.class).getMappedResults();
+    return customer(from, to, page, size, null);
+  }
+
+  @Cacheable(cacheNames = ReportCacheConfig.REPORTS_INVOICES, keyGenerator = ReportCacheConfig.RANGE_KEY,
+             unless = TRUNCATED_RESULT)
+  public ReportResponse<Document> customer(LocalDate from, LocalDate to, int page, int size, String cursor){
+    ReportCursor cur = ReportCursor.decode(cursor);
+
+    List<Document> items;
+    long count;
+    boolean truncated;
+    if (cur != null) {
+      Rows q = customerRows(from, to, seekAfter("net", Sort.Direction.DESC, cur.key, cur.id));
+      Ran ran = run(q, q.all(limit(size)));
+      items = ran.rows();
+      count = cur.count;
+      truncated = ran.truncated();
+    } else {
+      Rows q = customerRows(from, to, null);
+      Document r = facetPage(q, page, size,
+        null,
+        List.of(group(F_CUSTOMER_ID), count().as("n")));
+      items = facetItems(r);
+      count = facetCount(r);
+      truncated = truncated(r);
+    }
 
     long bills = 0; double net = 0, vat = 0;
     for (Document d: items){
@@ -506,49 +1076,172 @@ public class ReportService {
       vat   += num(d, F_VAT);
     }
 
-    Aggregation countAgg = newAggregation(match(c), group(F_CUSTOMER_ID), count().as("n"));
-    Document cd = mongo.aggregate(countAgg, C_INVOICES, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? items.size() : numL(cd, "n");
-
-    return makeResp(items, Map.of(K_BILLS, bills, "net", net, F_VAT, vat), count);
+    return withNextCursor(makeResp(items, Map.of(K_BILLS, bills, "net", net, F_VAT, vat), count, truncated), size,
+      d -> d.get("net"), false);
   }
   public ReportResponse<Document> customer(LocalDate from, LocalDate to){
     return customer(from, to, 0, Integer.MAX_VALUE);
   }
 
+  private static Rows customerRows(LocalDate from, LocalDate to, Criteria seek) {
+    return new Rows("customer", C_INVOICES,
+      List.of(match(dateRange(from, to))),
+      thenSeek(group(F_CUSTOMER_ID, F_CUSTOMER_NAME)
+        .first(F_CUSTOMER_NAME).as(K_CUSTOMER_TXT)
+        .count().as(K_BILLS)
+        .sum(F_VAT).as(F_VAT)
+        .sum(F_NET).as("net"), seek),
+      sort(Sort.by(Sort.Direction.DESC, "net").and(Sort.by(Sort.Direction.ASC, "_id"))));
+  }
+
   /* ================= 12) Aging (AR) ================= */
   public ReportResponse<Document> aging(LocalDate asOf, boolean onlyOverdue, int page, int size){
-    Date asOfDate = start(asOf);
-
-    Aggregation agg = newAggregation(
-      match(Criteria.where(K_ENTITY_TYPE).is(K_CUSTOMER).and(F_DATE).lte(asOfDate)),
-      group(K_ENTITY_ID, K_ENTITY_NAME)
-        .first(K_ENTITY_NAME).as(K_CUSTOMER_TXT)
-        .sum(K_DEBIT).as(K_DEBIT)
-        .sum(K_CREDIT).as(K_CREDIT),
-      project(K_CUSTOMER_TXT).and(ArithmeticOperators.Subtract.valueOf(K_DEBIT).subtract(K_CREDIT)).as(K_BALANCE),
-      (onlyOverdue ? match(Criteria.where(K_BALANCE).gt(0)) : match(new Criteria())),
-      sort(Sort.Direction.DESC, K_BALANCE),
-      skip((long) page * size),
-      limit(size)
-    );
-    List<Document> items = mongo.aggregate(agg, C_LEDGERS, Document.class).getMappedResults();
+    return aging(asOf, onlyOverdue, page, size, null);
+  }
 
-    double total = items.stream().mapToDouble(d -> num(d, K_BALANCE)).sum();
+  public ReportResponse<Document> aging(LocalDate asOf, boolean onlyOverdue, int page, int size, String cursor){
+    ReportCursor cur = ReportCursor.decode(cursor);
+
+    List<Document> items;
+    long count;
+    boolean truncated;
+    if (cur != null) {
+      Rows q = agingRows(asOf, onlyOverdue, seekAfter(K_BALANCE, Sort.Direction.DESC, cur.key, cur.id));
+      Ran ran = run(q, q.all(limit(size)));
+      items = ran.rows();
+      count = cur.count;
+      truncated = ran.truncated();
+    } else {
+      Rows q = agingRows(asOf, onlyOverdue, null);
+      Document r = facetPage(q, page, size,
+        null,
+        List.of(count().as("n")));
+      items = facetItems(r);
+      count = facetCount(r);
+      truncated = truncated(r);
+    }
 
-    Aggregation countAgg = newAggregation(
-      match(Criteria.where(K_ENTITY_TYPE).is(K_CUSTOMER).and(F_DATE).lte(asOfDate)),
-      group(K_ENTITY_ID, K_ENTITY_NAME).sum(K_DEBIT).as(K_DEBIT).sum(K_CREDIT).as(K_CREDIT),
-      project().and(ArithmeticOperators.Subtract.valueOf(K_DEBIT).subtract(K_CREDIT)).as(K_BALANCE),
-      (onlyOverdue ? match(Criteria.where(K_BALANCE).gt(0)) : match(new Criteria())),
-      group().count().as("n")
-    );
-    Document cd = mongo.aggregate(countAgg, C_LEDGERS, Document.class).getUniqueMappedResult();
-    long count = (cd == null) ? items.size() : numL(cd, "n");
+    double total = items.stream().mapToDouble(d -> num(d, K_BALANCE)).sum();
 
-    return makeResp(items, Map.of(K_TOTAL, total), count);
+    return withNextCursor(makeResp(items, Map.of(K_TOTAL, total), count, truncated), size, d -> d.get(K_BALANCE), false);
   }
   public ReportResponse<Document> aging(LocalDate asOf){
     return aging(asOf, false, 0, Integer.MAX_VALUE);
   }
+
+  /**
+   * Customer balances as of {@code asOf}. Today's (and later) balances are a sorted read
+   * of {@code party_balances}, with aging buckets; an earlier date aggregates the ledger,
+   * grouped in the facet prefix so the count is per customer.
+   */
+  private Rows agingRows(LocalDate asOf, boolean onlyOverdue, Criteria seek) {
+    if (currentBalances(asOf)) {
+      Criteria c = Criteria.where(K_ENTITY_TYPE).is(K_CUSTOMER);
+      if (onlyOverdue) c = c.and(K_BALANCE).gt(0);
+      return new Rows("aging", PartyBalanceService.COLLECTION,
+        List.of(match(c)),
+        concat((seek == null) ? List.of() : List.of(match(seek)),
+          List.of(project(K_ENTITY_ID, K_BALANCE, PartyBalanceService.B_0_30, PartyBalanceService.B_31_60,
+              PartyBalanceService.B_61_90, PartyBalanceService.B_90P)
+            .and(K_ENTITY_NAME).as(K_CUSTOMER_TXT))),
+        sort(Sort.by(Sort.Direction.DESC, K_BALANCE).and(Sort.by(Sort.Direction.ASC, "_id"))));
+    }
+    return new Rows("aging", C_LEDGERS,
+      List.of(
+        match(Criteria.where(K_ENTITY_TYPE).is(K_CUSTOMER).and(F_DATE).lte(start(asOf))),
+        group(K_ENTITY_ID, K_ENTITY_NAME)
+          .first(K_ENTITY_NAME).as(K_CUSTOMER_TXT)
+          .sum(K_DEBIT).as(K_DEBIT)
+          .sum(K_CREDIT).as(K_CREDIT),
+        project(K_CUSTOMER_TXT).and(ArithmeticOperators.Subtract.valueOf(K_DEBIT).subtract(K_CREDIT)).as(K_BALANCE),
+        (onlyOverdue ? match(Criteria.where(K_BALANCE).gt(0)) : match(new Criteria()))),
+      (seek == null) ? List.of() : List.of(match(seek)),
+      sort(Sort.by(Sort.Direction.DESC, K_BALANCE).and(Sort.by(Sort.Direction.ASC, "_id"))));
+  }
+
+  /* ================= 13) Export (streaming) ================= */
+
+  /** Reports that can be exported; names match the JSON endpoints under /api/reports. */
+  public static final List<String> EXPORTS = List.of(
+    "sales-summary", "product-sales", "dayz", "shift", "purchase", "returns", "payments",
+    "vat", "expenses", "supplier-outstanding", "customer", "aging");
+
+  /** Exports can outgrow the 100 MB in-memory stage limit; read them in large batches. */
+  private static final AggregationOptions EXPORT_OPTIONS =
+    AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(1000).build();
+
+  /**
+   * Full, unpaged pipeline of {@code report}. {@code to} is the as-of date for the ledger
+   * reports; {@code filters} carries the same optional request params as the JSON endpoint.
+   */
+  private Rows exportRows(String report, LocalDate from, LocalDate to, Map<String, String> filters) {
+    if (to == null) throw new IllegalArgumentException("Provide 'to' (or 'asOf').");
+    boolean asOf = "aging".equals(report) || "supplier-outstanding".equals(report);
+    if (!asOf && from == null) throw new IllegalArgumentException("Provide both 'from' and 'to'.");
+
+    return switch (report) {
+      case "sales-summary"        -> salesSummaryRows(from, to, filters.get(F_SHIFT), filters.get(F_CASHIER),
+                                       salesSummaryKey(filters.get("groupBy")), null);
+      case "product-sales"        -> {
+        String key = productSortField(filters.get("sortBy"));
+        yield productSalesRows(from, to, filters.get(F_SHIFT), filters.get(F_CASHIER), filters.get("category"),
+          filters.get("q"), productGroupBy(filters.get("groupBy")), key,
+          direction(filters.get("sortDir"), Sort.Direction.DESC), null);
+      }
+      case "dayz"                 -> dayZRows(dayZWindow(from, to, filters.get("type")), filters.get(F_SHIFT),
+                                       dayZSortField(filters.get("sortBy")), direction(filters.get("sortDir"), Sort.Direction.ASC));
+      case "shift"                -> shiftRows(from, to);
+      case "purchase"             -> purchaseRows(from, to, null);
+      case "returns"              -> returnsRows(from, to, filters.get(F_CASHIER), filters.get("reason"), null);
+      case "payments"             -> paymentsRows(from, to, filters.get("method"), null);
+      case "vat"                  -> vatRows(dateRange(from, to));
+      case "expenses"             -> expensesRows(from, to, null);
+      case "supplier-outstanding" -> supplierOutstandingRows(to);
+      case "customer"             -> customerRows(from, to, null);
+      case "aging"                -> agingRows(to, Boolean.parseBoolean(filters.get("onlyOverdue")), null);
+      default -> throw new IllegalArgumentException("Unknown report '" + report + "'. Expected one of " + EXPORTS);
+    };
+  }
+
+  /** Validates an export request (report name, dates, filters) without running it. */
+  public void checkExport(String report, LocalDate from, LocalDate to, Map<String, String> filters) {
+    exportRows(report, from, to, filters);
+  }
+
+  /**
+   * Streams every row of {@code report} to {@code sink} straight off the aggregation
+   * cursor, so memory stays flat however long the range is. Returns the rows written.
+   */
+  public long export(String report, LocalDate from, LocalDate to, Map<String, String> filters,
+                     boolean excludeDiscount, Consumer<Document> sink) {
+    Rows q = exportRows(report, from, to, filters);
+    long n = 0;
+    try (Stream<Document> rows = mongo.aggregateStream(newAggregation(q.all()).withOptions(EXPORT_OPTIONS),
+        q.coll(), Document.class)) {
+      for (Iterator<Document> it = rows.iterator(); it.hasNext(); n++) {
+        Document d = it.next();
+        if (excludeDiscount) {
+          d.remove("discount");
+          d.remove("disc");
+        }
+        sink.accept(d);
+      }
+    }
+    return n;
+  }
+
+  /**
+   * queryPlanner explain of the pipeline {@link #export} would run, as
+   * {@code {collection, explain}}; the index advisor uses it to spot collection scans.
+   */
+  public Document explain(String report, LocalDate from, LocalDate to, Map<String, String> filters) {
+    Rows q = exportRows(report, from, to, filters);
+    List<Document> pipeline = newAggregation(q.all()).toPipeline(Aggregation.DEFAULT_CONTEXT);
+    Document plan = mongo.getDb().runCommand(new Document("explain", new Document("aggregate", q.coll())
+        .append("pipeline", pipeline)
+        .append("cursor", new Document())
+        .append("allowDiskUse", true))
+      .append("verbosity", "queryPlanner"));
+    return new Document("collection", q.coll()).append("explain", plan);
+  }
 }
@@ -15,9 +15,11 @@ import com.pos.repository.ReturnTxnRepository;
 public class ReturnService {
 
   private final ReturnTxnRepository repo;
+  private final ReportDataPublisher reporting;
 
-  public ReturnService(ReturnTxnRepository repo) {
+  public ReturnService(ReturnTxnRepository repo, ReportDataPublisher reporting) {
     this.repo = repo;
+    this.reporting = reporting;
   }
 
   /** Create and persist a ReturnTxn from an incoming request. */
@@ -56,7 +58,9 @@ public class ReturnService {
       tx.setAmount(round2(safeNonNeg(req.getAmount())));
     }
 
-    return repo.save(tx);
+    ReturnTxn saved = repo.save(tx);
+    reporting.changed("returns", null, saved);
+    return saved;
   }
 
   /** List all returns, newest first. */
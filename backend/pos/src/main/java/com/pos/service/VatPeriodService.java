@@ -0,0 +1,395 @@
+package com.pos.service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.facet;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.limit;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.skip;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+/**
+ * VAT return periods (calendar quarters, business time zone). An open quarter is
+ * computed live from {@code invoices} and {@code purchases}; closing it freezes the
+ * figures into {@code vat_periods} (totals, per rate and per day) plus one line per
+ * invoice in {@code vat_period_invoices}. Closed periods are never recomputed or
+ * rewritten, so the filed figure stays reproducible even if bills are edited later.
+ */
+@Service
+public class VatPeriodService {
+
+  private static final Logger log = LoggerFactory.getLogger(VatPeriodService.class);
+
+  public static final String COLLECTION = "vat_periods";
+  public static final String LINES = "vat_period_invoices";
+
+  private static final String C_INVOICES  = "invoices";
+  private static final String C_PURCHASES = "purchases";
+
+  public static final String STATUS_OPEN   = "OPEN";
+  public static final String STATUS_CLOSED = "CLOSED";
+
+  private static final String K_PERIOD     = "periodId";
+  private static final String K_FROM       = "from";
+  private static final String K_TO         = "to";
+  private static final String K_STATUS     = "status";
+  private static final String K_OUTPUT_VAT = "outputVat";
+  private static final String K_INPUT_VAT  = "inputVat";
+  private static final String K_NET_VAT    = "netVat";
+  private static final String K_TAXABLE    = "taxable";
+  private static final String K_TOTAL      = "total";
+  private static final String K_INVOICES   = "invoices";
+  private static final String K_PURCHASES  = "purchases";
+  private static final String K_BY_RATE    = "byRate";
+  private static final String K_BY_DAY     = "byDay";
+
+  private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+  private static final Pattern PERIOD_ID = Pattern.compile("(\\d{4})-Q([1-4])");
+  private static final int BULK_SIZE = 500;
+
+  /** Invoice VAT and taxable value; the grand total includes VAT. */
+  private static final Document INV_VAT = ifNull("$vat", 0);
+  private static final Document INV_TOTAL = ifNull("$netTotal", 0);
+  private static final Document INV_TAXABLE = new Document("$subtract", List.of(INV_TOTAL, INV_VAT));
+  /** Purchases keep VAT at the top level on older documents and under totals on newer ones. */
+  private static final Document PUR_VAT = ifNull("$vat", ifNull("$totals.totalTax", 0));
+
+  private final MongoTemplate mongo;
+  private final ApplicationEventPublisher events;
+
+  public VatPeriodService(MongoTemplate mongo, ApplicationEventPublisher events) {
+    this.mongo = mongo;
+    this.events = events;
+  }
+
+  /* ================= periods ================= */
+
+  /** The quarter containing {@code day}, e.g. {@code 2025-Q3}. */
+  public static String periodOf(LocalDate day) {
+    return day.getYear() + "-Q" + ((day.getMonthValue() - 1) / 3 + 1);
+  }
+
+  static LocalDate firstDay(String periodId) {
+    Matcher m = PERIOD_ID.matcher(periodId == null ? "" : periodId.trim());
+    if (!m.matches()) throw new IllegalArgumentException("Invalid VAT period '" + periodId + "' (expected yyyy-Qn)");
+    return LocalDate.of(Integer.parseInt(m.group(1)), (Integer.parseInt(m.group(2)) - 1) * 3 + 1, 1);
+  }
+
+  static LocalDate lastDay(String periodId) {
+    return firstDay(periodId).plusMonths(3).minusDays(1);
+  }
+
+  /**
+   * The period's return: the frozen snapshot when closed, otherwise computed live
+   * with {@code status: OPEN}.
+   */
+  public Document get(String periodId) {
+    LocalDate from = firstDay(periodId);
+    String id = periodOf(from);
+    Document closed = closedSnapshot(id);
+    return (closed != null) ? closed : compute(id, from, lastDay(id));
+  }
+
+  /** Closed periods (headers and totals, newest first), optionally for one year. */
+  public List<Document> closed(Integer year) {
+    Query q = new Query();
+    if (year != null) q.addCriteria(Criteria.where("_id").regex("^" + year + "-Q"));
+    q.fields().exclude(K_BY_DAY);
+    q.with(Sort.by(Sort.Direction.DESC, "_id"));
+    return mongo.find(q, Document.class, COLLECTION);
+  }
+
+  public Document closedSnapshot(String periodId) {
+    return mongo.findById(periodId, Document.class, COLLECTION);
+  }
+
+  /** Closed snapshots overlapping [from, to], oldest first. */
+  public List<Document> closedBetween(LocalDate from, LocalDate to) {
+    List<String> ids = new ArrayList<>();
+    for (LocalDate q = firstDay(periodOf(from)); !q.isAfter(to); q = q.plusMonths(3)) ids.add(periodOf(q));
+    Query query = Query.query(Criteria.where("_id").in(ids)).with(Sort.by(Sort.Direction.ASC, "_id"));
+    return mongo.find(query, Document.class, COLLECTION);
+  }
+
+  /**
+   * Freezes the period. Only a quarter that has ended can be closed, and only once;
+   * a second close is a conflict rather than an overwrite.
+   */
+  public Document close(String periodId, String closedBy) {
+    LocalDate from = firstDay(periodId);
+    LocalDate to = lastDay(periodId);
+    String id = periodOf(from);
+    if (!to.isBefore(LocalDate.now(ZONE))) {
+      throw new IllegalArgumentException("VAT period " + id + " has not ended yet");
+    }
+    if (closedSnapshot(id) != null) {
+      throw new DataIntegrityViolationException("VAT period " + id + " is already closed");
+    }
+
+    Document snap = compute(id, from, to)
+        .append(K_STATUS, STATUS_CLOSED)
+        .append("closedAt", new Date())
+        .append("closedBy", (closedBy == null || closedBy.isBlank()) ? null : closedBy.trim());
+
+    // lines first: the header is what marks the period closed, so a failure in between
+    // leaves it open and the next close starts again from a clean slate
+    mongo.remove(Query.query(Criteria.where(K_PERIOD).is(id)), LINES);
+    long lines = writeLines(id, from, to);
+    snap.append("lines", lines);
+
+    try {
+      mongo.insert(snap, COLLECTION);
+    } catch (DuplicateKeyException e) {
+      throw new DataIntegrityViolationException("VAT period " + id + " is already closed");
+    }
+    log.info("VAT period {} closed: output {} input {} ({} invoices)",
+        id, snap.get(K_OUTPUT_VAT), snap.get(K_INPUT_VAT), lines);
+    // cached VAT reports over the quarter were computed live; they now read the snapshot
+    events.publishEvent(new ReportDataChangedEvent(COLLECTION, null, snap));
+    return snap;
+  }
+
+  /** Per-invoice lines of a period, by date: frozen ones when closed, live otherwise. */
+  public List<Document> invoices(String periodId, int page, int size) {
+    LocalDate from = firstDay(periodId);
+    String id = periodOf(from);
+    if (closedSnapshot(id) != null) {
+      Query q = Query.query(Criteria.where(K_PERIOD).is(id))
+          .with(Sort.by(Sort.Direction.ASC, "date", "_id"))
+          .skip((long) page * size).limit(size);
+      return mongo.find(q, Document.class, LINES);
+    }
+    List<AggregationOperation> ops = new ArrayList<>();
+    ops.add(match(range(from, lastDay(periodId))));
+    ops.add(sort(Sort.by(Sort.Direction.ASC, "date", "_id")));
+    ops.add(skip((long) page * size));
+    ops.add(limit(size));
+    ops.add(ctx -> new Document("$project", lineFields(id)));
+    return mongo.aggregate(newAggregation(ops), C_INVOICES, Document.class).getMappedResults();
+  }
+
+  /** Edits to bills inside a filed period don't change the snapshot; say so in the log. */
+  @EventListener
+  public void onChange(ReportDataChangedEvent e) {
+    if (!C_INVOICES.equals(e.getCollection()) && !C_PURCHASES.equals(e.getCollection())) return;
+    for (Document d : new Document[] { e.getBefore(), e.getAfter() }) {
+      if (d == null || !(d.get("date") instanceof Date)) continue;
+      String id = periodOf(((Date) d.get("date")).toInstant().atZone(ZONE).toLocalDate());
+      try {
+        if (mongo.exists(Query.query(Criteria.where("_id").is(id)), COLLECTION)) {
+          log.warn("{} {} changed inside closed VAT period {}; the filed snapshot is unchanged",
+              e.getCollection(), d.get("_id"), id);
+          return;
+        }
+      } catch (RuntimeException ex) {
+        log.debug("Closed VAT period check failed: {}", ex.getMessage());
+      }
+    }
+  }
+
+  /* ================= computation ================= */
+
+  private Document compute(String id, LocalDate from, LocalDate to) {
+    Criteria c = range(from, to);
+
+    // one pass over the quarter's invoices: totals, per rate and per day
+    Document inv = mongo.aggregate(newAggregation(
+        match(c),
+        ctx -> new Document("$project", new Document("day", day())
+            .append(K_TAXABLE, INV_TAXABLE).append("vat", INV_VAT).append(K_TOTAL, INV_TOTAL)),
+        ctx -> new Document("$addFields", new Document("rate", rate())),
+        facet(ctx -> new Document("$group", sums(null))).as("totals")
+            .and(ctx -> new Document("$group", sums("$rate")),
+                 ctx -> new Document("$sort", new Document("_id", 1))).as(K_BY_RATE)
+            .and(ctx -> new Document("$group", sums("$day")),
+                 ctx -> new Document("$sort", new Document("_id", 1))).as(K_BY_DAY)),
+      C_INVOICES, Document.class).getUniqueMappedResult();
+
+    List<Document> purByDay = mongo.aggregate(newAggregation(
+        match(c),
+        ctx -> new Document("$group", new Document("_id", day())
+            .append(K_PURCHASES, new Document("$sum", 1))
+            .append(K_INPUT_VAT, new Document("$sum", PUR_VAT))),
+        ctx -> new Document("$sort", new Document("_id", 1))),
+      C_PURCHASES, Document.class).getMappedResults();
+
+    Document totals = first(inv, "totals");
+    double outputVat = num(totals, "vat");
+    double inputVat = 0;
+    long purchases = 0;
+
+    // merge output (invoices) and input (purchases) per day
+    Map<String, Document> days = new LinkedHashMap<>();
+    for (Document d : list(inv, K_BY_DAY)) {
+      days.put(d.getString("_id"), new Document("date", d.getString("_id"))
+          .append(K_INVOICES, numL(d, "n"))
+          .append(K_TAXABLE, num(d, K_TAXABLE))
+          .append(K_OUTPUT_VAT, num(d, "vat"))
+          .append(K_TOTAL, num(d, K_TOTAL))
+          .append(K_PURCHASES, 0L)
+          .append(K_INPUT_VAT, 0d));
+    }
+    for (Document p : purByDay) {
+      inputVat += num(p, K_INPUT_VAT);
+      purchases += numL(p, K_PURCHASES);
+      Document d = days.computeIfAbsent(p.getString("_id"), k -> new Document("date", k)
+          .append(K_INVOICES, 0L).append(K_TAXABLE, 0d).append(K_OUTPUT_VAT, 0d).append(K_TOTAL, 0d));
+      d.append(K_PURCHASES, numL(p, K_PURCHASES)).append(K_INPUT_VAT, num(p, K_INPUT_VAT));
+    }
+    List<Document> byDay = new ArrayList<>(days.values());
+    byDay.sort((a, b) -> a.getString("date").compareTo(b.getString("date")));
+    for (Document d : byDay) d.append(K_NET_VAT, num(d, K_OUTPUT_VAT) - num(d, K_INPUT_VAT));
+
+    List<Document> byRate = new ArrayList<>();
+    for (Document d : list(inv, K_BY_RATE)) {
+      byRate.add(new Document("rate", d.get("_id"))
+          .append(K_INVOICES, numL(d, "n"))
+          .append(K_TAXABLE, num(d, K_TAXABLE))
+          .append("vat", num(d, "vat"))
+          .append(K_TOTAL, num(d, K_TOTAL)));
+    }
+
+    return new Document("_id", id)
+        .append(K_FROM, from.toString())
+        .append(K_TO, to.toString())
+        .append(K_STATUS, STATUS_OPEN)
+        .append(K_INVOICES, numL(totals, "n"))
+        .append(K_PURCHASES, purchases)
+        .append(K_TAXABLE, num(totals, K_TAXABLE))
+        .append(K_TOTAL, num(totals, K_TOTAL))
+        .append(K_OUTPUT_VAT, outputVat)
+        .append(K_INPUT_VAT, inputVat)
+        .append(K_NET_VAT, outputVat - inputVat)
+        .append(K_BY_RATE, byRate)
+        .append(K_BY_DAY, byDay)
+        .append("computedAt", new Date());
+  }
+
+  /** Copies the period's invoice lines server-side, in bulk batches. */
+  private long writeLines(String id, LocalDate from, LocalDate to) {
+    long n = 0;
+    BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, LINES);
+    int pending = 0;
+    Query q = Query.query(range(from, to));
+    q.fields().include("invoiceNo", "date", "customerName", "netTotal", "vat");
+    try (var it = mongo.stream(q, Document.class, C_INVOICES)) {
+      for (Document d : (Iterable<Document>) it::iterator) {
+        double vat = num(d, "vat");
+        double total = num(d, "netTotal");
+        double taxable = total - vat;
+        bulk.insert(new Document(K_PERIOD, id)
+            .append("invoiceId", d.get("_id"))
+            .append("invoiceNo", d.get("invoiceNo"))
+            .append("date", d.get("date"))
+            .append("customerName", d.get("customerName"))
+            .append("rate", taxable > 0 ? (double) Math.round(vat * 100 / taxable) : 0d)
+            .append(K_TAXABLE, taxable)
+            .append("vat", vat)
+            .append(K_TOTAL, total));
+        n++;
+        if (++pending == BULK_SIZE) {
+          bulk.execute();
+          bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, LINES);
+          pending = 0;
+        }
+      }
+    }
+    if (pending > 0) bulk.execute();
+    return n;
+  }
+
+  private static Document lineFields(String id) {
+    Document taxable = INV_TAXABLE;
+    return new Document(K_PERIOD, id)
+        .append("invoiceId", "$_id")
+        .append("invoiceNo", 1)
+        .append("date", 1)
+        .append("customerName", 1)
+        .append("rate", new Document("$let", new Document("vars", new Document("t", taxable).append("v", INV_VAT))
+            .append("in", new Document("$cond", List.of(
+                new Document("$gt", List.of("$$t", 0)),
+                new Document("$round", List.of(new Document("$multiply", List.of(
+                    new Document("$divide", List.of("$$v", "$$t")), 100)), 0)),
+                0)))))
+        .append(K_TAXABLE, taxable)
+        .append("vat", INV_VAT)
+        .append(K_TOTAL, INV_TOTAL);
+  }
+
+  /* ================= helpers ================= */
+
+  private static Criteria range(LocalDate from, LocalDate to) {
+    return Criteria.where("date")
+        .gte(Date.from(from.atStartOfDay(ZONE).toInstant()))
+        .lt(Date.from(to.plusDays(1).atStartOfDay(ZONE).toInstant()));
+  }
+
+  /** Business-zone calendar day of {@code date}, as yyyy-MM-dd. */
+  private static Document day() {
+    return new Document("$dateToString", new Document("format", "%Y-%m-%d")
+        .append("date", "$date").append("timezone", ZONE.getId()));
+  }
+
+  /** Whole-percent rate implied by vat/taxable (5 standard, 0 zero-rated). */
+  private static Document rate() {
+    return new Document("$cond", List.of(
+        new Document("$gt", List.of("$" + K_TAXABLE, 0)),
+        new Document("$round", List.of(new Document("$multiply", List.of(
+            new Document("$divide", List.of("$vat", "$" + K_TAXABLE)), 100)), 0)),
+        0));
+  }
+
+  private static Document sums(Object id) {
+    return new Document("_id", id)
+        .append("n", new Document("$sum", 1))
+        .append(K_TAXABLE, new Document("$sum", "$" + K_TAXABLE))
+        .append("vat", new Document("$sum", "$vat"))
+        .append(K_TOTAL, new Document("$sum", "$" + K_TOTAL));
+  }
+
+  private static Document ifNull(Object v, Object dflt) {
+    return new Document("$ifNull", List.of(v, dflt));
+  }
+
+  private static List<Document> list(Document r, String facet) {
+    return (r == null) ? List.of() : r.getList(facet, Document.class, List.of());
+  }
+
+  private static Document first(Document r, String facet) {
+    List<Document> rows = list(r, facet);
+    return rows.isEmpty() ? new Document() : rows.get(0);
+  }
+
+  private static double num(Document d, String k) {
+    Object v = d.get(k);
+    return (v instanceof Number) ? ((Number) v).doubleValue() : 0;
+  }
+
+  private static long numL(Document d, String k) {
+    Object v = d.get(k);
+    return (v instanceof Number) ? ((Number) v).longValue() : 0;
+  }
+}
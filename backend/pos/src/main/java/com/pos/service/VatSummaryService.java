@@ -3,19 +3,28 @@ package com.pos.service;
 import java.time.LocalDate;                // <-- use PageResponse
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.AddFieldsOperation;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.count;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.facet;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.limit;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.project;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.skip;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
 import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators.Timezone;
+import org.springframework.data.mongodb.core.aggregation.FacetOperation;
 import org.springframework.data.mongodb.core.aggregation.Fields;
 import org.springframework.data.mongodb.core.aggregation.GroupOperation;
 import org.springframework.data.mongodb.core.aggregation.MatchOperation;
@@ -24,13 +33,14 @@ import org.springframework.data.mongodb.core.aggregation.SortOperation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 
+import com.pos.config.ReportingMongoConfig;
 import com.pos.dto.PageResponse;
 
 @Service
 public class VatSummaryService {
 
   private final MongoTemplate mongo;
-  public VatSummaryService(MongoTemplate mongo) { this.mongo = mongo; }
+  public VatSummaryService(@Qualifier(ReportingMongoConfig.REPORTING) MongoTemplate mongo) { this.mongo = mongo; }
 
   // adjust these to your schema if needed
   private static final String COLLECTION = "sales";
@@ -52,27 +62,36 @@ public class VatSummaryService {
 
   private static final String INVOICE_NO = "invoiceNo";
 
+  private static final ZoneId ZONE = ZoneId.of("Asia/Dubai");
+  private static final Timezone TZ = Timezone.valueOf(ZONE.getId());
+
   public PageResponse<Document> summary(LocalDate from, LocalDate to, String groupBy, int page, int size) {
 
-    var start = from.atStartOfDay(ZoneId.systemDefault()).toInstant();
-    var end   = to.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant();
+    Date start = Date.from(from.atStartOfDay(ZONE).toInstant());
+    Date end   = Date.from(to.plusDays(1).atStartOfDay(ZONE).toInstant());
+
+    // index-backed superset first (each $or branch has its own index); the exact
+    // coalesced-date match after the projection keeps "first non-null date" semantics
+    MatchOperation candidates = match(new Criteria().orOperator(
+        Criteria.where(DATE1).gte(start).lt(end),
+        Criteria.where(DATE2).gte(start).lt(end),
+        Criteria.where(DATE3).gte(start).lt(end)));
 
+    // nested $ifNull: fields computed in a $project aren't visible within the same stage
     ProjectionOperation normalize = project()
-        .and(ConditionalOperators.ifNull(DATE1).thenValueOf(DATE2)).as("_d2")
-        .and(ConditionalOperators.ifNull("_d2").thenValueOf(DATE3)).as("_date")
-        .and(ConditionalOperators.ifNull(TAXABLE1).thenValueOf(TAXABLE2)).as("_t2")
-        .and(ConditionalOperators.ifNull("_t2").thenValueOf(TAXABLE3)).as("_taxable")
-        .and(ConditionalOperators.ifNull(VAT1).thenValueOf(VAT2)).as("_v2")
-        .and(ConditionalOperators.ifNull("_v2").thenValueOf(VAT3)).as("_vat")
-        .and(ConditionalOperators.ifNull(TOTAL1).thenValueOf(TOTAL2)).as("_gt2")
-        .and(ConditionalOperators.ifNull("_gt2").thenValueOf(TOTAL3)).as("_total")
+        .and(ConditionalOperators.ifNull(DATE1).thenValueOf(ConditionalOperators.ifNull(DATE2).thenValueOf(DATE3))).as("_date")
+        .and(ConditionalOperators.ifNull(TAXABLE1).thenValueOf(ConditionalOperators.ifNull(TAXABLE2).thenValueOf(TAXABLE3))).as("_taxable")
+        .and(ConditionalOperators.ifNull(VAT1).thenValueOf(ConditionalOperators.ifNull(VAT2).thenValueOf(VAT3))).as("_vat")
+        .and(ConditionalOperators.ifNull(TOTAL1).thenValueOf(ConditionalOperators.ifNull(TOTAL2).thenValueOf(TOTAL3))).as("_total")
         .and(INVOICE_NO).as("_invno");
 
     MatchOperation range = match(Criteria.where("_date").gte(start).lt(end));
 
-    AddFieldsOperation parts = AddFieldsOperation.addField("yearNum").withValueOfExpression("year(_date)")
-        .addField("monthNum").withValueOfExpression("month(_date)")
-        .addField("dayNum").withValueOfExpression("dayOfMonth(_date)").build();
+    // calendar parts in the business zone, not the server's
+    DateOperators.DateOperatorFactory date = DateOperators.dateOf("_date").withTimezone(TZ);
+    AddFieldsOperation parts = AddFieldsOperation.addField("yearNum").withValueOf(date.year())
+        .addField("monthNum").withValueOf(date.month())
+        .addField("dayNum").withValueOf(date.dayOfMonth()).build();
 
     GroupOperation group;
     switch (groupBy == null ? "day" : groupBy.toLowerCase()) {
@@ -93,8 +112,15 @@ public class VatSummaryService {
       default -> sort(Sort.Direction.ASC, "_id.yearNum", "_id.monthNum", "_id.dayNum");
     };
 
-    Aggregation agg = newAggregation(normalize, range, parts, group, sortOp);
-    List<Document> aggDocs = mongo.aggregate(agg, COLLECTION, Document.class).getMappedResults();
+    // page and count in one round trip
+    FacetOperation pageAndCount = facet(skip((long) page * size), limit(size)).as("items")
+        .and(count().as("n")).as("count");
+
+    Aggregation agg = newAggregation(candidates, normalize, range, parts, group, sortOp, pageAndCount);
+    Document r = mongo.aggregate(agg, COLLECTION, Document.class).getUniqueMappedResult();
+    List<Document> aggDocs = (r == null) ? List.of() : r.getList("items", Document.class, List.of());
+    List<Document> counted = (r == null) ? List.of() : r.getList("count", Document.class, List.of());
+    long totalElements = counted.isEmpty() ? 0 : ((Number) counted.get(0).get("n")).longValue();
 
     // build rows the frontend expects
     List<Document> rows = new ArrayList<>();
@@ -118,13 +144,10 @@ public class VatSummaryService {
           .append("total", ((Number) d.getOrDefault("total", 0)).doubleValue()));
     }
 
-    int totalElements = rows.size();
-    int fromIdx = Math.min(page * size, totalElements);
-    int toIdx = Math.min(fromIdx + size, totalElements);
     int totalPages = Math.max(1, (int) Math.ceil(totalElements / (double) size));
 
     PageResponse<Document> resp = new PageResponse<>();
-    resp.setContent(rows.subList(fromIdx, toIdx));
+    resp.setContent(rows);
     resp.setTotalElements(totalElements);
     resp.setTotalPages(totalPages);
     resp.setPage(page + 1);           // 1-based for UI
@@ -14,19 +14,24 @@ import com.pos.model.RecurringInvoice;
 import com.pos.model.SaleItem;
 import com.pos.repository.InvoiceRepository;
 import com.pos.service.InvoiceService;
+import com.pos.service.ReportDataPublisher;
 import com.pos.util.UaeEInvoiceQrUtil;
 
 @Service
 public class InvoiceServiceImpl implements InvoiceService {
 
+    private static final String COLLECTION = "invoices";
+
     private final InvoiceRepository invoiceRepository;
+    private final ReportDataPublisher reporting;
 
     // TODO: later read these from Company / Shop settings instead of constants
     private static final String DEFAULT_SELLER_NAME = "JABAL AL RAHMAH GROCERY L.L.C";
     private static final String DEFAULT_TRN = "12002000000";
 
-    public InvoiceServiceImpl(InvoiceRepository invoiceRepository) {
+    public InvoiceServiceImpl(InvoiceRepository invoiceRepository, ReportDataPublisher reporting) {
         this.invoiceRepository = invoiceRepository;
+        this.reporting = reporting;
     }
 
     // =====================================================================
@@ -68,8 +73,11 @@ public class InvoiceServiceImpl implements InvoiceService {
         String qr = buildEInvoiceQr(invoice);
         invoice.setEInvoiceQr(qr);
 
-        // 6) Persist
-        return invoiceRepository.save(invoice);
+        // 6) Persist (and keep reporting rollups in step)
+        Invoice before = isBlank(invoice.getId()) ? null : invoiceRepository.findById(invoice.getId()).orElse(null);
+        Invoice saved = invoiceRepository.save(invoice);
+        reporting.changed(COLLECTION, before, saved);
+        return saved;
     }
 
     @Override
@@ -138,7 +146,9 @@ public class InvoiceServiceImpl implements InvoiceService {
         String qr = buildEInvoiceQr(inv);
         inv.setEInvoiceQr(qr);
 
-        return invoiceRepository.save(inv);
+        Invoice saved = invoiceRepository.save(inv);
+        reporting.changed(COLLECTION, null, saved);
+        return saved;
     }
 
     // =====================================================================
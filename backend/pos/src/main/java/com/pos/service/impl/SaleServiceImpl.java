@@ -2,6 +2,7 @@ package com.pos.service.impl;
 
 import com.pos.model.Sale;
 import com.pos.repository.SaleRepository;
+import com.pos.service.ReportDataPublisher;
 import com.pos.service.SaleService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -14,10 +15,14 @@ import java.util.Optional;
 @Service
 public class SaleServiceImpl implements SaleService {
 
+    private static final String COLLECTION = "sales";
+
     private final SaleRepository repo;
+    private final ReportDataPublisher reporting;
 
-    public SaleServiceImpl(SaleRepository repo) {
+    public SaleServiceImpl(SaleRepository repo, ReportDataPublisher reporting) {
         this.repo = repo;
+        this.reporting = reporting;
     }
 
     @Override
@@ -58,11 +63,16 @@ public class SaleServiceImpl implements SaleService {
         }
         if (sale.getReturnAmount() == null) sale.setReturnAmount(BigDecimal.ZERO);
 
-        return repo.save(sale);
+        Sale before = (sale.getId() == null) ? null : repo.findById(sale.getId()).orElse(null);
+        Sale saved = repo.save(sale);
+        reporting.changed(COLLECTION, before, saved);
+        return saved;
     }
 
     @Override
     public void deleteById(String id) {
+        Sale before = repo.findById(id).orElse(null);
         repo.deleteById(id);
+        reporting.changed(COLLECTION, before, null);
     }
 }
@@ -0,0 +1,45 @@
+package com.pos.util;
+
+import org.bson.Document;
+
+/**
+ * Reads numbers out of stored documents. Amounts may be stored as Number or as String
+ * (the default BigDecimal mapping), so the pre-aggregation services read them through
+ * here rather than with {@code Document.getDouble}.
+ */
+public final class DocValues {
+
+    private DocValues() {}
+
+    /** Dotted-path read ("totals.grandTotal"); null when any step is missing. */
+    public static Object path(Document d, String path) {
+        Object cur = d;
+        for (String part : path.split("\\.")) {
+            if (!(cur instanceof Document)) return null;
+            cur = ((Document) cur).get(part);
+        }
+        return cur;
+    }
+
+    /** Number or numeric string as a double; anything else is 0. */
+    public static double num(Object o) {
+        if (o == null) return 0;
+        if (o instanceof Number) return ((Number) o).doubleValue();
+        try {
+            return Double.parseDouble(o.toString().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** {@code num(path(d, path))}; 0 for a null document. */
+    public static double num(Document d, String path) {
+        return (d == null) ? 0 : num(path(d, path));
+    }
+
+    /** Server-side counterpart of {@link #num(Object)}: {@code $convert} to double, 0 on null or error. */
+    public static Document toDouble(String fieldPath) {
+        return new Document("$convert", new Document("input", fieldPath)
+                .append("to", "double").append("onError", 0).append("onNull", 0));
+    }
+}
@@ -0,0 +1,237 @@
+// src/main/java/com/pos/util/ReportTableWriter.java
+package com.pos.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+
+/**
+ * Writes report rows as CSV or XLSX one at a time, so an export never holds more than
+ * the current row. Nested documents (e.g. a composite {@code _id}) become dotted
+ * columns; the first row fixes the column set.
+ */
+public abstract class ReportTableWriter implements Closeable {
+
+    private static final DateTimeFormatter DATE_TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.of("Asia/Dubai"));
+
+    private List<String> columns;
+
+    public static ReportTableWriter csv(OutputStream out) {
+        return new Csv(out);
+    }
+
+    public static ReportTableWriter xlsx(OutputStream out, String sheetName) {
+        return new Xlsx(out, sheetName);
+    }
+
+    /** Appends one row; IO failures (usually the client going away) surface unchecked. */
+    public void write(Document row) {
+        Map<String, Object> flat = new LinkedHashMap<>();
+        flatten("", row, flat);
+        try {
+            if (columns == null) {
+                columns = new ArrayList<>(flat.keySet());
+                header(columns);
+            }
+            List<Object> values = new ArrayList<>(columns.size());
+            for (String c : columns) values.add(flat.get(c));
+            row(values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected abstract void header(List<String> columns) throws IOException;
+
+    protected abstract void row(List<Object> values) throws IOException;
+
+    private static void flatten(String prefix, Document d, Map<String, Object> out) {
+        for (Map.Entry<String, Object> e : d.entrySet()) {
+            String k = prefix + e.getKey();
+            if (e.getValue() instanceof Document) flatten(k + ".", (Document) e.getValue(), out);
+            else out.put(k, e.getValue());
+        }
+    }
+
+    /** Numbers stay numeric (XLSX cells); everything else is rendered as text. */
+    private static Object cell(Object v) {
+        if (v instanceof Decimal128) return ((Decimal128) v).bigDecimalValue();
+        if (v instanceof Number || v == null) return v;
+        if (v instanceof Date) return DATE_TIME.format(((Date) v).toInstant());
+        if (v instanceof ObjectId) return ((ObjectId) v).toHexString();
+        return String.valueOf(v);
+    }
+
+    private static String number(Object n) {
+        return (n instanceof BigDecimal) ? ((BigDecimal) n).toPlainString() : n.toString();
+    }
+
+    /* ================= CSV ================= */
+
+    private static final class Csv extends ReportTableWriter {
+        private final Writer w;
+
+        Csv(OutputStream out) {
+            this.w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        }
+
+        @Override
+        protected void header(List<String> columns) throws IOException {
+            line(new ArrayList<>(columns));
+        }
+
+        @Override
+        protected void row(List<Object> values) throws IOException {
+            line(values);
+        }
+
+        private void line(List<Object> values) throws IOException {
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) w.write(',');
+                Object v = cell(values.get(i));
+                if (v instanceof Number) w.write(number(v));
+                else if (v != null) w.write(quote((String) v));
+            }
+            w.write("\r\n");
+        }
+
+        private static String quote(String s) {
+            // keep spreadsheet apps from evaluating text as a formula
+            if (!s.isEmpty() && "=+-@".indexOf(s.charAt(0)) >= 0) s = "'" + s;
+            if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) return s;
+            return '"' + s.replace("\"", "\"\"") + '"';
+        }
+
+        @Override
+        public void close() throws IOException {
+            w.close();
+        }
+    }
+
+    /* ================= XLSX (single sheet, inline strings) ================= */
+
+    private static final class Xlsx extends ReportTableWriter {
+        private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+        private static final String NS_REL  = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+        private static final String NS_PKG  = "http://schemas.openxmlformats.org/package/2006/relationships";
+        private static final String XML     = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+        private final ZipOutputStream zip;
+        private final Writer w;
+
+        Xlsx(OutputStream out, String sheetName) {
+            this.zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+            this.w = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+            try {
+                part("[Content_Types].xml", XML
+                        + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                        + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                        + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                        + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                        + "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                        + "</Types>");
+                part("_rels/.rels", XML
+                        + "<Relationships xmlns=\"" + NS_PKG + "\">"
+                        + "<Relationship Id=\"rId1\" Type=\"" + NS_REL + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                        + "</Relationships>");
+                part("xl/workbook.xml", XML
+                        + "<workbook xmlns=\"" + NS_MAIN + "\" xmlns:r=\"" + NS_REL + "\"><sheets>"
+                        + "<sheet name=\"" + escape(sheetTitle(sheetName)) + "\" sheetId=\"1\" r:id=\"rId1\"/>"
+                        + "</sheets></workbook>");
+                part("xl/_rels/workbook.xml.rels", XML
+                        + "<Relationships xmlns=\"" + NS_PKG + "\">"
+                        + "<Relationship Id=\"rId1\" Type=\"" + NS_REL + "/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                        + "</Relationships>");
+
+                // the sheet stays the open entry; rows are appended to it as they arrive
+                zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+                w.write(XML + "<worksheet xmlns=\"" + NS_MAIN + "\"><sheetData>");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void part(String name, String xml) throws IOException {
+            zip.putNextEntry(new ZipEntry(name));
+            w.write(xml);
+            w.flush();
+            zip.closeEntry();
+        }
+
+        /** Sheet names are capped at 31 chars and may not contain []:*?/\ . */
+        private static String sheetTitle(String s) {
+            String t = (s == null || s.isBlank()) ? "Report" : s.replaceAll("[\\[\\]:*?/\\\\]", "_");
+            return t.length() > 31 ? t.substring(0, 31) : t;
+        }
+
+        @Override
+        protected void header(List<String> columns) throws IOException {
+            row(new ArrayList<>(columns));
+        }
+
+        @Override
+        protected void row(List<Object> values) throws IOException {
+            w.write("<row>");
+            for (Object raw : values) {
+                Object v = cell(raw);
+                if (v == null) {
+                    w.write("<c/>");
+                } else if (v instanceof Number) {
+                    w.write("<c><v>");
+                    w.write(number(v));
+                    w.write("</v></c>");
+                } else {
+                    w.write("<c t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+                    w.write(escape((String) v));
+                    w.write("</t></is></c>");
+                }
+            }
+            w.write("</row>");
+        }
+
+        /** XML-escapes text and drops characters XML 1.0 can't carry. */
+        private static String escape(String s) {
+            StringBuilder sb = new StringBuilder(s.length() + 16);
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                switch (ch) {
+                    case '&': sb.append("&amp;"); break;
+                    case '<': sb.append("&lt;"); break;
+                    case '>': sb.append("&gt;"); break;
+                    case '"': sb.append("&quot;"); break;
+                    default:
+                        if (ch >= 0x20 || ch == '\t' || ch == '\n' || ch == '\r') sb.append(ch);
+                }
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            w.write("</sheetData></worksheet>");
+            w.flush();
+            zip.closeEntry();
+            zip.close();
+        }
+    }
+}
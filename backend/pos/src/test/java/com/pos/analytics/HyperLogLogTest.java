@@ -0,0 +1,83 @@
+package com.pos.analytics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The sketch stays within a few standard errors (~0.8%) of the true count, and
+ * merging day sketches, in memory or from their stored sparse form, counts a
+ * customer seen on several days once.
+ */
+class HyperLogLogTest {
+
+    /** Four standard errors; a correct sketch misses this far about once in 15,000 runs. */
+    private static final double TOLERANCE = 4 * 1.04 / Math.sqrt(HyperLogLog.M);
+
+    @Test
+    void estimatesLargeCardinalitiesWithinTheErrorBound() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 200_000; i++) hll.add("customer-" + i);
+        assertWithin(200_000, hll.estimate());
+    }
+
+    @Test
+    void smallCardinalitiesUseLinearCounting() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 500; i++) hll.add("walk-in-" + i);
+        assertWithin(500, hll.estimate());
+        assertEquals(0L, new HyperLogLog().estimate());
+    }
+
+    @Test
+    void repeatedValuesCountOnce() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10_000; i++) hll.add("customer-" + i);
+        }
+        assertWithin(10_000, hll.estimate());
+    }
+
+    @Test
+    void mergeCountsOverlappingDaysOnce() {
+        HyperLogLog monday = new HyperLogLog();
+        HyperLogLog tuesday = new HyperLogLog();
+        for (int i = 0; i < 60_000; i++) monday.add("customer-" + i);
+        for (int i = 40_000; i < 100_000; i++) tuesday.add("customer-" + i);
+
+        HyperLogLog week = new HyperLogLog();
+        week.merge(monday);
+        week.merge(tuesday);
+        assertWithin(100_000, week.estimate());
+
+        HyperLogLog stored = new HyperLogLog();
+        stored.merge(monday.toSparse());
+        stored.merge(tuesday.toSparse());
+        assertEquals(week.estimate(), stored.estimate());
+        assertEquals(week.toSparse(), stored.toSparse());
+    }
+
+    @Test
+    void sparseMergeSkipsMalformedRegisters() {
+        HyperLogLog hll = new HyperLogLog();
+        hll.merge(new Document("notARegister", 3).append("-1", 4)
+                .append(Integer.toString(HyperLogLog.M), 5).append("7", "x"));
+        hll.merge((Document) null);
+        assertEquals(new Document(), hll.toSparse());
+    }
+
+    @Test
+    void positionMatchesAdd() {
+        HyperLogLog hll = new HyperLogLog();
+        hll.add("customer-42");
+        int[] pos = HyperLogLog.position("customer-42");
+        assertEquals(new Document(Integer.toString(pos[0]), pos[1]), hll.toSparse());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        double err = Math.abs(actual - expected) / (double) expected;
+        assertTrue(err <= TOLERANCE, "estimate " + actual + " is " + err + " off " + expected);
+    }
+}
@@ -0,0 +1,100 @@
+package com.pos.analytics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Space-Saving is exact while the keys fit, and past that never drops a key
+ * heavier than {@code total / capacity} nor under-counts one it keeps.
+ */
+class SpaceSavingTest {
+
+    @Test
+    void exactWhileKeysFit() {
+        SpaceSaving s = new SpaceSaving(10);
+        s.offer("tea", 3);
+        s.offer("coffee", 5);
+        s.offer("tea", 4);
+        s.offer("water", 1);
+
+        List<SpaceSaving.Counter> top = s.top(10);
+        assertEquals(3L, top.size());
+        assertCounter(top.get(0), "tea", 7, 0);
+        assertCounter(top.get(1), "coffee", 5, 0);
+        assertCounter(top.get(2), "water", 1, 0);
+    }
+
+    @Test
+    void ignoresNonPositiveWeights() {
+        SpaceSaving s = new SpaceSaving(2);
+        s.offer("tea", 0);
+        s.offer("coffee", -3);
+        assertEquals(0L, s.top(5).size());
+    }
+
+    @Test
+    void evictsTheSmallestCounterAndCarriesItsCountAsError() {
+        SpaceSaving s = new SpaceSaving(2);
+        s.offer("tea", 5);
+        s.offer("coffee", 2);
+        s.offer("water", 1);
+
+        List<SpaceSaving.Counter> top = s.top(2);
+        assertCounter(top.get(0), "tea", 5, 0);
+        assertCounter(top.get(1), "water", 3, 2);
+    }
+
+    @Test
+    void topIsCappedAtK() {
+        SpaceSaving s = new SpaceSaving(5);
+        for (int i = 1; i <= 5; i++) s.offer("p" + i, i);
+        List<SpaceSaving.Counter> top = s.top(2);
+        assertEquals(2L, top.size());
+        assertEquals("p5", top.get(0).key);
+        assertEquals("p4", top.get(1).key);
+    }
+
+    @Test
+    void keepsHeavyHittersOfASkewedStream() {
+        int capacity = 50;
+        SpaceSaving s = new SpaceSaving(capacity);
+        Map<String, Long> truth = new HashMap<>();
+        Random rnd = new Random(7);
+        long total = 0;
+        for (int i = 0; i < 100_000; i++) {
+            // a handful of best sellers over a long tail of 5,000 products
+            String key = rnd.nextInt(4) == 0 ? "best-" + rnd.nextInt(5) : "tail-" + rnd.nextInt(5_000);
+            long qty = 1 + rnd.nextInt(3);
+            s.offer(key, qty);
+            truth.merge(key, qty, Long::sum);
+            total += qty;
+        }
+
+        Set<String> kept = new HashSet<>();
+        for (SpaceSaving.Counter c : s.top(capacity)) {
+            kept.add(c.key);
+            long actual = truth.get(c.key);
+            assertTrue(c.count >= actual, c.key + " under-counted");
+            assertTrue(c.count - c.error <= actual, c.key + " error bound too small");
+        }
+        for (Map.Entry<String, Long> e : truth.entrySet()) {
+            if (e.getValue() > total / capacity) assertTrue(kept.contains(e.getKey()), e.getKey() + " dropped");
+        }
+        for (SpaceSaving.Counter c : s.top(5)) assertTrue(c.key.startsWith("best-"), c.key + " ranked in the top 5");
+    }
+
+    private static void assertCounter(SpaceSaving.Counter c, String key, long count, long error) {
+        assertEquals(key, c.key);
+        assertEquals(count, c.count);
+        assertEquals(error, c.error);
+    }
+}
@@ -0,0 +1,125 @@
+package com.pos.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+/**
+ * LRU bound, TTL, the pending-load guard that refuses a put racing an eviction, and
+ * the replication-lag window that shortens entries loaded right after one.
+ */
+class LruCacheTest {
+
+  @Test
+  void dropsTheLeastRecentlyUsedEntry() {
+    LruCache c = new LruCache("t", 2, 0);
+    c.put("a", 1);
+    c.put("b", 2);
+    c.get("a");
+    c.put("c", 3);
+
+    assertEquals(1, value(c, "a"));
+    assertNull(c.get("b"));
+    assertEquals(3, value(c, "c"));
+  }
+
+  @Test
+  void cachesNullResults() {
+    LruCache c = new LruCache("t", 10, 0);
+    c.put("empty", null);
+    Cache.ValueWrapper w = c.get("empty");
+    assertNotNull(w);
+    assertNull(w.get());
+  }
+
+  @Test
+  void expiresEntriesAfterTheTtl() throws InterruptedException {
+    LruCache c = new LruCache("t", 10, 50);
+    c.put("a", 1);
+    assertEquals(1, value(c, "a"));
+    Thread.sleep(80);
+    assertNull(c.get("a"));
+  }
+
+  @Test
+  void refusesAPutWhoseLoadWasEvicted() {
+    LruCache c = new LruCache("t", 10, 0);
+    assertNull(c.get("jan"));   // miss: the load starts
+    c.evict("jan");              // a write lands while it runs
+    c.put("jan", "before the write");
+    assertNull(c.get("jan"));
+
+    c.put("jan", "after the write");   // the load started by the miss above
+    assertEquals("after the write", value(c, "jan"));
+  }
+
+  @Test
+  void evictIfAndClearAlsoMarkLoadsStale() {
+    LruCache c = new LruCache("t", 10, 0);
+    assertNull(c.get("jan"));
+    assertNull(c.get("feb"));
+    c.evictIf("jan"::equals);
+    c.put("jan", 1);
+    c.put("feb", 2);
+    assertNull(c.get("jan"));
+    assertEquals(2, value(c, "feb"));
+
+    assertNull(c.get("mar"));
+    c.clear();
+    c.put("mar", 3);
+    assertNull(c.get("mar"));
+  }
+
+  @Test
+  void overlappingLoadsOfOneKeyAreAllGuarded() {
+    LruCache c = new LruCache("t", 10, 0);
+    assertNull(c.get("jan"));
+    assertNull(c.get("jan"));
+    c.evict("jan");
+    c.put("jan", "first");
+    c.put("jan", "second");
+    assertNull(c.get("jan"));
+  }
+
+  @Test
+  void getWithLoaderCachesTheLoadedValue() {
+    LruCache c = new LruCache("t", 10, 0);
+    AtomicInteger calls = new AtomicInteger();
+    assertEquals("v", c.get("k", () -> { calls.incrementAndGet(); return "v"; }));
+    assertEquals("v", c.get("k", () -> { calls.incrementAndGet(); return "other"; }));
+    assertEquals(1, calls.get());
+
+    assertThrows(Cache.ValueRetrievalException.class, () -> c.get("bad", () -> {
+      throw new IllegalStateException("boom");
+    }));
+  }
+
+  @Test
+  void entriesLoadedInsideTheLagWindowExpireWhenItEnds() throws InterruptedException {
+    LruCache c = new LruCache("t", 10, 0, 100);
+    c.evict("jan");
+    assertNull(c.get("jan"));
+    c.put("jan", "maybe from a lagging secondary");
+    c.put("feb", "untouched");
+    assertNotNull(c.get("jan"));
+
+    Thread.sleep(150);
+    assertNull(c.get("jan"));
+    assertEquals("untouched", value(c, "feb"));
+
+    c.put("jan", "after the window");
+    Thread.sleep(150);
+    assertEquals("after the window", value(c, "jan"));
+  }
+
+  private static Object value(Cache c, Object key) {
+    Cache.ValueWrapper w = c.get(key);
+    return (w == null) ? null : w.get();
+  }
+}
@@ -0,0 +1,130 @@
+package com.pos.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+
+/**
+ * Counter deltas, replay protection and reconcile against the MongoDB at
+ * {@code MONGODB_TEST_URI} (default {@code mongodb://localhost:27017}) in a
+ * throw-away database; skipped when no server answers.
+ */
+class KpiCounterServiceTest {
+
+  private static MongoClient client;
+  private static MongoTemplate mongo;
+
+  private KpiCounterService counters;
+
+  @BeforeAll
+  static void connect() {
+    String uri = System.getenv().getOrDefault("MONGODB_TEST_URI", "mongodb://localhost:27017");
+    client = MongoClients.create(MongoClientSettings.builder()
+        .applyConnectionString(new ConnectionString(uri))
+        .applyToClusterSettings(c -> c.serverSelectionTimeout(2, TimeUnit.SECONDS))
+        .build());
+    boolean up;
+    try {
+      client.getDatabase("admin").runCommand(new Document("ping", 1));
+      up = true;
+    } catch (RuntimeException e) {
+      up = false;
+    }
+    assumeTrue(up, "no MongoDB at " + uri);
+
+    mongo = new MongoTemplate(client, "pos_kpi_test_" + UUID.randomUUID().toString().substring(0, 8));
+  }
+
+  @AfterAll
+  static void dropDatabase() {
+    if (mongo != null) mongo.getDb().drop();
+    if (client != null) client.close();
+  }
+
+  @BeforeEach
+  void reset() {
+    mongo.getDb().drop();
+    counters = new KpiCounterService(mongo, new ThreadPoolTaskScheduler());
+  }
+
+  @Test
+  void deltasBeforeTheFirstReconcileAreLeftToIt() {
+    Document sale = sale(40);
+    mongo.getCollection("sales").insertOne(sale);
+    counters.onChange(new ReportDataChangedEvent("sales", null, sale));
+
+    assertFalse(mongo.collectionExists(KpiCounterService.COLLECTION));
+    assertFalse(counters.isReady());
+    assertNull(counters.totals());
+
+    counters.reconcile();
+    assertTrue(counters.isReady());
+    assertEquals(40d, counters.totals().get("sales"), 0.001);
+  }
+
+  @Test
+  void aStartedReconcileIsNotReadyYet() {
+    mongo.getCollection(KpiCounterService.COLLECTION).insertOne(new Document("_id", "all_time"));
+    assertFalse(counters.isReady());
+  }
+
+  @Test
+  void deltasApplyOnceAfterReconcile() {
+    counters.reconcile();
+
+    Document before = sale(10);
+    Document after = sale(25);
+    counters.onChange(new ReportDataChangedEvent("sales", null, before, "0001"));
+    counters.onChange(new ReportDataChangedEvent("sales", before, after, "0002"));
+    // a replayed stream position is already counted
+    counters.onChange(new ReportDataChangedEvent("sales", before, after, "0002"));
+    counters.onChange(new ReportDataChangedEvent("purchases", null,
+        new Document("totals", new Document("grandTotal", 7))));
+
+    Map<String, Double> totals = counters.totals();
+    assertEquals(25d, totals.get("sales"), 0.001);
+    assertEquals(7d, totals.get("purchases"), 0.001);
+  }
+
+  @Test
+  void reconcileReportsAndCorrectsDrift() {
+    mongo.getCollection("sales").insertOne(sale(30));
+    mongo.getCollection("sales").insertOne(sale(12.5));
+    counters.reconcile();
+
+    // a write that bypassed the services
+    mongo.getCollection("sales").insertOne(sale(5));
+    Document drift = counters.reconcile();
+
+    Document sales = drift.get("sales", Document.class);
+    assertEquals(5d, ((Number) sales.get(KpiCounterService.K_TOTAL)).doubleValue(), 0.001);
+    assertEquals(1L, ((Number) sales.get(KpiCounterService.K_COUNT)).longValue());
+    assertFalse(drift.containsKey("purchases"));
+    assertEquals(47.5d, counters.totals().get("sales"), 0.001);
+
+    assertTrue(counters.reconcile().isEmpty());
+  }
+
+  private static Document sale(double netTotal) {
+    return new Document("_id", UUID.randomUUID().toString()).append("netTotal", netTotal);
+  }
+}
@@ -0,0 +1,145 @@
+package com.pos.service;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import com.pos.model.KpiDefinition;
+import com.pos.model.KpiDefinition.Kind;
+
+/** Definition checks: the expression operator allow-list and ratio reference resolution. */
+class KpiServiceTest {
+
+  @Test
+  void fieldPathsAndAllowedOperatorsParse() {
+    assertEquals("$netTotal", KpiService.expression(" $netTotal "));
+
+    Object e = KpiService.expression("{\"$sum\": {\"$map\": {\"input\": \"$items\", \"as\": \"i\","
+        + " \"in\": {\"$multiply\": [\"$$i.qty\", {\"$ifNull\": [\"$$i.price\", 0]}]}}}}");
+    assertTrue(e instanceof Document);
+    assertDoesNotThrow(() -> KpiService.expression("{\"$gt\": [\"$netTotal\", 100]}"));
+  }
+
+  @Test
+  void operatorsOutsideTheAllowListAreRejected() {
+    for (String expr : List.of(
+        "{\"$function\": {\"body\": \"function() { return 1 }\", \"args\": [], \"lang\": \"js\"}}",
+        "{\"$regexMatch\": {\"input\": \"$note\", \"regex\": \".*\"}}",
+        // nested below allowed operators
+        "{\"$add\": [1, {\"$cond\": [true, {\"$accumulator\": {}}, 0]}]}",
+        "[{\"$literal\": 1}, {\"$lookup\": {}}]")) {
+      IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> KpiService.expression(expr));
+      assertTrue(ex.getMessage().startsWith("Operator not allowed in a KPI"), ex.getMessage());
+    }
+  }
+
+  @Test
+  void systemVariablesAreRejectedButUserVariablesPass() {
+    IllegalArgumentException now = assertThrows(IllegalArgumentException.class,
+        () -> KpiService.expression("{\"$subtract\": [\"$$NOW\", \"$date\"]}"));
+    assertTrue(now.getMessage().startsWith("Variable not allowed in a KPI"), now.getMessage());
+    assertThrows(IllegalArgumentException.class, () -> KpiService.expression("{\"$size\": \"$$ROOT.items\"}"));
+    assertThrows(IllegalArgumentException.class, () -> KpiService.expression("\"$$\""));
+
+    assertDoesNotThrow(() -> KpiService.expression(
+        "{\"$filter\": {\"input\": \"$items\", \"as\": \"it\", \"cond\": {\"$gt\": [\"$$it.qty\", 0]}}}"));
+  }
+
+  @Test
+  void malformedJsonIsABadExpression() {
+    IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+        () -> KpiService.expression("{\"$add\": [1,"));
+    assertTrue(ex.getMessage().startsWith("Bad KPI expression"), ex.getMessage());
+  }
+
+  @Test
+  void validateChecksFilterAndCollection() {
+    KpiDefinition d = base("x", "sales", "$netTotal");
+    d.setFilter("{\"$where\": \"true\"}");
+    assertThrows(IllegalArgumentException.class, () -> KpiService.validate(d));
+
+    KpiDefinition users = base("y", "users", "$netTotal");
+    assertThrows(IllegalArgumentException.class, () -> KpiService.validate(users));
+  }
+
+  @Test
+  void ratiosResolveToTheirBases() {
+    Map<String, KpiDefinition> all = defs(
+        base("revenue", "sales", "$netTotal"),
+        base("cost", "purchases", "$totals.grandTotal"),
+        ratio("margin", List.of("revenue", "-cost"), "revenue"),
+        ratio("margin_pct", List.of("margin"), "revenue"));
+
+    Set<String> bases = new LinkedHashSet<>();
+    KpiService.resolve("margin_pct", all, bases, new HashSet<>());
+    assertEquals(Set.of("revenue", "cost"), bases);
+  }
+
+  @Test
+  void sharedReferencesAreNotACycle() {
+    // a diamond: both sides reach revenue
+    Map<String, KpiDefinition> all = defs(
+        base("revenue", "sales", "$netTotal"),
+        ratio("a", List.of("revenue"), "revenue"),
+        ratio("b", List.of("revenue"), "revenue"),
+        ratio("top", List.of("a", "b"), "a"));
+    assertDoesNotThrow(() -> KpiService.resolve("top", all, new LinkedHashSet<>(), new HashSet<>()));
+  }
+
+  @Test
+  void cyclesAndUnknownReferencesAreRejected() {
+    Map<String, KpiDefinition> self = defs(
+        base("revenue", "sales", "$netTotal"),
+        ratio("loop", List.of("loop"), "revenue"));
+    IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+        () -> KpiService.resolve("loop", self, new LinkedHashSet<>(), new HashSet<>()));
+    assertEquals("KPI loop refers to itself", ex.getMessage());
+
+    Map<String, KpiDefinition> indirect = defs(
+        base("revenue", "sales", "$netTotal"),
+        ratio("a", List.of("revenue"), "b"),
+        ratio("b", List.of("-c"), "revenue"),
+        ratio("c", List.of("a"), "revenue"));
+    assertThrows(IllegalArgumentException.class,
+        () -> KpiService.resolve("a", indirect, new LinkedHashSet<>(), new HashSet<>()));
+
+    Map<String, KpiDefinition> missing = defs(ratio("r", List.of("nope"), "r"));
+    ex = assertThrows(IllegalArgumentException.class,
+        () -> KpiService.resolve("r", missing, new LinkedHashSet<>(), new HashSet<>()));
+    assertEquals("KPI not found: nope", ex.getMessage());
+  }
+
+  @Test
+  void defaultsAreValid() {
+    Map<String, KpiDefinition> all = defs(KpiService.DEFAULTS.toArray(new KpiDefinition[0]));
+    for (KpiDefinition d : KpiService.DEFAULTS) {
+      assertDoesNotThrow(() -> KpiService.validate(d), d.getId());
+      assertDoesNotThrow(() -> KpiService.resolve(d.getId(), all, new LinkedHashSet<>(), new HashSet<>()), d.getId());
+    }
+  }
+
+  private static KpiDefinition base(String key, String collection, String expr) {
+    return KpiDefinition.builder().id(key).kind(Kind.SUM).collection(collection).expr(expr).build();
+  }
+
+  private static KpiDefinition ratio(String key, List<String> numerator, String denominator) {
+    return KpiDefinition.builder().id(key).kind(Kind.RATIO).numerator(numerator).denominator(denominator).build();
+  }
+
+  private static Map<String, KpiDefinition> defs(KpiDefinition... ds) {
+    Map<String, KpiDefinition> m = new LinkedHashMap<>();
+    for (KpiDefinition d : ds) m.put(d.getId(), d);
+    return m;
+  }
+}
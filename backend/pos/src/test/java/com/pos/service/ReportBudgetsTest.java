@@ -0,0 +1,87 @@
+package com.pos.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.ServerAddress;
+
+/**
+ * Per-report overrides, one deadline shared by every query of a request, and which
+ * failures count as running out of budget.
+ */
+class ReportBudgetsTest {
+
+  private static ReportBudgets budgets(Map<String, Object> props) {
+    StandardEnvironment env = new StandardEnvironment();
+    env.getPropertySources().addFirst(new MapPropertySource("test", props));
+    return new ReportBudgets(env);
+  }
+
+  @Test
+  void reportOverridesApply() {
+    ReportBudgets b = budgets(Map.of(
+        "app.reports.budget.product-sales.max-time-ms", "30000",
+        "app.reports.budget.product-sales.allow-disk-use", "false"));
+    assertEquals(30000L, b.maxTimeMs("product-sales"));
+    assertFalse(b.allowDiskUse("product-sales"));
+  }
+
+  @Test
+  void noBudgetMeansNoMaxTime() {
+    ReportBudgets b = budgets(Map.of());
+    assertEquals(Long.MAX_VALUE, b.deadline("vat"));
+    assertEquals(Duration.ZERO, b.options("vat").getMaxTime());
+  }
+
+  @Test
+  void laterQueriesGetWhatIsLeftOfTheDeadline() {
+    ReportBudgets b = budgets(Map.of("app.reports.budget.dayz.max-time-ms", "5000"));
+    long deadline = b.deadline("dayz");
+
+    Duration first = b.options("dayz", deadline).getMaxTime();
+    assertTrue(first.toMillis() <= 5000 && first.toMillis() > 4000, "first query: " + first);
+
+    Duration retry = b.options("dayz", deadline - 4000).getMaxTime();
+    assertTrue(retry.toMillis() <= 1000, "retry got a fresh budget: " + retry);
+
+    AggregationOptions spent = b.options("dayz", System.currentTimeMillis() - 1);
+    assertEquals(Duration.ofMillis(1), spent.getMaxTime());
+  }
+
+  @Test
+  void timeoutsAreRecognisedThroughWrappersAndCounted() {
+    ReportBudgets b = budgets(Map.of());
+    MongoExecutionTimeoutException timeout = new MongoExecutionTimeoutException(50, "operation exceeded time limit");
+    assertTrue(b.exceeded("customer", new UncategorizedMongoDbException("wrapped", timeout)));
+    assertTrue(b.exceeded("customer", new DataAccessResourceFailureException("x", commandError(50))));
+    assertFalse(b.exceeded("customer", new DataAccessResourceFailureException("x", commandError(11000))));
+    assertFalse(b.exceeded("customer", new IllegalStateException("boom")));
+
+    b.options("customer");
+    Document stats = b.snapshot().get("customer");
+    assertEquals(1L, stats.get("runs"));
+    assertEquals(2L, stats.get("timeouts"));
+  }
+
+  private static MongoCommandException commandError(int code) {
+    return new MongoCommandException(new BsonDocument("ok", new BsonInt32(0))
+        .append("code", new BsonInt32(code)).append("errmsg", new BsonString("failed")), new ServerAddress());
+  }
+}
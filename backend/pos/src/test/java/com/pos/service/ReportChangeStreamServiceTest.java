@@ -0,0 +1,152 @@
+package com.pos.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+
+/**
+ * The stream republishes committed changes, one instance holds the lease, and a
+ * disabled switch drops the saved token. Runs against the MongoDB at
+ * {@code MONGODB_TEST_URI} (default {@code mongodb://localhost:27017}) in a
+ * throw-away database and is skipped unless that server is a replica set member.
+ */
+class ReportChangeStreamServiceTest {
+
+  private static MongoClient client;
+  private static MongoTemplate mongo;
+
+  private final BlockingQueue<ReportDataChangedEvent> published = new LinkedBlockingQueue<>();
+
+  @BeforeAll
+  static void connect() {
+    String uri = System.getenv().getOrDefault("MONGODB_TEST_URI", "mongodb://localhost:27017");
+    client = MongoClients.create(MongoClientSettings.builder()
+        .applyConnectionString(new ConnectionString(uri))
+        .applyToClusterSettings(c -> c.serverSelectionTimeout(2, TimeUnit.SECONDS))
+        .build());
+    boolean replicaSet;
+    try {
+      replicaSet = client.getDatabase("admin").runCommand(new Document("hello", 1)).containsKey("setName");
+    } catch (RuntimeException e) {
+      replicaSet = false;
+    }
+    assumeTrue(replicaSet, "no replica set at " + uri);
+
+    mongo = new MongoTemplate(client, "pos_stream_test_" + UUID.randomUUID().toString().substring(0, 8));
+  }
+
+  @AfterAll
+  static void dropDatabase() {
+    if (mongo != null) mongo.getDb().drop();
+    if (client != null) client.close();
+  }
+
+  @BeforeEach
+  void reset() {
+    mongo.getDb().drop();
+    mongo.createCollection("sales");
+  }
+
+  @Test
+  void republishesChangesWithBeforeAndAfterImages() throws InterruptedException {
+    ReportChangeStreamService stream = service(true);
+    stream.prepare();
+    assertTrue(stream.handles("sales"));
+    assertFalse(stream.handles("customers"));
+    stream.start();
+    try {
+      mongo.getCollection("sales").insertOne(new Document("_id", "s1").append("netTotal", 10));
+      ReportDataChangedEvent inserted = published.poll(10, TimeUnit.SECONDS);
+      assertNotNull(inserted);
+      assertEquals("sales", inserted.getCollection());
+      assertNull(inserted.getBefore());
+      assertEquals(10, inserted.getAfter().get("netTotal"));
+
+      mongo.getCollection("sales").updateOne(Filters.eq("_id", "s1"), Updates.set("netTotal", 25));
+      ReportDataChangedEvent updated = published.poll(10, TimeUnit.SECONDS);
+      assertNotNull(updated);
+      assertEquals(10, updated.getBefore().get("netTotal"));
+      assertEquals(25, updated.getAfter().get("netTotal"));
+      assertTrue(updated.getPosition().compareTo(inserted.getPosition()) > 0);
+
+      // the token is saved just after the event is handed over
+      Document saved = null;
+      for (int i = 0; i < 50 && (saved == null || !saved.containsKey("token")); i++) {
+        Thread.sleep(100);
+        saved = mongo.findById("reporting", Document.class, ReportChangeStreamService.TOKENS);
+      }
+      assertNotNull(saved);
+      assertNotNull(saved.get("token"));
+    } finally {
+      stream.stop();
+    }
+  }
+
+  @Test
+  void onlyOneInstanceHoldsTheLease() {
+    ReportChangeStreamService a = service(true);
+    ReportChangeStreamService b = service(true);
+
+    assertTrue(a.acquireLease());
+    assertFalse(b.acquireLease());
+    assertTrue(a.acquireLease());   // renewal
+
+    a.releaseLease();
+    assertTrue(b.acquireLease());
+    assertFalse(a.acquireLease());
+  }
+
+  @Test
+  void anExpiredLeaseIsTakenOver() {
+    ReportChangeStreamService a = service(true);
+    ReportChangeStreamService b = service(true);
+    assertTrue(a.acquireLease());
+
+    mongo.getCollection(ReportChangeStreamService.TOKENS).updateOne(Filters.eq("_id", "reporting"),
+        Updates.set("expiresAt", new Date(System.currentTimeMillis() - 1)));
+    assertTrue(b.acquireLease());
+    assertFalse(a.acquireLease());
+  }
+
+  @Test
+  void disablingDropsTheSavedToken() {
+    mongo.getCollection(ReportChangeStreamService.TOKENS).insertOne(new Document("_id", "reporting")
+        .append("token", new Document("_data", "8263")));
+
+    ReportChangeStreamService stream = service(false);
+    stream.prepare();
+
+    assertFalse(stream.handles("sales"));
+    Document row = mongo.findById("reporting", Document.class, ReportChangeStreamService.TOKENS);
+    assertFalse(row != null && row.containsKey("token"));
+  }
+
+  private ReportChangeStreamService service(boolean enabled) {
+    return new ReportChangeStreamService(mongo, event -> published.add((ReportDataChangedEvent) event),
+        enabled, Set.of("sales"));
+  }
+}
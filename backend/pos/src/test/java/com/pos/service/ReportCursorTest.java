@@ -0,0 +1,207 @@
+package com.pos.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/**
+ * Cursor tokens survive the round trip with their BSON types, and paging by the seek
+ * criteria visits every row exactly once in report order, including the nullable,
+ * tied sort fields of the product-sales and Day/Z screens. The criteria are checked
+ * with a small in-memory matcher for the operators they use ({@code $or}, {@code $gt},
+ * {@code $lt}, {@code $ne}, equality), following MongoDB's rule that null sorts lowest
+ * and never satisfies a range operator.
+ */
+class ReportCursorTest {
+
+  @Test
+  void tokenRoundTripKeepsTypes() {
+    Date key = new Date(1_700_000_000_000L);
+    ObjectId id = new ObjectId();
+    Map<String, Object> totals = new LinkedHashMap<>();
+    totals.put("bills", 12L);
+    totals.put("net", 1050.25);
+    totals.put("vat", new Decimal128(52));
+
+    String token = ReportCursor.encode(key, id, 345, totals);
+    assertFalse(token.contains("+") || token.contains("/") || token.contains("="), "token is not URL-safe: " + token);
+
+    ReportCursor c = ReportCursor.decode(token);
+    assertEquals(key, c.key);
+    assertEquals(id, c.id);
+    assertEquals(345L, c.count);
+    assertEquals(12L, c.totals.get("bills"));
+    assertEquals(1050.25, c.totals.get("net"));
+    assertEquals(new Decimal128(52), c.totals.get("vat"));
+  }
+
+  @Test
+  void tokenWithoutTotalsOrKey() {
+    ReportCursor c = ReportCursor.decode(ReportCursor.encode(null, "x", 0, null));
+    assertNull(c.key);
+    assertEquals("x", c.id);
+    assertNull(c.totals);
+  }
+
+  @Test
+  void blankTokenIsTheFirstPage() {
+    assertNull(ReportCursor.decode(null));
+    assertNull(ReportCursor.decode(" "));
+  }
+
+  @Test
+  void malformedTokenIsAClientError() {
+    assertEquals("Invalid cursor", assertThrows(IllegalArgumentException.class,
+        () -> ReportCursor.decode("not base64!")).getMessage());
+    assertThrows(IllegalArgumentException.class, () -> ReportCursor.decode("eyJuIjogIngifQ"));   // {"n": "x"}
+    assertThrows(IllegalArgumentException.class, () -> ReportCursor.decode("WzFd"));   // [1]
+  }
+
+  @Test
+  void afterPagesAGroupKeyInAscendingOrder() {
+    List<Document> rows = new ArrayList<>();
+    for (int day = 1; day <= 7; day++) rows.add(new Document("_id", day).append("date", day));
+    rows.add(new Document("_id", 0).append("date", null));   // groups with no key are not paged
+
+    List<Object> seen = page(rows, 3,
+        last -> ReportService.after("date", last == null ? null : last.get("date")),
+        Comparator.comparing(d -> d.getInteger("date")));
+    assertEquals(List.of(1, 2, 3, 4, 5, 6, 7), seen);
+  }
+
+  @Test
+  void beforeDescPagesNewestFirstThroughTies() {
+    List<Document> rows = new ArrayList<>();
+    int id = 0;
+    for (int t : new int[]{5, 5, 5, 4, 3, 3, 2, 1, 1, 1}) rows.add(new Document("_id", ++id).append("date", t));
+    Comparator<Document> newestFirst = Comparator.<Document, Integer>comparing(d -> d.getInteger("date"))
+        .thenComparing(d -> d.getInteger("_id")).reversed();
+
+    List<Object> seen = page(rows, 4,
+        last -> last == null ? new Criteria() : ReportService.beforeDesc("date", last.get("date"), last.get("_id")),
+        newestFirst);
+    assertEquals(List.of(3, 2, 1, 4, 6, 5, 7, 10, 9, 8), seen);
+  }
+
+  @Test
+  void seekAfterPagesAscendingWithNullsFirst() {
+    List<Object> seen = page(sortableRows(), 3, last -> seek(Sort.Direction.ASC, last), byAmount(Sort.Direction.ASC));
+    assertEquals(List.of(2, 6, 1, 4, 7, 3, 5), seen);
+  }
+
+  @Test
+  void seekAfterPagesDescendingWithNullsLast() {
+    List<Object> seen = page(sortableRows(), 2, last -> seek(Sort.Direction.DESC, last), byAmount(Sort.Direction.DESC));
+    assertEquals(List.of(5, 3, 4, 7, 1, 6, 2), seen);
+  }
+
+  @Test
+  void seekAfterPagesOneRowAtATime() {
+    for (Sort.Direction dir : Sort.Direction.values()) {
+      List<Object> seen = page(sortableRows(), 1, last -> seek(dir, last), byAmount(dir));
+      List<Object> all = page(sortableRows(), 100, last -> new Criteria(), byAmount(dir));
+      assertEquals(all, seen);
+    }
+  }
+
+  /** Product rows sorted on a nullable amount with ties; ids break ties ascending. */
+  private static List<Document> sortableRows() {
+    List<Document> rows = new ArrayList<>();
+    Object[] amounts = {10, null, 30, 20, 40, 0, 20};
+    for (int i = 0; i < amounts.length; i++) rows.add(new Document("_id", i + 1).append("amount", amounts[i]));
+    return rows;
+  }
+
+  private static Criteria seek(Sort.Direction dir, Document last) {
+    return (last == null) ? new Criteria() : ReportService.seekAfter("amount", dir, last.get("amount"), last.get("_id"));
+  }
+
+  /** MongoDB order for {@code amount dir, _id ASC}: null is the lowest value. */
+  private static Comparator<Document> byAmount(Sort.Direction dir) {
+    Comparator<Document> amount = Comparator.comparing(d -> d.getInteger("amount"),
+        Comparator.nullsFirst(Comparator.<Integer>naturalOrder()));
+    if (dir.isDescending()) amount = amount.reversed();
+    return amount.thenComparing(d -> d.getInteger("_id"));
+  }
+
+  /**
+   * Pages through {@code rows} like a report does: filter by the seek of the previous
+   * page's last row, sort, take {@code size}. Returns the {@code _id}s in visit order.
+   */
+  static List<Object> page(List<Document> rows, int size, Function<Document, Criteria> seek,
+                           Comparator<Document> order) {
+    List<Object> seen = new ArrayList<>();
+    Document last = null;
+    for (int guard = 0; guard <= rows.size(); guard++) {
+      Document filter = seek.apply(last).getCriteriaObject();
+      List<Document> page = new ArrayList<>();
+      for (Document d : rows) if (matches(filter, d)) page.add(d);
+      page.sort(order);
+      if (page.size() > size) page = page.subList(0, size);
+      for (Document d : page) seen.add(d.get("_id"));
+      if (page.size() < size) return seen;
+      last = page.get(page.size() - 1);
+    }
+    throw new AssertionError("paging did not terminate: " + seen);
+  }
+
+  @SuppressWarnings("unchecked")
+  static boolean matches(Document filter, Document row) {
+    for (Map.Entry<String, Object> e : filter.entrySet()) {
+      String k = e.getKey();
+      if (k.equals("$or")) {
+        boolean any = false;
+        for (Object o : (List<Object>) e.getValue()) any |= matches((Document) o, row);
+        if (!any) return false;
+      } else if (k.equals("$and")) {
+        for (Object o : (List<Object>) e.getValue()) if (!matches((Document) o, row)) return false;
+      } else if (e.getValue() instanceof Document ops) {
+        Object v = row.get(k);
+        for (Map.Entry<String, Object> op : ops.entrySet()) {
+          Object arg = op.getValue();
+          boolean ok = switch (op.getKey()) {
+            case "$gt" -> v != null && compare(v, arg) > 0;
+            case "$lt" -> v != null && compare(v, arg) < 0;
+            case "$ne" -> arg == null ? v != null : !arg.equals(v);
+            default -> throw new AssertionError("operator not modelled: " + op.getKey());
+          };
+          if (!ok) return false;
+        }
+      } else {
+        Object arg = e.getValue();
+        if (arg == null ? row.get(k) != null : !arg.equals(row.get(k))) return false;
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compare(Object a, Object b) {
+    return ((Comparable) a).compareTo(b);
+  }
+
+  @Test
+  void matcherFollowsMongoNullRules() {
+    Document nullRow = new Document("_id", 1).append("f", null);
+    assertFalse(matches(Criteria.where("f").gt(0).getCriteriaObject(), nullRow), "$gt matched null");
+    assertFalse(matches(Criteria.where("f").lt(0).getCriteriaObject(), nullRow), "$lt matched null");
+    assertTrue(matches(Criteria.where("f").is(null).getCriteriaObject(), new Document("_id", 2)), "missing is null");
+  }
+}
@@ -0,0 +1,81 @@
+package com.pos.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+
+/**
+ * Every report shape and dashboard lookup must plan as an index scan once the
+ * declared indexes are provisioned. Runs against the MongoDB at
+ * {@code MONGODB_TEST_URI} (default {@code mongodb://localhost:27017}) in a
+ * throw-away database, and is skipped when no server answers.
+ */
+class ReportIndexServiceTest {
+
+  private static MongoClient client;
+  private static MongoTemplate mongo;
+  private static ReportIndexService indexes;
+
+  @BeforeAll
+  static void connect() {
+    String uri = System.getenv().getOrDefault("MONGODB_TEST_URI", "mongodb://localhost:27017");
+    client = MongoClients.create(MongoClientSettings.builder()
+        .applyConnectionString(new ConnectionString(uri))
+        .applyToClusterSettings(c -> c.serverSelectionTimeout(2, TimeUnit.SECONDS))
+        .build());
+    boolean up;
+    try {
+      client.getDatabase("admin").runCommand(new Document("ping", 1));
+      up = true;
+    } catch (RuntimeException e) {
+      up = false;
+    }
+    assumeTrue(up, "no MongoDB at " + uri);
+
+    mongo = new MongoTemplate(client, "pos_index_test_" + UUID.randomUUID().toString().substring(0, 8));
+    ReportService reports = new ReportService(mongo, new VatPeriodService(mongo, event -> { }),
+        new PartyBalanceService(mongo, new ThreadPoolTaskScheduler()), new ReportBudgets(new StandardEnvironment()));
+    indexes = new ReportIndexService(mongo, reports);
+    indexes.provision();
+  }
+
+  @AfterAll
+  static void dropDatabase() {
+    if (mongo != null) mongo.getDb().drop();
+    if (client != null) client.close();
+  }
+
+  @Test
+  void everyShapeUsesAnIndex() {
+    List<Document> results = indexes.check();
+    assertFalse(results.isEmpty());
+
+    List<String> failures = new ArrayList<>();
+    for (Document r : results) {
+      if (r.containsKey("error")) {
+        failures.add(r.get("shape") + ": " + r.get("error"));
+      } else if (r.getBoolean("collscan", false)) {
+        failures.add(r.get("shape") + " on " + r.get("collection") + ": " + r.get("stages"));
+      }
+    }
+    assertTrue(failures.isEmpty(), "Shapes without an index scan:\n" + String.join("\n", failures));
+  }
+}